@@ -15,13 +15,37 @@ java {
     }
 }
 
+// Benchmarks are run with JMH directly, see the jmh task
+val jmh by sourceSets.creating {
+    compileClasspath += sourceSets.main.get().output
+    runtimeClasspath += sourceSets.main.get().output
+}
+
+configurations[jmh.implementationConfigurationName].extendsFrom(configurations.implementation.get())
+configurations[jmh.runtimeOnlyConfigurationName].extendsFrom(configurations.runtimeOnly.get())
+
 dependencies {
     testImplementation(platform(libs.junit.bom))
     testImplementation(libs.bundles.junit.jupiter)
     testRuntimeOnly(libs.bundles.junit.runtime)
+
+    "jmhImplementation"(libs.jmh.core)
+    "jmhAnnotationProcessor"(libs.jmh.generator)
+    // The classes the benchmarks optimize, pinned so that results stay comparable
+    "jmhRuntimeOnly"(libs.commons.math3)
 }
 
 tasks.test {
     useJUnitPlatform()
 }
 
+// Options for JMH can be passed with -PjmhArgs, such as -PjmhArgs="-f 3 OptimizationBenchmark"
+tasks.register<JavaExec>("jmh") {
+    description = "Runs the JMH benchmarks, reporting their allocation rate."
+    group = "verification"
+    classpath = jmh.runtimeClasspath
+    mainClass = "org.openjdk.jmh.Main"
+    javaLauncher = javaToolchains.launcherFor(java.toolchain)
+    args("-prof", "gc")
+    providers.gradleProperty("jmhArgs").orNull?.let { args(it.split(" ").filter(String::isNotBlank)) }
+}
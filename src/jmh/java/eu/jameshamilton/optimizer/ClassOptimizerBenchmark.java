@@ -0,0 +1,52 @@
+package eu.jameshamilton.optimizer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.lang.classfile.ClassHierarchyResolver;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Optimizes a single class with all the built-in optimizations, including parsing it and
+ * writing it back with new stack map frames.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ClassOptimizerBenchmark {
+    // The classes of the corpus that are rewritten the most, largest first
+    @Param({
+        "org/apache/commons/math3/util/FastMath",
+        "org/apache/commons/math3/dfp/Dfp",
+        "org/apache/commons/math3/complex/Complex"
+    })
+    public String className;
+
+    private final OptimizationStats stats = new OptimizationStats();
+    private ClassHierarchyResolver resolver;
+    private byte[] classBytes;
+
+    @Setup
+    public void setup() throws IOException {
+        resolver = Corpus.resolver();
+        classBytes = Corpus.read(className);
+    }
+
+    @Benchmark
+    public byte[] optimize() {
+        return new ClassOptimizer(stats, resolver, classBytes).optimize(Optimization.optimizations);
+    }
+}
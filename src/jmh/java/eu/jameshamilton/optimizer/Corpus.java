@@ -0,0 +1,68 @@
+package eu.jameshamilton.optimizer;
+
+import eu.jameshamilton.classfile.JarClassHierarchyResolver;
+import eu.jameshamilton.zip.ZipReader;
+
+import java.io.IOException;
+import java.lang.classfile.ClassFile;
+import java.lang.classfile.ClassHierarchyResolver;
+import java.lang.classfile.ClassModel;
+import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The classes that the benchmarks optimize: those of a fixed release of Commons Math, which is
+ * on the benchmarks' classpath. Its arithmetic-heavy code gives the optimizations plenty to do.
+ */
+final class Corpus {
+    private static final String CORPUS_CLASS = "org.apache.commons.math3.util.FastMath";
+
+    private Corpus() {
+    }
+
+    static Path jar() throws IOException {
+        try {
+            // Not initialized, only located
+            var corpusClass = Class.forName(CORPUS_CLASS, false, Corpus.class.getClassLoader());
+            return Path.of(corpusClass.getProtectionDomain().getCodeSource().getLocation().toURI());
+        } catch (ClassNotFoundException | URISyntaxException e) {
+            throw new IOException("Missing benchmark corpus", e);
+        }
+    }
+
+    /**
+     * Resolves the corpus's classes as the {@link JarOptimizer} would, and the JDK's on demand.
+     */
+    static ClassHierarchyResolver resolver() throws IOException {
+        try (var zip = ZipReader.open(jar())) {
+            return new JarClassHierarchyResolver(zip)
+                .orElse(ClassHierarchyResolver.defaultResolver().cached(ConcurrentHashMap::new));
+        }
+    }
+
+    static List<ClassModel> classes() throws IOException {
+        try (var zip = ZipReader.open(jar())) {
+            var classes = new ArrayList<ClassModel>();
+            for (var entry : zip.entries()) {
+                if (entry.name().endsWith(".class")) {
+                    classes.add(ClassFile.of().parse(zip.read(entry)));
+                }
+            }
+            return classes;
+        }
+    }
+
+    static byte[] read(String className) throws IOException {
+        try (var zip = ZipReader.open(jar())) {
+            for (var entry : zip.entries()) {
+                if (entry.name().equals(className + ".class")) {
+                    return zip.read(entry);
+                }
+            }
+        }
+        throw new IOException("Missing " + className + " in the benchmark corpus");
+    }
+}
@@ -0,0 +1,62 @@
+package eu.jameshamilton.optimizer;
+
+import eu.jameshamilton.classfile.LibraryClassHierarchyResolver;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Optimizes the whole corpus jar as the command line does, from reading it to writing the
+ * optimized jar, without a cache.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JarOptimizerBenchmark {
+    // 0 uses all cores, as the command line does by default
+    @Param({"1", "0"})
+    public int threads;
+
+    private Path input;
+    private Path output;
+    private LibraryClassHierarchyResolver libraryResolver;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        input = Corpus.jar();
+        output = Files.createTempFile("optimized-", ".jar");
+        libraryResolver = LibraryClassHierarchyResolver.of(List.of(), null);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(output);
+    }
+
+    @Benchmark
+    public OptimizationStats optimizeJar() throws IOException {
+        var stats = new OptimizationStats();
+        int threadCount = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        JarOptimizer.optimizeJar(stats, Optimization.optimizations, List.of(), libraryResolver, null, threadCount, ClassOptimizer.DEFAULT_MAX_REWRITES_PER_INSTRUCTION, input.toString(), output.toString());
+        return stats;
+    }
+}
@@ -0,0 +1,145 @@
+package eu.jameshamilton.optimizer;
+
+import eu.jameshamilton.classfile.InstructionBuilder;
+import eu.jameshamilton.classfile.InstructionList;
+import eu.jameshamilton.classfile.matcher.Window;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.lang.classfile.Attributes;
+import java.lang.classfile.ClassModel;
+import java.lang.classfile.CodeElement;
+import java.lang.classfile.constantpool.ConstantPoolBuilder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Applies the optimizations with the given name at every position of the corpus where the
+ * {@link PatternAutomaton} makes them a candidate, so that the time is spent matching and
+ * building replacements rather than finding where to try.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OptimizationBenchmark {
+    // Rules with several patterns share a name, and are benchmarked together
+    @Param({
+        "a - (y+b) => (a-b) - y",
+        "normalize constant + imul/iadd",
+        "nop remover",
+        "integer constant conversion folder",
+        "integer constant arithmetic folder",
+        "redundant store",
+        "increment folder",
+        "boolean field inliner",
+        "goto next remover",
+        "conditional jump next remover",
+        "add zero folder",
+        "multiply by one simplifier",
+        "double constant arithmetic folder",
+        "redundant field store",
+        "redundant static field store",
+        "type conversion simplifier",
+        "checkcast simplifier",
+        "string builder optimizer",
+        "StringBuilder append combiner",
+        "string.toString() -> string",
+        "stringbuilder constructor simplify",
+        "string.length() constant",
+        "constant string substring",
+        "constant string equals",
+        "zero comparison optimizer",
+        "class name constant optimizer",
+        "pop remover",
+        "redundant load",
+        "double store",
+        "double negation",
+        "double increment combiner",
+        "integer push simplifier"
+    })
+    public String optimization;
+
+    private record Candidates(ClassModel classModel, InstructionBuilder builder, List<List<CodeElement>> code, List<int[]> positions) {
+    }
+
+    private List<Optimization> optimizations;
+    private final List<Candidates> candidates = new ArrayList<>();
+    private final Window window = new Window();
+
+    @Setup
+    public void setup() throws IOException {
+        optimizations = Optimization.optimizations.stream()
+            .filter(opt -> opt.getName().equals(optimization))
+            .toList();
+        if (optimizations.isEmpty()) {
+            throw new IllegalArgumentException("Unknown optimization: " + optimization);
+        }
+
+        var automaton = new PatternAutomaton(optimizations);
+        var found = new Optimization[automaton.size()];
+        for (var classModel : Corpus.classes()) {
+            var code = new ArrayList<List<CodeElement>>();
+            var positions = new ArrayList<int[]>();
+            for (var method : classModel.methods()) {
+                var attribute = method.findAttribute(Attributes.code());
+                if (attribute.isEmpty() || !automaton.canMatch(attribute.get().codeArray())) {
+                    continue;
+                }
+                var instructions = new InstructionList(attribute.get()).instructions();
+                var methodPositions = new ArrayList<Integer>();
+                for (int i = 0; i < instructions.size(); i++) {
+                    if (automaton.candidates(instructions, i, found) > 0) {
+                        methodPositions.add(i);
+                    }
+                }
+                if (!methodPositions.isEmpty()) {
+                    code.add(instructions);
+                    positions.add(methodPositions.stream().mapToInt(Integer::intValue).toArray());
+                }
+            }
+            if (!code.isEmpty()) {
+                var builder = new InstructionBuilder(ConstantPoolBuilder.of(classModel));
+                candidates.add(new Candidates(classModel, builder, code, positions));
+            }
+        }
+    }
+
+    @Benchmark
+    public int apply() {
+        int applied = 0;
+        for (var classCandidates : candidates) {
+            var builder = classCandidates.builder();
+            for (var optimization : optimizations) {
+                // Optimizations are prepared for each class before they are applied to it
+                if (!optimization.prepare(classCandidates.classModel().constantPool())) {
+                    continue;
+                }
+                for (int m = 0; m < classCandidates.code().size(); m++) {
+                    var code = classCandidates.code().get(m);
+                    for (int index : classCandidates.positions().get(m)) {
+                        window.moveTo(code, index, Math.min(ClassOptimizer.MAX_WINDOW_SIZE, code.size() - index));
+                        builder.clear();
+                        if (optimization.apply(builder, window)) {
+                            applied++;
+                        }
+                    }
+                }
+            }
+        }
+        return applied;
+    }
+}
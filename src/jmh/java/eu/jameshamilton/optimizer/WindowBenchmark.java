@@ -0,0 +1,101 @@
+package eu.jameshamilton.optimizer;
+
+import eu.jameshamilton.classfile.InstructionList;
+import eu.jameshamilton.classfile.matcher.Capture;
+import eu.jameshamilton.classfile.matcher.IntCapture;
+import eu.jameshamilton.classfile.matcher.Matcher;
+import eu.jameshamilton.classfile.matcher.Window;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.lang.classfile.Attributes;
+import java.lang.classfile.CodeElement;
+import java.lang.constant.ClassDesc;
+import java.lang.constant.ConstantDesc;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static eu.jameshamilton.classfile.matcher.Any.any;
+import static eu.jameshamilton.classfile.matcher.Any.anyInt;
+import static eu.jameshamilton.classfile.matcher.InstructionMatchers.aload;
+import static eu.jameshamilton.classfile.matcher.InstructionMatchers.dup;
+import static eu.jameshamilton.classfile.matcher.InstructionMatchers.iload;
+import static eu.jameshamilton.classfile.matcher.InstructionMatchers.invokespecial;
+import static eu.jameshamilton.classfile.matcher.InstructionMatchers.invokevirtual;
+import static eu.jameshamilton.classfile.matcher.InstructionMatchers.istore;
+import static eu.jameshamilton.classfile.matcher.InstructionMatchers.loadConstant;
+import static eu.jameshamilton.classfile.matcher.InstructionMatchers.newObjectInstruction;
+
+/**
+ * Matches a pattern at every position of every method of the corpus, without the
+ * {@link PatternAutomaton} to rule positions out first.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WindowBenchmark {
+    private static final ClassDesc STRING_BUILDER = ClassDesc.of("java.lang.StringBuilder");
+
+    // Patterns that fail on their first element, on a captured value and on a long chain
+    @Param({"load-store", "captured-load", "string-builder"})
+    public String pattern;
+
+    private final IntCapture slot = new IntCapture();
+    private final Capture<ConstantDesc> constant = new Capture<>();
+    private final Window window = new Window();
+    private final List<List<CodeElement>> code = new ArrayList<>();
+    private List<Matcher<CodeElement>> matchers;
+
+    @Setup
+    public void setup() throws IOException {
+        matchers = switch (pattern) {
+            case "load-store" -> List.of(iload(anyInt()), istore(anyInt()));
+            case "captured-load" -> List.of(aload(slot), aload(slot));
+            case "string-builder" -> List.of(
+                newObjectInstruction(STRING_BUILDER),
+                dup(),
+                invokespecial(e -> e.equals(STRING_BUILDER), "<init>"::equals, any()),
+                loadConstant(constant),
+                invokevirtual(e -> e.equals(STRING_BUILDER), "append"::equals, any())
+            );
+            default -> throw new IllegalArgumentException("Unknown pattern: " + pattern);
+        };
+
+        for (var classModel : Corpus.classes()) {
+            for (var method : classModel.methods()) {
+                method.findAttribute(Attributes.code())
+                    .ifPresent(attribute -> code.add(new InstructionList(attribute).instructions()));
+            }
+        }
+    }
+
+    @Benchmark
+    public int matches() {
+        int matched = 0;
+        for (var instructions : code) {
+            for (int index = 0; index < instructions.size(); index++) {
+                slot.clear();
+                constant.clear();
+                window.moveTo(instructions, index, Math.min(ClassOptimizer.MAX_WINDOW_SIZE, instructions.size() - index));
+                if (window.matches(matchers)) {
+                    matched++;
+                }
+            }
+        }
+        return matched;
+    }
+}
@@ -0,0 +1,71 @@
+package eu.jameshamilton.classfile;
+
+import java.lang.classfile.Opcode;
+
+/**
+ * Scans raw {@code Code} attribute bytes without parsing them into instructions.
+ */
+public final class Bytecode {
+    // The wide prefix, which the ClassFile API folds into the *_W opcodes
+    private static final int WIDE = Opcode.ILOAD_W.bytecode() >>> 8;
+    private static final int TABLESWITCH = Opcode.TABLESWITCH.bytecode();
+    private static final int LOOKUPSWITCH = Opcode.LOOKUPSWITCH.bytecode();
+    private static final int IINC = Opcode.IINC.bytecode();
+
+    // Instruction length by opcode byte, 0 for the variable length and unknown ones
+    private static final int[] LENGTHS = new int[256];
+
+    static {
+        for (var opcode : Opcode.values()) {
+            if (!opcode.isWide() && opcode.sizeIfFixed() > 0) {
+                LENGTHS[opcode.bytecode()] = opcode.sizeIfFixed();
+            }
+        }
+    }
+
+    private Bytecode() {
+    }
+
+    /**
+     * Returns whether {@code code} contains an instruction whose opcode byte is set in the
+     * 256-bit {@code opcodes} bitmap. Wide instructions count as the instruction they widen,
+     * as the low byte of their {@link Opcode#bytecode()} does.
+     */
+    public static boolean containsAny(byte[] code, long[] opcodes) {
+        int offset = 0;
+        while (offset < code.length) {
+            int opcode = code[offset] & 0xFF;
+            int length;
+            if (opcode == WIDE) {
+                opcode = code[offset + 1] & 0xFF;
+                length = opcode == IINC ? 6 : 4;
+            } else if (opcode == TABLESWITCH) {
+                int operands = align(offset + 1);
+                int low = readInt(code, operands + 4);
+                int high = readInt(code, operands + 8);
+                length = operands - offset + 12 + (high - low + 1) * 4;
+            } else if (opcode == LOOKUPSWITCH) {
+                int operands = align(offset + 1);
+                length = operands - offset + 8 + readInt(code, operands + 4) * 8;
+            } else {
+                length = LENGTHS[opcode];
+            }
+
+            if ((opcodes[opcode >>> 6] & (1L << opcode)) != 0 || length <= 0) {
+                // An opcode we can't step over could hide anything after it
+                return true;
+            }
+            offset += length;
+        }
+        return false;
+    }
+
+    private static int align(int offset) {
+        return (offset + 3) & ~3;
+    }
+
+    private static int readInt(byte[] code, int offset) {
+        return (code[offset] & 0xFF) << 24 | (code[offset + 1] & 0xFF) << 16 |
+            (code[offset + 2] & 0xFF) << 8 | (code[offset + 3] & 0xFF);
+    }
+}
@@ -0,0 +1,90 @@
+package eu.jameshamilton.classfile;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.lang.classfile.ClassHierarchyResolver.ClassHierarchyInfo;
+import java.lang.constant.ClassDesc;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import static java.lang.classfile.ClassFile.ACC_INTERFACE;
+
+/**
+ * The part of a class file that the class hierarchy needs: the class's descriptor, whether it
+ * is an interface and the descriptor of its superclass, or {@code null} if it has none.
+ */
+record ClassHeader(String descriptor, boolean isInterface, String superclass) {
+
+    ClassHierarchyInfo info() {
+        if (isInterface) {
+            return ClassHierarchyInfo.ofInterface();
+        }
+        return ClassHierarchyInfo.ofClass(superclass == null ? null : ClassDesc.ofDescriptor(superclass));
+    }
+
+    void update(MessageDigest digest) {
+        digest.update((descriptor + (isInterface ? " interface " : " extends ") + superclass + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    static MessageDigest digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Reads the header of a class file, skipping over the constant pool without decoding
+     * anything but the two class names. Returns {@code null} if the bytes aren't a class file.
+     */
+    static ClassHeader parse(byte[] bytes) throws IOException {
+        var buffer = ByteBuffer.wrap(bytes);
+        if (bytes.length < 10 || buffer.getInt() != 0xCAFEBABE) {
+            return null;
+        }
+
+        buffer.position(8);
+        int count = buffer.getShort() & 0xFFFF;
+        // The position of each constant's contents, after its tag
+        int[] offsets = new int[count];
+        for (int i = 1; i < count; i++) {
+            int tag = buffer.get();
+            offsets[i] = buffer.position();
+            int size = switch (tag) {
+                case 1 -> 2 + (buffer.getShort(buffer.position()) & 0xFFFF);
+                case 7, 8, 16, 19, 20 -> 2;
+                case 15 -> 3;
+                case 3, 4, 9, 10, 11, 12, 17, 18 -> 4;
+                case 5, 6 -> 8;
+                default -> throw new IOException("Unknown constant pool tag " + tag);
+            };
+            buffer.position(buffer.position() + size);
+            if (tag == 5 || tag == 6) {
+                // Longs and doubles take up two entries
+                i++;
+            }
+        }
+
+        int flags = buffer.getShort() & 0xFFFF;
+        int thisClass = buffer.getShort() & 0xFFFF;
+        int superClass = buffer.getShort() & 0xFFFF;
+
+        return new ClassHeader(
+            descriptor(buffer, offsets, thisClass),
+            (flags & ACC_INTERFACE) != 0,
+            superClass == 0 ? null : descriptor(buffer, offsets, superClass)
+        );
+    }
+
+    private static String descriptor(ByteBuffer buffer, int[] offsets, int classIndex) throws IOException {
+        int offset = offsets[buffer.getShort(offsets[classIndex]) & 0xFFFF];
+        // Names are modified UTF-8, prefixed by their length
+        int length = 2 + (buffer.getShort(offset) & 0xFFFF);
+        var name = DataInputStream.readUTF(new DataInputStream(new ByteArrayInputStream(buffer.array(), offset, length)));
+        return "L" + name + ";";
+    }
+}
@@ -0,0 +1,27 @@
+package eu.jameshamilton.classfile;
+
+import java.lang.classfile.constantpool.ClassEntry;
+import java.lang.classfile.constantpool.ConstantPool;
+import java.lang.constant.ClassDesc;
+
+public interface ConstantPoolUtil {
+    /**
+     * Returns whether the constant pool has a class entry for {@code type}, which every
+     * instruction referring to the class or one of its members needs.
+     */
+    static boolean referencesClass(ConstantPool constantPool, ClassDesc type) {
+        var internalName = internalName(type);
+        for (var entry : constantPool) {
+            if (entry instanceof ClassEntry classEntry && classEntry.name().equalsString(internalName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static String internalName(ClassDesc type) {
+        return type.isClassOrInterface()
+            ? type.descriptorString().substring(1, type.descriptorString().length() - 1)
+            : type.descriptorString();
+    }
+}
@@ -0,0 +1,325 @@
+package eu.jameshamilton.classfile;
+
+import java.lang.classfile.CodeElement;
+import java.lang.classfile.Opcode;
+import java.lang.classfile.TypeKind;
+import java.lang.classfile.instruction.ArrayLoadInstruction;
+import java.lang.classfile.instruction.ArrayStoreInstruction;
+import java.lang.classfile.instruction.ConstantInstruction;
+import java.lang.classfile.instruction.ConvertInstruction;
+import java.lang.classfile.instruction.FieldInstruction;
+import java.lang.classfile.instruction.IncrementInstruction;
+import java.lang.classfile.instruction.InvokeDynamicInstruction;
+import java.lang.classfile.instruction.InvokeInstruction;
+import java.lang.classfile.instruction.LoadInstruction;
+import java.lang.classfile.instruction.MonitorInstruction;
+import java.lang.classfile.instruction.NewMultiArrayInstruction;
+import java.lang.classfile.instruction.NewObjectInstruction;
+import java.lang.classfile.instruction.NewPrimitiveArrayInstruction;
+import java.lang.classfile.instruction.NewReferenceArrayInstruction;
+import java.lang.classfile.instruction.NopInstruction;
+import java.lang.classfile.instruction.OperatorInstruction;
+import java.lang.classfile.instruction.StackInstruction;
+import java.lang.classfile.instruction.StoreInstruction;
+import java.lang.classfile.instruction.TypeCheckInstruction;
+import java.lang.constant.ClassDesc;
+import java.lang.constant.ConstantDesc;
+import java.lang.constant.ConstantDescs;
+import java.lang.constant.DynamicConstantDesc;
+import java.lang.constant.MethodHandleDesc;
+import java.lang.constant.MethodTypeDesc;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Symbolically executes straight-line code the way the verifier does, to tell whether a rewrite
+ * leaves the verifier's view of the stack and locals unchanged. When it does, the method's
+ * original stack map frames still describe the rewritten code.
+ * <p>
+ * Code containing labels or control flow is never straight-line, as that is where frames are.
+ */
+public final class FrameEffect {
+    // Deeper than any pattern reaches, so every popped value has a name
+    private static final int INPUTS = 32;
+    // The second slot of a long or double
+    private static final Object TOP = "top";
+    private static final Object NULL = "null";
+
+    // A value that was on the stack before the code, depth 0 being the top
+    private record Input(int depth) { }
+
+    // The value a local held before the code
+    private record Local(int slot) { }
+
+    // The object created by the index-th new instruction, before its constructor is called
+    private record Uninitialized(int index) { }
+
+    private final List<Object> stack = new ArrayList<>();
+    private final Map<Integer, Object> locals = new HashMap<>();
+    private final List<Map<Integer, Object>> localStates = new ArrayList<>();
+    private int newCount;
+
+    private FrameEffect() {
+        for (int i = INPUTS - 1; i >= 0; i--) {
+            stack.add(new Input(i));
+        }
+    }
+
+    /**
+     * Returns whether {@code replacement} leaves the same types on the stack and in the locals
+     * as {@code original}, and only passes through local states that the original also had
+     * before or after it, which exception handler frames rely on.
+     */
+    public static boolean isEquivalent(List<CodeElement> original, List<CodeElement> replacement) {
+        var before = execute(original);
+        var after = execute(replacement);
+        if (before == null || after == null || !before.stack.equals(after.stack) || !before.locals.equals(after.locals)) {
+            return false;
+        }
+        for (var state : after.localStates) {
+            if (!state.isEmpty() && !state.equals(after.locals)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static FrameEffect execute(List<CodeElement> code) {
+        var effect = new FrameEffect();
+        for (var element : code) {
+            if (!effect.execute(element)) {
+                return null;
+            }
+            effect.localStates.add(Map.copyOf(effect.locals));
+        }
+        // A frame can't refer to an object created by the rewritten code
+        if (effect.stack.stream().anyMatch(Uninitialized.class::isInstance) ||
+            effect.locals.values().stream().anyMatch(Uninitialized.class::isInstance)) {
+            return null;
+        }
+        return effect;
+    }
+
+    /**
+     * Applies a single instruction, returning {@code false} for elements this class doesn't model
+     * or if the stack underflows.
+     */
+    private boolean execute(CodeElement element) {
+        switch (element) {
+            case NopInstruction _, IncrementInstruction _ -> { }
+            case LoadInstruction i -> push(locals.getOrDefault(i.slot(), new Local(i.slot())), i.typeKind());
+            case StoreInstruction i -> {
+                if (!has(i.typeKind().slotSize())) return false;
+                var value = pop(i.typeKind());
+                if (value.equals(new Local(i.slot()))) {
+                    locals.remove(i.slot());
+                    locals.remove(i.slot() + 1);
+                } else {
+                    locals.put(i.slot(), value);
+                    if (i.typeKind().slotSize() == 2) {
+                        locals.put(i.slot() + 1, TOP);
+                    }
+                }
+            }
+            case ConstantInstruction i -> {
+                if (i.opcode() == Opcode.ACONST_NULL) {
+                    push(NULL, TypeKind.REFERENCE);
+                } else {
+                    var type = constantType(i.constantValue(), i.typeKind());
+                    if (type == null) return false;
+                    push(type, i.typeKind());
+                }
+            }
+            case StackInstruction i -> {
+                int count = switch (i.opcode()) {
+                    case POP, DUP -> 1;
+                    case POP2, DUP2, DUP_X1, SWAP -> 2;
+                    case DUP_X2, DUP2_X1 -> 3;
+                    case DUP2_X2 -> 4;
+                    default -> -1;
+                };
+                if (count < 0 || !has(count)) return false;
+                var top = new ArrayList<>(stack.subList(stack.size() - count, stack.size()));
+                stack.subList(stack.size() - count, stack.size()).clear();
+                switch (i.opcode()) {
+                    case POP, POP2 -> { }
+                    case DUP -> stack.addAll(List.of(top.get(0), top.get(0)));
+                    case DUP_X1 -> stack.addAll(List.of(top.get(1), top.get(0), top.get(1)));
+                    case DUP_X2 -> stack.addAll(List.of(top.get(2), top.get(0), top.get(1), top.get(2)));
+                    case DUP2 -> stack.addAll(List.of(top.get(0), top.get(1), top.get(0), top.get(1)));
+                    case DUP2_X1 -> stack.addAll(List.of(top.get(1), top.get(2), top.get(0), top.get(1), top.get(2)));
+                    case DUP2_X2 -> stack.addAll(List.of(top.get(2), top.get(3), top.get(0), top.get(1), top.get(2), top.get(3)));
+                    default -> stack.addAll(List.of(top.get(1), top.get(0)));
+                }
+            }
+            case OperatorInstruction i -> {
+                int slots = switch (i.opcode()) {
+                    case ARRAYLENGTH, INEG, FNEG -> 1;
+                    case LNEG, DNEG, ISHL, ISHR, IUSHR, FCMPL, FCMPG -> 2;
+                    case LSHL, LSHR, LUSHR -> 3;
+                    case LCMP, DCMPL, DCMPG -> 4;
+                    default -> 2 * i.typeKind().slotSize();
+                };
+                if (!has(slots)) return false;
+                drop(slots);
+                switch (i.opcode()) {
+                    case ARRAYLENGTH, LCMP, FCMPL, FCMPG, DCMPL, DCMPG -> push(ConstantDescs.CD_int, TypeKind.INT);
+                    default -> push(type(i.typeKind()), i.typeKind());
+                }
+            }
+            case ConvertInstruction i -> {
+                if (!has(i.fromType().slotSize())) return false;
+                drop(i.fromType().slotSize());
+                push(type(i.toType()), i.toType());
+            }
+            case TypeCheckInstruction i -> {
+                if (!has(1)) return false;
+                drop(1);
+                if (i.opcode() == Opcode.CHECKCAST) {
+                    push(i.type().asSymbol(), TypeKind.REFERENCE);
+                } else {
+                    push(ConstantDescs.CD_int, TypeKind.INT);
+                }
+            }
+            case NewObjectInstruction _ -> push(new Uninitialized(newCount++), TypeKind.REFERENCE);
+            case NewPrimitiveArrayInstruction i -> {
+                if (!has(1)) return false;
+                drop(1);
+                push(i.typeKind().upperBound().arrayType(), TypeKind.REFERENCE);
+            }
+            case NewReferenceArrayInstruction i -> {
+                if (!has(1)) return false;
+                drop(1);
+                push(i.componentType().asSymbol().arrayType(), TypeKind.REFERENCE);
+            }
+            case NewMultiArrayInstruction i -> {
+                if (!has(i.dimensions())) return false;
+                drop(i.dimensions());
+                push(i.arrayType().asSymbol(), TypeKind.REFERENCE);
+            }
+            case ArrayLoadInstruction i -> {
+                if (!has(2)) return false;
+                drop(1);
+                var array = stack.removeLast();
+                if (i.typeKind() != TypeKind.REFERENCE) {
+                    push(type(i.typeKind()), i.typeKind());
+                } else if (array instanceof ClassDesc arrayType && arrayType.isArray()) {
+                    push(arrayType.componentType(), TypeKind.REFERENCE);
+                } else {
+                    return false;
+                }
+            }
+            case ArrayStoreInstruction i -> {
+                if (!has(2 + i.typeKind().slotSize())) return false;
+                drop(2 + i.typeKind().slotSize());
+            }
+            case MonitorInstruction _ -> {
+                if (!has(1)) return false;
+                drop(1);
+            }
+            case FieldInstruction i -> {
+                var kind = TypeKind.from(i.typeSymbol());
+                int slots = switch (i.opcode()) {
+                    case GETSTATIC -> 0;
+                    case GETFIELD -> 1;
+                    case PUTSTATIC -> kind.slotSize();
+                    default -> kind.slotSize() + 1;
+                };
+                if (!has(slots)) return false;
+                drop(slots);
+                if (i.opcode() == Opcode.GETSTATIC || i.opcode() == Opcode.GETFIELD) {
+                    push(type(i.typeSymbol()), kind);
+                }
+            }
+            case InvokeInstruction i -> {
+                boolean hasReceiver = i.opcode() != Opcode.INVOKESTATIC;
+                int slots = argumentSlots(i.typeSymbol());
+                if (!has(slots + (hasReceiver ? 1 : 0))) return false;
+                drop(slots);
+                if (hasReceiver) {
+                    var receiver = stack.removeLast();
+                    if (i.name().equalsString("<init>")) {
+                        // Only objects created here are tracked, not the uninitialized this
+                        if (!(receiver instanceof Uninitialized)) return false;
+                        var initialized = i.owner().asSymbol();
+                        stack.replaceAll(value -> value.equals(receiver) ? initialized : value);
+                        locals.replaceAll((_, value) -> value.equals(receiver) ? initialized : value);
+                    }
+                }
+                pushReturn(i.typeSymbol());
+            }
+            case InvokeDynamicInstruction i -> {
+                int slots = argumentSlots(i.typeSymbol());
+                if (!has(slots)) return false;
+                drop(slots);
+                pushReturn(i.typeSymbol());
+            }
+            default -> {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int argumentSlots(MethodTypeDesc type) {
+        int slots = 0;
+        for (var parameter : type.parameterList()) {
+            slots += TypeKind.from(parameter).slotSize();
+        }
+        return slots;
+    }
+
+    private void pushReturn(MethodTypeDesc type) {
+        var kind = TypeKind.from(type.returnType());
+        if (kind != TypeKind.VOID) {
+            push(type(type.returnType()), kind);
+        }
+    }
+
+    private static ClassDesc constantType(ConstantDesc value, TypeKind kind) {
+        if (kind != TypeKind.REFERENCE) {
+            return type(kind);
+        }
+        return switch (value) {
+            case String _ -> ConstantDescs.CD_String;
+            case ClassDesc _ -> ConstantDescs.CD_Class;
+            case MethodTypeDesc _ -> ConstantDescs.CD_MethodType;
+            case MethodHandleDesc _ -> ConstantDescs.CD_MethodHandle;
+            case DynamicConstantDesc<?> dynamic -> dynamic.constantType();
+            default -> null;
+        };
+    }
+
+    // The verifier treats booleans, bytes, chars and shorts as ints
+    private static ClassDesc type(TypeKind kind) {
+        return kind.asLoadable().upperBound();
+    }
+
+    private static ClassDesc type(ClassDesc type) {
+        return type.isPrimitive() ? type(TypeKind.from(type)) : type;
+    }
+
+    private void push(Object value, TypeKind kind) {
+        stack.add(value);
+        if (kind.slotSize() == 2) {
+            stack.add(TOP);
+        }
+    }
+
+    private Object pop(TypeKind kind) {
+        if (kind.slotSize() == 2) {
+            stack.removeLast();
+        }
+        return stack.removeLast();
+    }
+
+    private void drop(int slots) {
+        stack.subList(stack.size() - slots, stack.size()).clear();
+    }
+
+    private boolean has(int slots) {
+        return stack.size() >= slots;
+    }
+}
@@ -0,0 +1,244 @@
+package eu.jameshamilton.classfile;
+
+import java.lang.classfile.CodeElement;
+import java.lang.classfile.Label;
+import java.lang.classfile.Opcode;
+import java.lang.classfile.TypeKind;
+import java.lang.classfile.constantpool.ConstantPoolBuilder;
+import java.lang.classfile.constantpool.LoadableConstantEntry;
+import java.lang.classfile.instruction.BranchInstruction;
+import java.lang.classfile.instruction.ConstantInstruction;
+import java.lang.classfile.instruction.ConvertInstruction;
+import java.lang.classfile.instruction.IncrementInstruction;
+import java.lang.classfile.instruction.InvokeInstruction;
+import java.lang.classfile.instruction.LoadInstruction;
+import java.lang.classfile.instruction.NewObjectInstruction;
+import java.lang.classfile.instruction.OperatorInstruction;
+import java.lang.classfile.instruction.StackInstruction;
+import java.lang.classfile.instruction.StoreInstruction;
+import java.lang.constant.ClassDesc;
+import java.lang.constant.ConstantDesc;
+import java.lang.constant.ConstantDescs;
+import java.lang.constant.MethodTypeDesc;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects the replacement instructions emitted by an optimization, mirroring the subset of
+ * {@link java.lang.classfile.CodeBuilder} the optimizations use. Unlike a {@code CodeBuilder},
+ * it does not need a class to be under construction: constant pool entries are created in the
+ * constant pool that the optimized class is eventually written with.
+ */
+public class InstructionBuilder {
+    private final ConstantPoolBuilder constantPool;
+    private final List<CodeElement> elements = new ArrayList<>();
+
+    public InstructionBuilder(ConstantPoolBuilder constantPool) {
+        this.constantPool = constantPool;
+    }
+
+    public ConstantPoolBuilder constantPool() {
+        return constantPool;
+    }
+
+    public List<CodeElement> elements() {
+        return elements;
+    }
+
+    public InstructionBuilder clear() {
+        elements.clear();
+        return this;
+    }
+
+    public InstructionBuilder with(CodeElement element) {
+        elements.add(element);
+        return this;
+    }
+
+    // Loading Constants
+    public InstructionBuilder loadConstant(ConstantDesc value) {
+        if (value == null || value == ConstantDescs.NULL) {
+            return aconst_null();
+        }
+        return switch (value) {
+            case Integer i -> loadConstant((int) i);
+            case Long l -> loadConstant((long) l);
+            case Float f -> loadConstant((float) f);
+            case Double d -> loadConstant((double) d);
+            default -> ldc(value);
+        };
+    }
+
+    public InstructionBuilder loadConstant(int value) {
+        return switch (value) {
+            case -1 -> iconst_m1();
+            case 0 -> iconst_0();
+            case 1 -> iconst_1();
+            case 2 -> iconst_2();
+            case 3 -> iconst_3();
+            case 4 -> iconst_4();
+            case 5 -> iconst_5();
+            default -> value == (byte) value ? bipush(value)
+                : value == (short) value ? sipush(value)
+                : ldc(constantPool.intEntry(value));
+        };
+    }
+
+    public InstructionBuilder loadConstant(long value) {
+        if (value == 0L) return with(ConstantInstruction.ofIntrinsic(Opcode.LCONST_0));
+        if (value == 1L) return with(ConstantInstruction.ofIntrinsic(Opcode.LCONST_1));
+        return ldc(constantPool.longEntry(value));
+    }
+
+    public InstructionBuilder loadConstant(float value) {
+        // fconst_0 only for +0.0f, -0.0f has to be loaded from the constant pool
+        if (Float.floatToRawIntBits(value) == 0) return with(ConstantInstruction.ofIntrinsic(Opcode.FCONST_0));
+        if (value == 1.0f) return with(ConstantInstruction.ofIntrinsic(Opcode.FCONST_1));
+        if (value == 2.0f) return with(ConstantInstruction.ofIntrinsic(Opcode.FCONST_2));
+        return ldc(constantPool.floatEntry(value));
+    }
+
+    public InstructionBuilder loadConstant(double value) {
+        // dconst_0 only for +0.0, -0.0 has to be loaded from the constant pool
+        if (Double.doubleToRawLongBits(value) == 0L) return with(ConstantInstruction.ofIntrinsic(Opcode.DCONST_0));
+        if (value == 1.0) return with(ConstantInstruction.ofIntrinsic(Opcode.DCONST_1));
+        return ldc(constantPool.doubleEntry(value));
+    }
+
+    public InstructionBuilder ldc(ConstantDesc value) {
+        return ldc(constantPool.loadableConstantEntry(value));
+    }
+
+    public InstructionBuilder ldc(LoadableConstantEntry entry) {
+        Opcode opcode = entry.typeKind().slotSize() == 2 ? Opcode.LDC2_W
+            : entry.index() > 0xFF ? Opcode.LDC_W
+            : Opcode.LDC;
+        return with(ConstantInstruction.ofLoad(opcode, entry));
+    }
+
+    public InstructionBuilder aconst_null() {
+        return with(ConstantInstruction.ofIntrinsic(Opcode.ACONST_NULL));
+    }
+
+    public InstructionBuilder iconst_m1() {
+        return with(ConstantInstruction.ofIntrinsic(Opcode.ICONST_M1));
+    }
+
+    public InstructionBuilder iconst_0() {
+        return with(ConstantInstruction.ofIntrinsic(Opcode.ICONST_0));
+    }
+
+    public InstructionBuilder iconst_1() {
+        return with(ConstantInstruction.ofIntrinsic(Opcode.ICONST_1));
+    }
+
+    public InstructionBuilder iconst_2() {
+        return with(ConstantInstruction.ofIntrinsic(Opcode.ICONST_2));
+    }
+
+    public InstructionBuilder iconst_3() {
+        return with(ConstantInstruction.ofIntrinsic(Opcode.ICONST_3));
+    }
+
+    public InstructionBuilder iconst_4() {
+        return with(ConstantInstruction.ofIntrinsic(Opcode.ICONST_4));
+    }
+
+    public InstructionBuilder iconst_5() {
+        return with(ConstantInstruction.ofIntrinsic(Opcode.ICONST_5));
+    }
+
+    public InstructionBuilder bipush(int value) {
+        return with(ConstantInstruction.ofArgument(Opcode.BIPUSH, value));
+    }
+
+    public InstructionBuilder sipush(int value) {
+        return with(ConstantInstruction.ofArgument(Opcode.SIPUSH, value));
+    }
+
+    // Local Variables
+    public InstructionBuilder loadLocal(TypeKind type, int slot) {
+        return with(LoadInstruction.of(type, slot));
+    }
+
+    public InstructionBuilder storeLocal(TypeKind type, int slot) {
+        return with(StoreInstruction.of(type, slot));
+    }
+
+    // Stack Operations
+    public InstructionBuilder pop() {
+        return with(StackInstruction.of(Opcode.POP));
+    }
+
+    public InstructionBuilder pop2() {
+        return with(StackInstruction.of(Opcode.POP2));
+    }
+
+    public InstructionBuilder dup() {
+        return with(StackInstruction.of(Opcode.DUP));
+    }
+
+    public InstructionBuilder dup2() {
+        return with(StackInstruction.of(Opcode.DUP2));
+    }
+
+    // Math Operations
+    public InstructionBuilder isub() {
+        return with(OperatorInstruction.of(Opcode.ISUB));
+    }
+
+    public InstructionBuilder iinc(int slot, int value) {
+        return with(IncrementInstruction.of(slot, value));
+    }
+
+    // Type Conversion
+    public InstructionBuilder i2b() {
+        return with(ConvertInstruction.of(Opcode.I2B));
+    }
+
+    public InstructionBuilder i2c() {
+        return with(ConvertInstruction.of(Opcode.I2C));
+    }
+
+    public InstructionBuilder i2s() {
+        return with(ConvertInstruction.of(Opcode.I2S));
+    }
+
+    // Branches
+    public InstructionBuilder ifeq(Label target) {
+        return with(BranchInstruction.of(Opcode.IFEQ, target));
+    }
+
+    public InstructionBuilder ifne(Label target) {
+        return with(BranchInstruction.of(Opcode.IFNE, target));
+    }
+
+    public InstructionBuilder iflt(Label target) {
+        return with(BranchInstruction.of(Opcode.IFLT, target));
+    }
+
+    public InstructionBuilder ifgt(Label target) {
+        return with(BranchInstruction.of(Opcode.IFGT, target));
+    }
+
+    public InstructionBuilder ifle(Label target) {
+        return with(BranchInstruction.of(Opcode.IFLE, target));
+    }
+
+    public InstructionBuilder ifge(Label target) {
+        return with(BranchInstruction.of(Opcode.IFGE, target));
+    }
+
+    // Objects and Methods
+    public InstructionBuilder new_(ClassDesc type) {
+        return with(NewObjectInstruction.of(constantPool.classEntry(type)));
+    }
+
+    public InstructionBuilder invokevirtual(ClassDesc owner, String name, MethodTypeDesc type) {
+        return with(InvokeInstruction.of(Opcode.INVOKEVIRTUAL, constantPool.methodRefEntry(owner, name, type)));
+    }
+
+    public InstructionBuilder invokespecial(ClassDesc owner, String name, MethodTypeDesc type) {
+        return with(InvokeInstruction.of(Opcode.INVOKESPECIAL, constantPool.methodRefEntry(owner, name, type)));
+    }
+}
@@ -0,0 +1,114 @@
+package eu.jameshamilton.classfile;
+
+import java.lang.classfile.CodeBuilder;
+import java.lang.classfile.CodeElement;
+import java.lang.classfile.Instruction;
+import java.lang.classfile.Label;
+import java.lang.classfile.instruction.ExceptionCatch;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A mutable, array-backed view of a method body that optimizations rewrite in place.
+ * <p>
+ * The executable elements (instructions, labels and exception catches) form the list that
+ * optimizations match against. All other elements, such as line numbers and local variable
+ * information, are kept attached to the executable element that follows them, so that they
+ * are written back in their original position.
+ */
+public class InstructionList {
+    private final List<CodeElement> instructions = new ArrayList<>();
+    // The non-executable elements preceding each instruction, or null if there are none
+    private final List<List<CodeElement>> leading = new ArrayList<>();
+    private final List<CodeElement> trailing = new ArrayList<>();
+    private final List<CodeElement> view = Collections.unmodifiableList(instructions);
+    private boolean preservesFrames = true;
+
+    public InstructionList(Iterable<CodeElement> elements) {
+        var pending = new ArrayList<CodeElement>();
+        for (CodeElement e : elements) {
+            if (isExecutable(e)) {
+                instructions.add(e);
+                leading.add(pending.isEmpty() ? null : List.copyOf(pending));
+                pending.clear();
+            } else {
+                pending.add(e);
+            }
+        }
+        trailing.addAll(pending);
+    }
+
+    public static boolean isExecutable(CodeElement e) {
+        return e instanceof Instruction || e instanceof Label || e instanceof ExceptionCatch;
+    }
+
+    public int size() {
+        return instructions.size();
+    }
+
+    public CodeElement get(int index) {
+        return instructions.get(index);
+    }
+
+    public List<CodeElement> instructions() {
+        return view;
+    }
+
+    /**
+     * Replaces {@code count} executable elements starting at {@code index} with {@code replacement}.
+     * <p>
+     * The non-executable elements preceding the first replaced element are kept, any that were
+     * interleaved with the replaced elements are dropped.
+     */
+    public void replace(int index, int count, List<CodeElement> replacement) {
+        var kept = leading.get(index);
+        var range = instructions.subList(index, index + count);
+        if (preservesFrames) {
+            preservesFrames = FrameEffect.isEquivalent(range, replacement);
+        }
+        range.clear();
+        range.addAll(replacement);
+
+        var leadingRange = leading.subList(index, index + count);
+        leadingRange.clear();
+        leadingRange.addAll(Collections.nCopies(replacement.size(), null));
+
+        if (kept != null) {
+            if (!replacement.isEmpty()) {
+                leading.set(index, kept);
+            } else if (index < leading.size()) {
+                leading.set(index, concat(kept, leading.get(index)));
+            } else {
+                trailing.addAll(0, kept);
+            }
+        }
+    }
+
+    /**
+     * Returns whether every replacement so far left the verifier's view of the code unchanged,
+     * so that the stack map frames of the original code still apply.
+     */
+    public boolean preservesFrames() {
+        return preservesFrames;
+    }
+
+    private static List<CodeElement> concat(List<CodeElement> a, List<CodeElement> b) {
+        if (b == null) return a;
+        var result = new ArrayList<CodeElement>(a.size() + b.size());
+        result.addAll(a);
+        result.addAll(b);
+        return result;
+    }
+
+    public void writeTo(CodeBuilder codeBuilder) {
+        for (int i = 0; i < instructions.size(); i++) {
+            var preceding = leading.get(i);
+            if (preceding != null) {
+                preceding.forEach(codeBuilder::with);
+            }
+            codeBuilder.with(instructions.get(i));
+        }
+        trailing.forEach(codeBuilder::with);
+    }
+}
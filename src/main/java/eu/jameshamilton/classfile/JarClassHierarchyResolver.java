@@ -1,39 +1,64 @@
 package eu.jameshamilton.classfile;
 
+import eu.jameshamilton.zip.ZipReader;
+
 import java.io.IOException;
 import java.lang.classfile.ClassHierarchyResolver;
 import java.lang.constant.ClassDesc;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
 
+/**
+ * Resolves the hierarchy of the classes in a jar from an index of their headers. The index is
+ * built up front by reading every class in parallel, so lookups don't touch the jar.
+ */
 public class JarClassHierarchyResolver implements ClassHierarchyResolver {
-    private final ClassHierarchyResolver resourceClassHierarchyResolver;
-
-    public JarClassHierarchyResolver(JarFile jarFile) {
-        this.resourceClassHierarchyResolver = ClassHierarchyResolver.ofResourceParsing(
-            classDesc -> {
-                String internalName = toInternalName(classDesc);
-                JarEntry jarEntry = jarFile.getJarEntry(internalName + ".class");
-                if (jarEntry == null) return null;
-
-                try {
-                    return jarFile.getInputStream(jarEntry);
-                } catch (IOException e) {
-                    return null;
-                }
-            }
-        );
+    // Keyed by descriptor, which a ClassDesc already holds, so a lookup doesn't allocate
+    private final Map<String, ClassHierarchyInfo> index;
+    private final byte[] fingerprint;
+
+    public JarClassHierarchyResolver(ZipReader jar) {
+        var headers = jar.entries()
+            .parallelStream()
+            .filter(entry -> isClass(entry.name()))
+            .map(entry -> readHeader(jar, entry))
+            .filter(Objects::nonNull)
+            .collect(Collectors.toMap(ClassHeader::descriptor, header -> header, (first, _) -> first, TreeMap::new));
+
+        this.index = headers.values().stream()
+            .collect(Collectors.toUnmodifiableMap(ClassHeader::descriptor, ClassHeader::info));
+
+        var digest = ClassHeader.digest();
+        headers.values().forEach(header -> header.update(digest));
+        this.fingerprint = digest.digest();
+    }
+
+    /**
+     * Returns a hash of the hierarchy, which only changes if a class is added, removed or
+     * changes its superclass or kind.
+     */
+    public byte[] fingerprint() {
+        return fingerprint.clone();
+    }
+
+    static boolean isClass(String name) {
+        // Versioned classes of multi-release jars share their names with the base ones
+        return name.endsWith(".class") && !name.startsWith("META-INF/") && !name.endsWith("module-info.class");
     }
 
-    private static String toInternalName(ClassDesc cd) {
-        var desc = cd.descriptorString();
-        if (desc.charAt(0) == 'L')
-            return desc.substring(1, desc.length() - 1);
-        throw new IllegalArgumentException(desc);
+    static ClassHeader readHeader(ZipReader zip, ZipReader.Entry entry) {
+        try {
+            return ClassHeader.parse(zip.read(entry));
+        } catch (IOException | RuntimeException e) {
+            // Unreadable classes are left to the next resolver
+            return null;
+        }
     }
 
     @Override
     public ClassHierarchyInfo getClassInfo(ClassDesc classDesc) {
-        return resourceClassHierarchyResolver.getClassInfo(classDesc);
+        return index.get(classDesc.descriptorString());
     }
 }
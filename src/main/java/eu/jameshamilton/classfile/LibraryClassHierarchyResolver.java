@@ -0,0 +1,291 @@
+package eu.jameshamilton.classfile;
+
+import eu.jameshamilton.zip.ZipReader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.classfile.ClassHierarchyResolver;
+import java.lang.constant.ClassDesc;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Objects;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * Resolves the hierarchy of library classes from jars, jmods or, given {@value #JRT}, the image of
+ * the running JDK. Each library is indexed once and the index is cached on disk, keyed by a hash
+ * of the library's contents, so later runs map the index instead of parsing the library again.
+ * <p>
+ * An index is an open addressing hash table over the class descriptors:
+ * <pre>
+ * header:  magic, version, class count, table size (a power of two)
+ * table:   table size record offsets, 0 for an empty slot
+ * records: descriptor hash, flags, descriptor, superclass descriptor
+ * </pre>
+ * Lookups only read the buffer at absolute positions, so it is shared between threads.
+ */
+public class LibraryClassHierarchyResolver implements ClassHierarchyResolver {
+    public static final String JRT = "jrt";
+
+    private static final int MAGIC = 0x4A4F4849;
+    // Cached indexes of another version are rebuilt, bump it whenever the layout changes
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int INTERFACE = 1;
+
+    private final List<ByteBuffer> indexes;
+
+    private LibraryClassHierarchyResolver(List<ByteBuffer> indexes) {
+        this.indexes = indexes;
+    }
+
+    /**
+     * Indexes the given libraries, reusing the indexes in {@code cacheDirectory} if there are
+     * any. Without a cache directory the indexes are only built in memory.
+     */
+    public static LibraryClassHierarchyResolver of(List<String> libraries, Path cacheDirectory) throws IOException {
+        var indexes = new ArrayList<ByteBuffer>();
+        for (var library : libraries) {
+            indexes.add(cacheDirectory == null ? build(headers(library)) : cachedIndex(library, cacheDirectory));
+        }
+        return new LibraryClassHierarchyResolver(indexes);
+    }
+
+    private static ByteBuffer cachedIndex(String library, Path cacheDirectory) throws IOException {
+        var file = cacheDirectory.resolve("hierarchy-" + contentHash(library) + ".idx");
+        if (Files.isRegularFile(file)) {
+            try (var channel = FileChannel.open(file)) {
+                var index = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                if (isValid(index)) {
+                    return index;
+                }
+            } catch (IOException e) {
+                // Rebuilt like an index of another version
+            }
+        }
+
+        var index = build(headers(library));
+        Path temporary = null;
+        try {
+            Files.createDirectories(cacheDirectory);
+            // Moved into place once complete, so that concurrent runs never map a partial index
+            temporary = Files.createTempFile(cacheDirectory, "hierarchy-", ".tmp");
+            Files.write(temporary, index.array());
+            Files.move(temporary, file, ATOMIC_MOVE, REPLACE_EXISTING);
+        } catch (IOException e) {
+            // Such as a full disk or a read-only directory, the index is then only kept in memory
+            System.err.println("Not caching the class hierarchy of " + library + " in " + cacheDirectory + ": " + e);
+            if (temporary != null) {
+                try {
+                    Files.deleteIfExists(temporary);
+                } catch (IOException ignored) {
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Returns whether the index has the current layout, with the table and every record inside
+     * of it and an empty slot to end lookups, so that reading it can't fail.
+     */
+    private static boolean isValid(ByteBuffer index) {
+        int size = index.capacity();
+        if (size < HEADER_SIZE || index.getInt(0) != MAGIC || index.getInt(4) != VERSION) {
+            return false;
+        }
+        int tableSize = index.getInt(12);
+        if (tableSize <= 0 || Integer.bitCount(tableSize) != 1 || tableSize > (size - HEADER_SIZE) / Integer.BYTES) {
+            return false;
+        }
+
+        int recordsStart = HEADER_SIZE + tableSize * Integer.BYTES;
+        int empty = 0;
+        for (int slot = 0; slot < tableSize; slot++) {
+            int record = index.getInt(HEADER_SIZE + slot * Integer.BYTES);
+            if (record == 0) {
+                empty++;
+                continue;
+            }
+            // The hash, the flags and the lengths of both descriptors
+            if (record < recordsStart || record > size - 9) {
+                return false;
+            }
+            int superclass = record + 7 + (index.getShort(record + 5) & 0xFFFF);
+            if (superclass > size - 2 || superclass + 2 + (index.getShort(superclass) & 0xFFFF) > size) {
+                return false;
+            }
+        }
+        return empty > 0;
+    }
+
+    private static List<ClassHeader> headers(String library) throws IOException {
+        if (library.equals(JRT)) {
+            var modules = FileSystems.getFileSystem(URI.create("jrt:/")).getPath("/modules");
+            try (var paths = Files.walk(modules)) {
+                return paths
+                    .filter(path -> path.toString().endsWith(".class") && !path.endsWith("module-info.class"))
+                    .toList()
+                    .parallelStream()
+                    .map(path -> {
+                        try {
+                            return ClassHeader.parse(Files.readAllBytes(path));
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    })
+                    .filter(Objects::nonNull)
+                    .toList();
+            }
+        }
+
+        // The classes of a jmod are in its classes directory
+        var prefix = library.endsWith(".jmod") ? "classes/" : "";
+        try (var zip = ZipReader.open(Path.of(library))) {
+            return zip.entries()
+                .parallelStream()
+                .filter(entry -> entry.name().startsWith(prefix) &&
+                    JarClassHierarchyResolver.isClass(entry.name().substring(prefix.length())))
+                .map(entry -> JarClassHierarchyResolver.readHeader(zip, entry))
+                .filter(Objects::nonNull)
+                .toList();
+        }
+    }
+
+    /**
+     * Returns a hash of the library's contents. The JDK image is identified by its location,
+     * version, size and modification time instead, as reading all of it takes longer than
+     * indexing it.
+     */
+    private static String contentHash(String library) throws IOException {
+        var digest = ClassHeader.digest();
+        if (library.equals(JRT)) {
+            var modules = Path.of(System.getProperty("java.home"), "lib", "modules");
+            var identity = modules.toAbsolutePath() + ":" + Runtime.version() + ":" +
+                Files.size(modules) + ":" + Files.getLastModifiedTime(modules).toMillis();
+            digest.update(identity.getBytes(StandardCharsets.UTF_8));
+        } else {
+            try (InputStream inputStream = new DigestInputStream(Files.newInputStream(Path.of(library)), digest)) {
+                inputStream.transferTo(OutputStream.nullOutputStream());
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static ByteBuffer build(List<ClassHeader> headers) throws IOException {
+        // The first of several classes with the same name wins, as on a class path
+        var classes = new LinkedHashMap<String, ClassHeader>();
+        headers.forEach(header -> classes.putIfAbsent(header.descriptor(), header));
+
+        // At most half of the slots are used, which keeps probe sequences short
+        int tableSize = 2;
+        while (tableSize < classes.size() * 2) {
+            tableSize <<= 1;
+        }
+
+        int recordsStart = HEADER_SIZE + tableSize * Integer.BYTES;
+        int[] slots = new int[tableSize];
+        var records = new ByteArrayOutputStream();
+        var output = new DataOutputStream(records);
+        for (var header : classes.values()) {
+            int hash = header.descriptor().hashCode();
+            int slot = hash & (tableSize - 1);
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & (tableSize - 1);
+            }
+            slots[slot] = recordsStart + output.size();
+
+            output.writeInt(hash);
+            output.writeByte(header.isInterface() ? INTERFACE : 0);
+            writeString(output, header.descriptor());
+            writeString(output, header.superclass() == null ? "" : header.superclass());
+        }
+
+        var index = ByteBuffer.allocate(recordsStart + output.size());
+        index.putInt(MAGIC).putInt(VERSION).putInt(classes.size()).putInt(tableSize);
+        index.asIntBuffer().put(slots);
+        index.put(recordsStart, records.toByteArray());
+        return index.clear();
+    }
+
+    private static void writeString(DataOutputStream output, String string) throws IOException {
+        var bytes = string.getBytes(StandardCharsets.UTF_8);
+        output.writeShort(bytes.length);
+        output.write(bytes);
+    }
+
+    /**
+     * Returns a hash of the indexed hierarchies.
+     */
+    public byte[] fingerprint() {
+        var digest = ClassHeader.digest();
+        indexes.forEach(index -> digest.update(index.duplicate().clear()));
+        return digest.digest();
+    }
+
+    @Override
+    public ClassHierarchyInfo getClassInfo(ClassDesc classDesc) {
+        var descriptor = classDesc.descriptorString();
+        for (var index : indexes) {
+            int record = find(index, descriptor);
+            if (record != 0) {
+                int superclass = record + 5 + 2 + (index.getShort(record + 5) & 0xFFFF);
+                if ((index.get(record + 4) & INTERFACE) != 0) {
+                    return ClassHierarchyInfo.ofInterface();
+                }
+                int length = index.getShort(superclass) & 0xFFFF;
+                return ClassHierarchyInfo.ofClass(length == 0 ? null : ClassDesc.ofDescriptor(readString(index, superclass + 2, length)));
+            }
+        }
+        return null;
+    }
+
+    private static int find(ByteBuffer index, String descriptor) {
+        int hash = descriptor.hashCode();
+        int mask = index.getInt(12) - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int record = index.getInt(HEADER_SIZE + slot * Integer.BYTES);
+            if (record == 0) {
+                return 0;
+            }
+            if (index.getInt(record) == hash && matches(index, record + 7, index.getShort(record + 5) & 0xFFFF, descriptor)) {
+                return record;
+            }
+        }
+    }
+
+    private static boolean matches(ByteBuffer index, int position, int length, String string) {
+        if (length != string.length()) {
+            // Only names with non-ASCII characters are longer in UTF-8
+            return length > string.length() && readString(index, position, length).equals(string);
+        }
+        for (int i = 0; i < length; i++) {
+            if (index.get(position + i) != string.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String readString(ByteBuffer index, int position, int length) {
+        var bytes = new byte[length];
+        index.get(position, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,37 @@
+package eu.jameshamilton.classfile;
+
+import java.lang.classfile.Opcode;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Commonly used groups of opcodes.
+ */
+public final class Opcodes {
+    public static final Set<Opcode> ALL = Collections.unmodifiableSet(EnumSet.allOf(Opcode.class));
+    public static final Set<Opcode> CONSTANTS = ofKind(Opcode.Kind.CONSTANT);
+    public static final Set<Opcode> LOADS = ofKind(Opcode.Kind.LOAD);
+    public static final Set<Opcode> STORES = ofKind(Opcode.Kind.STORE);
+
+    private Opcodes() {
+    }
+
+    public static Set<Opcode> ofKind(Opcode.Kind kind) {
+        var opcodes = EnumSet.noneOf(Opcode.class);
+        Arrays.stream(Opcode.values())
+            .filter(opcode -> opcode.kind() == kind)
+            .forEach(opcodes::add);
+        return Collections.unmodifiableSet(opcodes);
+    }
+
+    @SafeVarargs
+    public static Set<Opcode> union(Set<Opcode>... sets) {
+        var opcodes = EnumSet.noneOf(Opcode.class);
+        for (var set : sets) {
+            opcodes.addAll(set);
+        }
+        return Collections.unmodifiableSet(opcodes);
+    }
+}
@@ -7,6 +7,14 @@ public class Any<T> implements Matcher<T> {
         return new Any<>();
     }
 
+    public static IntMatcher anyInt() {
+        return _ -> true;
+    }
+
+    public static LongMatcher anyLong() {
+        return _ -> true;
+    }
+
     @Override
     public boolean matches(T newValue) {
         return true;
@@ -6,6 +6,7 @@ import java.lang.classfile.Label;
 import java.lang.classfile.Opcode;
 import java.lang.classfile.TypeKind;
 import java.lang.classfile.constantpool.ClassEntry;
+import java.lang.classfile.constantpool.MemberRefEntry;
 import java.lang.classfile.instruction.BranchInstruction;
 import java.lang.classfile.instruction.ConstantInstruction;
 import java.lang.classfile.instruction.FieldInstruction;
@@ -54,7 +55,15 @@ public class InstructionMatchers {
         return e -> e instanceof Instruction i && opcode.matches(i.opcode());
     }
 
-    public static <T> Matcher<T> iinc(Matcher<Integer> slot, Matcher<Integer> amount) {
+    public static <T> Matcher<T> instruction(OpcodeSet opcodes) {
+        return e -> e instanceof Instruction i && opcodes.contains(i.opcode());
+    }
+
+    public static <T> Matcher<T> instruction(OpcodeSet opcodes, Matcher<Opcode> opcode) {
+        return e -> e instanceof Instruction i && opcodes.contains(i.opcode()) && opcode.matches(i.opcode());
+    }
+
+    public static <T> Matcher<T> iinc(IntMatcher slot, IntMatcher amount) {
         return e -> e instanceof IncrementInstruction i &&
             slot.matches(i.slot()) && amount.matches(i.constant());
     }
@@ -90,7 +99,7 @@ public class InstructionMatchers {
             l.opcode() == Opcode.ILOAD && l.slot() == slot;
     }
 
-    public static <T> Matcher<T> iload(Matcher<Integer> slot) {
+    public static <T> Matcher<T> iload(IntMatcher slot) {
         return e -> e instanceof LoadInstruction l &&
             l.opcode() == Opcode.ILOAD && slot.matches(l.slot());
     }
@@ -110,7 +119,7 @@ public class InstructionMatchers {
             l.opcode() == Opcode.DLOAD && l.slot() == slot;
     }
 
-    public static <T> Matcher<T> aload(Matcher<Integer> slot) {
+    public static <T> Matcher<T> aload(IntMatcher slot) {
         return e -> e instanceof LoadInstruction l &&
             l.opcode() == Opcode.ALOAD && slot.matches(l.slot());
     }
@@ -126,6 +135,11 @@ public class InstructionMatchers {
             s.opcode() == Opcode.ISTORE && s.slot() == slot;
     }
 
+    public static <T> Matcher<T> istore(IntMatcher slot) {
+        return e -> e instanceof StoreInstruction s &&
+            s.opcode() == Opcode.ISTORE && slot.matches(s.slot());
+    }
+
     public static <T> Matcher<T> lstore(int slot) {
         return e -> e instanceof StoreInstruction s &&
             s.opcode() == Opcode.LSTORE && s.slot() == slot;
@@ -344,6 +358,12 @@ public class InstructionMatchers {
             type.matches(f.field().typeSymbol());
     }
 
+    public static <T> Matcher<T> getstatic(Matcher<MemberRefEntry> field) {
+        return e -> e instanceof FieldInstruction f &&
+            f.opcode() == GETSTATIC &&
+            field.matches(f.field());
+    }
+
     public static <T> Matcher<T> putstatic(Matcher<ClassDesc> owner, Matcher<String> name, Matcher<ClassDesc> type) {
         return e -> e instanceof FieldInstruction f &&
             f.opcode() == PUTSTATIC &&
@@ -381,6 +401,12 @@ public class InstructionMatchers {
             type.matches(i.typeSymbol());
     }
 
+    public static <T> Matcher<T> invokevirtual(Matcher<MemberRefEntry> method) {
+        return e -> e instanceof InvokeInstruction i &&
+            i.opcode() == Opcode.INVOKEVIRTUAL &&
+            method.matches(i.method());
+    }
+
     public static <T> Matcher<T> invokevirtual(ClassDesc owner, String name, MethodTypeDesc type) {
         return e -> e instanceof InvokeInstruction i &&
             i.opcode() == Opcode.INVOKEVIRTUAL &&
@@ -397,6 +423,12 @@ public class InstructionMatchers {
             type.matches(i.typeSymbol());
     }
 
+    public static <T> Matcher<T> invokespecial(Matcher<MemberRefEntry> method) {
+        return e -> e instanceof InvokeInstruction i &&
+            i.opcode() == Opcode.INVOKESPECIAL &&
+            method.matches(i.method());
+    }
+
     public static <T> Matcher<T> invokestatic(Matcher<ClassDesc> owner, Matcher<String> name, Matcher<MethodTypeDesc> type) {
         return e -> e instanceof InvokeInstruction i &&
             i.opcode() == Opcode.INVOKESTATIC &&
@@ -406,6 +438,12 @@ public class InstructionMatchers {
 
     }
 
+    public static <T> Matcher<T> branch(Matcher<Opcode> opcode, Matcher<Label> labelMatcher) {
+        return e -> e instanceof BranchInstruction b &&
+            opcode.matches(b.opcode()) &&
+            labelMatcher.matches(b.target());
+    }
+
     public static <T> Matcher<T> goto_(Matcher<Label> label) {
         return e -> e instanceof BranchInstruction b
             && (b.opcode() == GOTO || b.opcode() == GOTO_W) &&
@@ -481,13 +519,13 @@ public class InstructionMatchers {
 
 
     // Utility matchers with captures
-    public static Matcher<CodeElement> loadInstruction(Matcher<TypeKind> type, Matcher<Integer> slot) {
+    public static Matcher<CodeElement> loadInstruction(Matcher<TypeKind> type, IntMatcher slot) {
         return e -> e instanceof LoadInstruction l &&
             type.matches(l.typeKind()) &&
             slot.matches(l.slot());
     }
 
-    public static Matcher<CodeElement> storeInstruction(Matcher<TypeKind> type, Matcher<Integer> slot) {
+    public static Matcher<CodeElement> storeInstruction(Matcher<TypeKind> type, IntMatcher slot) {
         return e -> e instanceof StoreInstruction s &&
             type.matches(s.typeKind()) &&
             slot.matches(s.slot());
@@ -504,12 +542,12 @@ public class InstructionMatchers {
             c.constantValue() instanceof String s && value.matches(s);
     }
 
-    public static <Y extends CodeElement> Matcher<Y> loadConstantInteger(Matcher<Integer> value) {
+    public static <Y extends CodeElement> Matcher<Y> loadConstantInteger(IntMatcher value) {
         return e -> e instanceof ConstantInstruction c &&
             c.constantValue() instanceof Integer s && value.matches(s);
     }
 
-    public static <Y extends CodeElement> Matcher<Y> loadConstantLong(Matcher<Long> value) {
+    public static <Y extends CodeElement> Matcher<Y> loadConstantLong(LongMatcher value) {
         return e -> e instanceof ConstantInstruction c &&
             c.constantValue() instanceof Long s && value.matches(s);
     }
@@ -544,18 +582,18 @@ public class InstructionMatchers {
     }
 
     public static <T> Matcher<T> bipush(int value) {
-        return e -> e instanceof ConstantInstruction c && c.opcode() == Opcode.BIPUSH && ((Integer)c.constantValue()).equals(value);
+        return e -> e instanceof ConstantInstruction c && c.opcode() == Opcode.BIPUSH && (Integer) c.constantValue() == value;
     }
 
     public static <T> Matcher<T> sipush(int value) {
-        return e -> e instanceof ConstantInstruction c && c.opcode() == Opcode.SIPUSH && ((Integer)c.constantValue()).equals(value);
+        return e -> e instanceof ConstantInstruction c && c.opcode() == Opcode.SIPUSH && (Integer) c.constantValue() == value;
     }
 
-    public static <T extends Integer, Y extends CodeElement> Matcher<Y> bipush(Matcher<T> value) {
-        return e -> e instanceof ConstantInstruction c && c.opcode() == Opcode.BIPUSH && value.matches((T)c.constantValue());
+    public static <Y extends CodeElement> Matcher<Y> bipush(IntMatcher value) {
+        return e -> e instanceof ConstantInstruction c && c.opcode() == Opcode.BIPUSH && value.matches((Integer) c.constantValue());
     }
 
-    public static <T extends Integer, Y extends CodeElement> Matcher<Y>  sipush(Matcher<T> value) {
-        return e -> e instanceof ConstantInstruction c && c.opcode() == Opcode.SIPUSH && value.matches((T)c.constantValue());
+    public static <Y extends CodeElement> Matcher<Y> sipush(IntMatcher value) {
+        return e -> e instanceof ConstantInstruction c && c.opcode() == Opcode.SIPUSH && value.matches((Integer) c.constantValue());
     }
 }
@@ -0,0 +1,40 @@
+package eu.jameshamilton.classfile.matcher;
+
+/**
+ * A {@link Capture} of an {@code int}: the first value matched is kept and later values
+ * only match if they are equal to it.
+ */
+public class IntCapture implements IntMatcher {
+    private int value;
+    private boolean captured;
+
+    @Override
+    public boolean matches(int element) {
+        return matchOrSet(element);
+    }
+
+    public boolean matchOrSet(int newValue) {
+        if (!captured) {
+            value = newValue;
+            captured = true;
+            return true;
+        }
+        return value == newValue;
+    }
+
+    public int get() {
+        if (!captured) {
+            throw new IllegalStateException("No value captured");
+        }
+        return value;
+    }
+
+    public boolean isCaptured() {
+        return captured;
+    }
+
+    public IntCapture clear() {
+        this.captured = false;
+        return this;
+    }
+}
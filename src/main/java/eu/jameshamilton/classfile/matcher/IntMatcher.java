@@ -0,0 +1,23 @@
+package eu.jameshamilton.classfile.matcher;
+
+/**
+ * A {@link Matcher} specialized for {@code int} operands, such as local variable slots,
+ * increments and integer constants, so they are matched without boxing.
+ */
+@FunctionalInterface
+public interface IntMatcher {
+
+    boolean matches(int value);
+
+    default IntMatcher and(IntMatcher other) {
+        return e -> this.matches(e) && other.matches(e);
+    }
+
+    default IntMatcher or(IntMatcher other) {
+        return e -> this.matches(e) || other.matches(e);
+    }
+
+    default IntMatcher not() {
+        return e -> !this.matches(e);
+    }
+}
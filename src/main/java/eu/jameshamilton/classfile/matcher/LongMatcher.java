@@ -0,0 +1,22 @@
+package eu.jameshamilton.classfile.matcher;
+
+/**
+ * A {@link Matcher} specialized for {@code long} operands, so they are matched without boxing.
+ */
+@FunctionalInterface
+public interface LongMatcher {
+
+    boolean matches(long value);
+
+    default LongMatcher and(LongMatcher other) {
+        return e -> this.matches(e) && other.matches(e);
+    }
+
+    default LongMatcher or(LongMatcher other) {
+        return e -> this.matches(e) || other.matches(e);
+    }
+
+    default LongMatcher not() {
+        return e -> !this.matches(e);
+    }
+}
@@ -0,0 +1,76 @@
+package eu.jameshamilton.classfile.matcher;
+
+import java.lang.classfile.constantpool.ConstantPool;
+import java.lang.classfile.constantpool.FieldRefEntry;
+import java.lang.classfile.constantpool.MemberRefEntry;
+import java.lang.constant.ClassDesc;
+import java.lang.constant.MethodTypeDesc;
+import java.util.Arrays;
+
+import static eu.jameshamilton.classfile.ConstantPoolUtil.internalName;
+
+/**
+ * Matches a field or method reference by its constant pool entry. The reference is looked up
+ * once per class with {@link #resolve(ConstantPool)}, after which matching an instruction
+ * compares pool indices instead of building and comparing the symbols of every candidate.
+ * A pool may hold several equal entries for the same reference, which all match.
+ * <p>
+ * Entries created while optimizing the class are added to a pool builder based on the class's
+ * pool, which reuses the existing entries, so their indices stay comparable. The resolved
+ * index is state, so like a {@link Capture} an instance has to be kept per thread.
+ */
+public final class MemberRefMatcher implements Matcher<MemberRefEntry> {
+    private final boolean isField;
+    private final String owner;
+    private final String name;
+    private final String type;
+    // Usually a single entry
+    private int[] indices = new int[1];
+    private int count;
+
+    private MemberRefMatcher(boolean isField, ClassDesc owner, String name, String type) {
+        this.isField = isField;
+        this.owner = internalName(owner);
+        this.name = name;
+        this.type = type;
+    }
+
+    public static MemberRefMatcher field(ClassDesc owner, String name, ClassDesc type) {
+        return new MemberRefMatcher(true, owner, name, type.descriptorString());
+    }
+
+    public static MemberRefMatcher method(ClassDesc owner, String name, MethodTypeDesc type) {
+        return new MemberRefMatcher(false, owner, name, type.descriptorString());
+    }
+
+    /**
+     * Finds the reference in the class's constant pool, returning {@code false} if the class
+     * doesn't use it, in which case nothing matches.
+     */
+    public boolean resolve(ConstantPool constantPool) {
+        count = 0;
+        for (var entry : constantPool) {
+            if (entry instanceof MemberRefEntry ref &&
+                (ref instanceof FieldRefEntry) == isField &&
+                ref.name().equalsString(name) &&
+                ref.type().equalsString(type) &&
+                ref.owner().name().equalsString(owner)) {
+                if (count == indices.length) {
+                    indices = Arrays.copyOf(indices, count * 2);
+                }
+                indices[count++] = ref.index();
+            }
+        }
+        return count > 0;
+    }
+
+    @Override
+    public boolean matches(MemberRefEntry entry) {
+        for (int i = 0; i < count; i++) {
+            if (indices[i] == entry.index()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,38 @@
+package eu.jameshamilton.classfile.matcher;
+
+import java.lang.classfile.Opcode;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Matches opcodes against a fixed set, kept as a bitset over the {@link Opcode} ordinals,
+ * so a lookup is a shift and a mask instead of hashing the opcode.
+ */
+public final class OpcodeSet implements Matcher<Opcode> {
+    private static final int WORDS = (Opcode.values().length + Long.SIZE - 1) / Long.SIZE;
+
+    private final long[] bits = new long[WORDS];
+
+    private OpcodeSet(Collection<Opcode> opcodes) {
+        for (var opcode : opcodes) {
+            bits[opcode.ordinal() / Long.SIZE] |= 1L << opcode.ordinal();
+        }
+    }
+
+    public static OpcodeSet of(Opcode... opcodes) {
+        return new OpcodeSet(List.of(opcodes));
+    }
+
+    public static OpcodeSet of(Collection<Opcode> opcodes) {
+        return new OpcodeSet(opcodes);
+    }
+
+    public boolean contains(Opcode opcode) {
+        return (bits[opcode.ordinal() / Long.SIZE] & (1L << opcode.ordinal())) != 0;
+    }
+
+    @Override
+    public boolean matches(Opcode opcode) {
+        return contains(opcode);
+    }
+}
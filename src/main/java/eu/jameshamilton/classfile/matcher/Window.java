@@ -4,20 +4,38 @@ import java.lang.classfile.CodeElement;
 import java.util.Arrays;
 import java.util.List;
 
+/**
+ * A cursor over a range of a method's elements. The same window is moved along the
+ * method with {@link #moveTo(List, int, int)} instead of creating a new one per position.
+ */
 public class Window {
-    private final List<CodeElement> instructions;
+    private List<CodeElement> instructions;
+    private int offset;
+    private int size;
     private int matchedCount = 0;
 
+    public Window() {
+        this(List.of());
+    }
+
     public Window(List<CodeElement> instructions) {
+        moveTo(instructions, 0, instructions.size());
+    }
+
+    public Window moveTo(List<CodeElement> instructions, int offset, int size) {
         this.instructions = instructions;
+        this.offset = offset;
+        this.size = size;
+        this.matchedCount = 0;
+        return this;
     }
 
     public CodeElement get(int n) {
-        return instructions.size() > n ? instructions.get(n) : null;
+        return size > n ? instructions.get(offset + n) : null;
     }
 
     public int size() {
-        return instructions.size();
+        return size;
     }
 
     @SafeVarargs
@@ -35,7 +53,7 @@ public class Window {
     }
 
     public boolean matches(int startIndex, List<Matcher<CodeElement>> matchers) {
-        if (startIndex >= instructions.size()) {
+        if (startIndex >= size) {
             reset();
             return false;
         }
@@ -43,13 +61,14 @@ public class Window {
         int currentIndex = startIndex;
         int requiredMatches = 0;
 
-        for (Matcher<CodeElement> matcher : matchers) {
+        for (int i = 0; i < matchers.size(); i++) {
+            Matcher<CodeElement> matcher = matchers.get(i);
             // Reset any optional matchers before use
             if (matcher instanceof OptionalMatcher<?> optionalMatcher) {
                 optionalMatcher.reset();
             }
 
-            if (currentIndex >= instructions.size()) {
+            if (currentIndex >= size) {
                 // We've run out of instructions
                 if (matcher instanceof OptionalMatcher<?>) {
                     continue; // Optional matchers can be skipped at the end
@@ -59,7 +78,7 @@ public class Window {
                 }
             }
 
-            if (matcher.matches(instructions.get(currentIndex))) {
+            if (matcher.matches(instructions.get(offset + currentIndex))) {
                 if (matcher instanceof OptionalMatcher<?> optMatcher) {
                     if (optMatcher.wasMatched()) {
                         currentIndex++;
@@ -93,7 +112,15 @@ public class Window {
         return matchedCount;
     }
 
+    /**
+     * Records that the first {@code matchedCount} elements were matched, for optimizations
+     * that test the elements themselves instead of using matchers.
+     */
+    public void setMatchedCount(int matchedCount) {
+        this.matchedCount = matchedCount;
+    }
+
     public String toString() {
-        return instructions.subList(0, Math.min(10, instructions.size())) + "...";
+        return instructions.subList(offset, offset + Math.min(10, size)) + "...";
     }
-}
\ No newline at end of file
+}
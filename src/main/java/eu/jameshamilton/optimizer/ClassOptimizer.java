@@ -1,62 +1,78 @@
 package eu.jameshamilton.optimizer;
 
+import eu.jameshamilton.classfile.InstructionBuilder;
+import eu.jameshamilton.classfile.InstructionList;
 import eu.jameshamilton.classfile.matcher.Window;
+import eu.jameshamilton.optimizer.events.ClassOptimizedEvent;
+import eu.jameshamilton.optimizer.events.FrameGenerationEvent;
+import eu.jameshamilton.optimizer.events.MethodRewriteEvent;
 
 import java.lang.classfile.Attributes;
 import java.lang.classfile.ClassFile;
 import java.lang.classfile.ClassFileBuilder;
 import java.lang.classfile.ClassHierarchyResolver;
 import java.lang.classfile.ClassModel;
-import java.lang.classfile.CodeBuilder;
-import java.lang.classfile.CodeElement;
-import java.lang.classfile.Instruction;
-import java.lang.classfile.Label;
+import java.lang.classfile.CodeModel;
+import java.lang.classfile.MethodModel;
 import java.lang.classfile.TypeAnnotation;
 import java.lang.classfile.attribute.CodeAttribute;
-import java.lang.classfile.instruction.ExceptionCatch;
+import java.lang.classfile.attribute.StackMapTableAttribute;
+import java.lang.classfile.constantpool.ConstantPoolBuilder;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
+import static eu.jameshamilton.optimizer.OptimizationStats.Phase.BUILD;
+import static eu.jameshamilton.optimizer.OptimizationStats.Phase.FRAMES;
+import static eu.jameshamilton.optimizer.OptimizationStats.Phase.OPTIMIZE;
 import static java.lang.classfile.ClassFile.ClassHierarchyResolverOption;
 import static java.lang.classfile.ClassFile.DeadCodeOption.KEEP_DEAD_CODE;
 import static java.lang.classfile.ClassFile.DeadCodeOption.PATCH_DEAD_CODE;
+import static java.lang.classfile.ClassFile.StackMapsOption.DROP_STACK_MAPS;
+import static java.lang.classfile.ClassFile.StackMapsOption.STACK_MAPS_WHEN_REQUIRED;
 import static java.lang.classfile.ClassFile.of;
-import static java.lang.classfile.ClassTransform.transformingMethods;
 
 public class ClassOptimizer {
-    private static final int MAX_WINDOW_SIZE = 10;
+    static final int MAX_WINDOW_SIZE = 10;
+    // Guards against optimizations that keep rewriting each other's output
+    public static final int DEFAULT_MAX_REWRITES_PER_INSTRUCTION = 16;
 
     private final OptimizationStats stats;
     private final ClassHierarchyResolver resolver;
     private final ClassModel original;
+    // The bytes the class was parsed from, if known
+    private final byte[] originalBytes;
+    private final int maxRewritesPerInstruction;
+    private boolean modified;
+    private boolean dependsOnHierarchy;
+    // How often each optimization applied, only tracked while a ClassOptimizedEvent is recorded
+    private Map<String, Integer> rulesFired;
 
     public ClassOptimizer(OptimizationStats stats, ClassHierarchyResolver resolver, byte[] bytes) {
-        this(stats, resolver, ClassFile.of(KEEP_DEAD_CODE, ClassHierarchyResolverOption.of(resolver)).parse(bytes));
+        this(stats, resolver, bytes, DEFAULT_MAX_REWRITES_PER_INSTRUCTION);
+    }
+
+    /**
+     * Creates an optimizer that stops rewriting a method after {@code maxRewritesPerInstruction}
+     * times its number of elements.
+     */
+    public ClassOptimizer(OptimizationStats stats, ClassHierarchyResolver resolver, byte[] bytes, int maxRewritesPerInstruction) {
+        this(stats, resolver, ClassFile.of(KEEP_DEAD_CODE, ClassHierarchyResolverOption.of(resolver)).parse(bytes), bytes, maxRewritesPerInstruction);
     }
 
     public ClassOptimizer(OptimizationStats stats, ClassHierarchyResolver resolver, ClassModel original) {
+        this(stats, resolver, original, null, DEFAULT_MAX_REWRITES_PER_INSTRUCTION);
+    }
+
+    private ClassOptimizer(OptimizationStats stats, ClassHierarchyResolver resolver, ClassModel original, byte[] originalBytes, int maxRewritesPerInstruction) {
         this.stats = stats;
         this.resolver = resolver;
         this.original = original;
-    }
-
-    private static int findEndIndex(List<CodeElement> elements, int startIndex, int executableToSkip) {
-        int index = startIndex;
-        int seen = 0;
-
-        while (seen < executableToSkip && index < elements.size()) {
-            CodeElement e = elements.get(index);
-            boolean isExecutable = e instanceof Instruction ||
-                e instanceof Label ||
-                e instanceof ExceptionCatch;
-
-            if (isExecutable) {
-                seen++;
-            }
-            index++;
-        }
-
-        return index;
+        this.originalBytes = originalBytes;
+        this.maxRewritesPerInstruction = maxRewritesPerInstruction;
     }
 
     public byte[] optimize(Optimization... optimizations) {
@@ -64,82 +80,235 @@ public class ClassOptimizer {
     }
 
     public byte[] optimize(List<Optimization> optimizations) {
-        byte[] optimizedBytes = of(KEEP_DEAD_CODE, ClassHierarchyResolverOption.of(resolver))
-            .transformClass(original,
-                transformingMethods(
-                    (methodBuilder, method) -> {
-                        if (method instanceof CodeAttribute codeModel) {
-                            methodBuilder.withCode(codeBuilder -> {
-                                optimize(optimizations, codeModel, codeBuilder);
-                            });
-                        } else {
-                            methodBuilder.with(method);
-                        }
-                    }
-                ));
+        var event = new ClassOptimizedEvent();
+        event.begin();
+        // Which optimizations applied is only tracked while the event is recorded
+        rulesFired = event.isEnabled() ? new TreeMap<>() : null;
 
-        byte[] originalBytes = ClassFile
-            .of(PATCH_DEAD_CODE, ClassHierarchyResolverOption.of(resolver))
-            .transformClass(original, ClassFileBuilder::with);
-
-        if (optimizedBytes.length < originalBytes.length) {
-            stats.recordClassOptimized(originalBytes.length - optimizedBytes.length);
+        var optimizedBytes = optimizeClass(optimizations);
+        // Without a tally, when a recording started while the class was optimized, the event is skipped
+        if (event.shouldCommit() && rulesFired != null) {
+            event.className = original.thisClass().asInternalName();
+            event.originalSize = originalLength();
+            event.optimizedSize = optimizedBytes.length;
+            event.rewrites = rulesFired.values().stream().mapToInt(Integer::intValue).sum();
+            event.rulesFired = rulesFired.toString();
+            event.commit();
         }
         return optimizedBytes;
     }
 
-    private void optimize(List<Optimization> optimizations, CodeAttribute code, CodeBuilder codeBuilder) {
-        if (hasPositionDependentAnnotations(code)) {
-            // Conservatively skip methods with position dependent annotations
-            code.elementStream().forEach(codeBuilder::with);
-            return;
-        }
+    private byte[] optimizeClass(List<Optimization> optimizations) {
+        modified = false;
+        dependsOnHierarchy = false;
+        long start = stats.startPhase();
 
-        var elements = code.elementStream().toList();
-        var executableElements = elements.stream()
-            .filter(el -> el instanceof Instruction || el instanceof Label || el instanceof ExceptionCatch)
-            .toList();
+        // New constant pool entries created by the optimizations are added to
+        // the same pool that the optimized class is finally written with.
+        var constantPool = ConstantPoolBuilder.of(original);
+        var builder = new InstructionBuilder(constantPool);
 
-        var optimizationsWithStats = optimizations.stream()
+        // Optimizations that cannot match anything this class references are skipped.
+        var automaton = new PatternAutomaton(optimizations.stream()
+            .filter(opt -> opt.prepare(original.constantPool()))
             .map(opt -> Optimization.withStats(stats, opt))
-            .toList();
+            .toList());
+
+        // Each method body that could match is lifted into an instruction list and rewritten
+        // in place; the raw bytecode of the others is only scanned for a leading opcode.
+        Map<MethodModel, InstructionList> methodCode = new IdentityHashMap<>();
+        for (var method : original.methods()) {
+            method.findAttribute(Attributes.code())
+                .filter(code -> automaton.canMatch(code.codeArray()))
+                .filter(code -> !hasPositionDependentAnnotations(code))
+                .ifPresent(code -> methodCode.put(method, new InstructionList(code)));
+        }
+
+        // Methods that weren't rewritten are dropped again: their code is then copied
+        // through verbatim, as it shares the class's constant pool, without re-encoding it
+        // or recomputing its stack map frames.
+        var unchanged = new ArrayList<MethodModel>();
+        methodCode.forEach((method, code) -> {
+            var event = new MethodRewriteEvent();
+            event.begin();
+            int elementsBefore = code.size();
+            int rewrites = optimize(automaton, code, builder);
+            if (rewrites == 0) {
+                unchanged.add(method);
+            } else if (event.shouldCommit()) {
+                event.className = original.thisClass().asInternalName();
+                event.methodName = method.methodName().stringValue();
+                event.methodDescriptor = method.methodType().stringValue();
+                event.rewrites = rewrites;
+                event.elementsBefore = elementsBefore;
+                event.elementsAfter = code.size();
+                event.commit();
+            }
+        });
+        unchanged.forEach(methodCode::remove);
+        modified = !methodCode.isEmpty();
+        stats.recordPhase(OPTIMIZE, start);
+
+        if (!modified && originalBytes != null) {
+            return originalBytes;
+        }
+
+        // Serialize once, after all methods are stable. Stack map frames, which need the class
+        // hierarchy, are only computed if a rewrite changed the types the verifier sees.
+        boolean generateStackMaps = methodCode.values().stream().anyMatch(code -> !code.preservesFrames());
+        // Even if resolving fails, as the result would differ with another hierarchy
+        dependsOnHierarchy = generateStackMaps;
+        byte[] optimizedBytes;
+        try {
+            optimizedBytes = build(constantPool, methodCode, generateStackMaps);
+        } catch (IllegalArgumentException e) {
+            if (!generateStackMaps) {
+                throw e;
+            }
+            // The hierarchy couldn't be resolved: keep the original code of the methods that need new frames
+            var unresolved = new ArrayList<MethodModel>();
+            methodCode.forEach((method, code) -> {
+                if (!code.preservesFrames()) {
+                    unresolved.add(method);
+                }
+            });
+            unresolved.forEach(methodCode::remove);
+            modified = !methodCode.isEmpty();
 
-        int index = 0;  // index into elements
-        int execIndex = 0;  // index into executableElements
+            if (!modified && originalBytes != null) {
+                return originalBytes;
+            }
+            optimizedBytes = build(constantPool, methodCode, false);
+        }
+
+        if (modified) {
+            int originalLength = originalLength();
+            if (optimizedBytes.length < originalLength) {
+                stats.recordClassOptimized(originalLength - optimizedBytes.length);
+            }
+        }
+        return optimizedBytes;
+    }
+
+    private int originalLength() {
+        // Untouched methods are copied verbatim, so the input is the baseline when it's known
+        return originalBytes != null
+            ? originalBytes.length
+            : ClassFile.of(PATCH_DEAD_CODE, ClassHierarchyResolverOption.of(resolver))
+                .transformClass(original, ClassFileBuilder::with).length;
+    }
 
-        while (index < elements.size()) {
-            CodeElement e = elements.get(index);
+    private byte[] build(ConstantPoolBuilder constantPool, Map<MethodModel, InstructionList> methodCode, boolean generateStackMaps) {
+        long start = stats.startPhase();
+        var event = new FrameGenerationEvent();
+        event.begin();
+        try {
+            var bytes = build(constantPool, methodCode, generateStackMaps ? STACK_MAPS_WHEN_REQUIRED : DROP_STACK_MAPS);
+            event.succeeded = true;
+            return bytes;
+        } finally {
+            stats.recordPhase(generateStackMaps ? FRAMES : BUILD, start);
+            if (generateStackMaps && event.shouldCommit()) {
+                event.className = original.thisClass().asInternalName();
+                event.methods = (int) methodCode.values().stream().filter(code -> !code.preservesFrames()).count();
+                event.commit();
+            }
+        }
+    }
 
-            if (!(e instanceof Instruction || e instanceof Label || e instanceof ExceptionCatch)) {
-                codeBuilder.with(e);
+    private byte[] build(ConstantPoolBuilder constantPool, Map<MethodModel, InstructionList> methodCode, ClassFile.StackMapsOption stackMaps) {
+        boolean generateStackMaps = stackMaps == STACK_MAPS_WHEN_REQUIRED;
+        return of(KEEP_DEAD_CODE, stackMaps, ClassHierarchyResolverOption.of(resolver))
+            .build(original.thisClass(), constantPool, classBuilder -> {
+                for (var element : original) {
+                    if (element instanceof MethodModel method && methodCode.get(method) instanceof InstructionList code) {
+                        classBuilder.transformMethod(method, (methodBuilder, methodElement) -> {
+                            if (methodElement instanceof CodeAttribute attribute) {
+                                methodBuilder.withCode(codeBuilder -> {
+                                    code.writeTo(codeBuilder);
+                                    if (!generateStackMaps) {
+                                        // Rewrites can change the code's length, so the frames are rebuilt from their
+                                        // labels, which are bound at the rewritten offsets, rather than copied as bytes
+                                        attribute.findAttribute(Attributes.stackMapTable())
+                                            .ifPresent(frames -> codeBuilder.with(StackMapTableAttribute.of(frames.entries())));
+                                    }
+                                });
+                            } else {
+                                methodBuilder.with(methodElement);
+                            }
+                        });
+                    } else {
+                        classBuilder.with(element);
+                    }
+                }
+            });
+    }
+
+    /**
+     * Rewrites the given method body until no optimization applies anywhere in it,
+     * returning the number of rewrites.
+     * <p>
+     * After a rewrite, matching resumes {@code MAX_WINDOW_SIZE - 1} elements before the
+     * rewritten region: that is the earliest position at which a window can overlap the
+     * replacement, so every new opportunity created by the rewrite is found in the same traversal.
+     */
+    private int optimize(PatternAutomaton automaton, InstructionList code, InstructionBuilder builder) {
+        int rewrites = 0;
+        int maxRewrites = maxRewritesPerInstruction * code.size();
+        int index = 0;
+        var candidates = new Optimization[automaton.size()];
+        var window = new Window();
+
+        while (index < code.size() && rewrites < maxRewrites) {
+            int candidateCount = automaton.candidates(code.instructions(), index, candidates);
+            if (candidateCount == 0) {
                 index++;
                 continue;
             }
 
-            var windowSize = Math.min(MAX_WINDOW_SIZE, executableElements.size() - execIndex);
-            var window = new Window(executableElements.subList(execIndex, execIndex + windowSize));
+            window.moveTo(code.instructions(), index, Math.min(MAX_WINDOW_SIZE, code.size() - index));
             var optimized = false;
 
-            for (var opt : optimizationsWithStats) {
-                if (opt.apply(codeBuilder, window)) {
+            for (int i = 0; i < candidateCount; i++) {
+                window.reset();
+                builder.clear();
+                if (candidates[i].apply(builder, window)) {
+                    if (rulesFired != null) {
+                        rulesFired.merge(candidates[i].getName(), 1, Integer::sum);
+                    }
                     optimized = true;
                     break;
                 }
             }
 
             if (optimized) {
-                // Skip all elements (both executable and non-executable) that were part of the matched pattern
-                index = findEndIndex(elements, index, window.getMatchedCount());
-                execIndex += window.getMatchedCount();
+                code.replace(index, window.getMatchedCount(), builder.elements());
+                index = Math.max(0, index - (MAX_WINDOW_SIZE - 1));
+                rewrites++;
             } else {
-                codeBuilder.with(e);
-                execIndex++;
                 index++;
             }
         }
+
+        return rewrites;
+    }
+
+    /**
+     * Returns whether any optimization was applied by the last call to {@link #optimize(List)}.
+     */
+    public boolean isModified() {
+        return modified;
+    }
+
+    /**
+     * Returns whether the output of the last call to {@link #optimize(List)} depended on the
+     * class hierarchy, which is only used to recompute stack map frames.
+     */
+    public boolean dependsOnHierarchy() {
+        return dependsOnHierarchy;
     }
 
-    public boolean hasPositionDependentAnnotations(CodeAttribute code) {
+    public boolean hasPositionDependentAnnotations(CodeModel code) {
         return code.findAttribute(Attributes.runtimeVisibleTypeAnnotations())
             .map(attr -> attr.annotations().stream()
                 .anyMatch(this::isPositionDependent))
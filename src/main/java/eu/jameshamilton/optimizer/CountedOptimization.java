@@ -0,0 +1,46 @@
+package eu.jameshamilton.optimizer;
+
+import eu.jameshamilton.classfile.InstructionBuilder;
+import eu.jameshamilton.classfile.matcher.Window;
+
+import java.lang.classfile.Opcode;
+import java.lang.classfile.constantpool.ConstantPool;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * An optimization whose attempts and successes are counted under the given id.
+ */
+record CountedOptimization(OptimizationStats stats, int id, Optimization optimization) implements Optimization {
+
+    @Override
+    public boolean apply(InstructionBuilder builder, Window window) {
+        boolean timed = stats.recordAttempt(id);
+        long start = timed ? System.nanoTime() : 0;
+
+        boolean success = optimization.apply(builder, window);
+        if (timed) {
+            stats.recordMatchTime(id, System.nanoTime() - start);
+        }
+        if (success) {
+            stats.recordTentativeSuccess(id);
+        }
+
+        return success;
+    }
+
+    @Override
+    public boolean prepare(ConstantPool constantPool) {
+        return optimization.prepare(constantPool);
+    }
+
+    @Override
+    public List<Set<Opcode>> pattern() {
+        return optimization.pattern();
+    }
+
+    @Override
+    public String getName() {
+        return optimization.getName();
+    }
+}
@@ -1,137 +1,248 @@
 package eu.jameshamilton.optimizer;
 
 import eu.jameshamilton.classfile.JarClassHierarchyResolver;
-
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
-import java.io.FileOutputStream;
+import eu.jameshamilton.classfile.LibraryClassHierarchyResolver;
+import eu.jameshamilton.optimizer.events.ClassReadEvent;
+import eu.jameshamilton.optimizer.events.JarWriteEvent;
+import eu.jameshamilton.optimizer.rules.Rules;
+import eu.jameshamilton.optimizer.stats.ConsoleStatsSink;
+import eu.jameshamilton.optimizer.stats.JsonLinesStatsSink;
+import eu.jameshamilton.optimizer.stats.PrometheusStatsSink;
+import eu.jameshamilton.optimizer.stats.StatsSink;
+import eu.jameshamilton.zip.CompressedEntry;
+import eu.jameshamilton.zip.ZipReader;
+import eu.jameshamilton.zip.ZipWriter;
+
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.lang.classfile.ClassHierarchyResolver;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
-import java.util.jar.JarOutputStream;
+import java.util.concurrent.ForkJoinPool;
 
-import static java.util.concurrent.CompletableFuture.runAsync;
+import static eu.jameshamilton.optimizer.OptimizationStats.Phase.COMPRESS;
+import static eu.jameshamilton.optimizer.OptimizationStats.Phase.PARSE;
+import static eu.jameshamilton.optimizer.OptimizationStats.Phase.READ;
+import static eu.jameshamilton.optimizer.OptimizationStats.Phase.WRITE;
+import static java.util.concurrent.CompletableFuture.supplyAsync;
 
 public class JarOptimizer {
+    private static final String USAGE = "Usage: JarOptimizer [--rules <file>] [--library <paths>] [--cache-dir <dir>] [--threads <n>] " +
+        "[--max-rewrites <n>] [--profile] [--stats-json <file>] [--stats-prometheus <file>] <input.jar> <output.jar>";
 
     public static void main(String[] args) throws IOException {
-        var input = Path.of(args[0]);
-        OptimizationStats stats = new OptimizationStats();
+        var optimizations = new ArrayList<>(Optimization.optimizations);
+        var ruleFiles = new ArrayList<Path>();
+        var libraries = new ArrayList<String>();
+        Path cacheDirectory = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int maxRewrites = ClassOptimizer.DEFAULT_MAX_REWRITES_PER_INSTRUCTION;
+        boolean profile = false;
+        var sinks = new ArrayList<StatsSink>(List.of(new ConsoleStatsSink(System.out)));
+        var arguments = new ArrayList<String>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--rules") && i + 1 < args.length) {
+                // Site-specific rules, in addition to the built-in optimizations
+                ruleFiles.add(Path.of(args[++i]));
+                optimizations.addAll(Rules.load(ruleFiles.getLast()));
+            } else if (args[i].equals("--library") && i + 1 < args.length) {
+                // Jars, jmods or jrt for the running JDK, whose class hierarchy the program uses
+                libraries.addAll(List.of(args[++i].split(File.pathSeparator)));
+            } else if (args[i].equals("--cache-dir") && i + 1 < args.length) {
+                // Library hierarchy indexes and optimized classes are kept here between runs
+                cacheDirectory = Path.of(args[++i]);
+            } else if (args[i].equals("--threads") && i + 1 < args.length) {
+                // Caps the optimizer's share of the CPU, all cores by default
+                threads = positive("--threads", args[++i]);
+            } else if (args[i].equals("--max-rewrites") && i + 1 < args.length) {
+                // Rewrites allowed per instruction of a method, against rules that undo each other
+                maxRewrites = positive("--max-rewrites", args[++i]);
+            } else if (args[i].equals("--profile")) {
+                // Times the optimizations and phases, to find what the run spends its time on
+                profile = true;
+            } else if (args[i].equals("--stats-json") && i + 1 < args.length) {
+                // Appended to, so the file collects the stats of every run
+                sinks.add(new JsonLinesStatsSink(Path.of(args[++i])));
+            } else if (args[i].equals("--stats-prometheus") && i + 1 < args.length) {
+                sinks.add(new PrometheusStatsSink(Path.of(args[++i])));
+            } else {
+                arguments.add(args[i]);
+            }
+        }
+
+        var input = Path.of(arguments.get(0));
+        OptimizationStats stats = new OptimizationStats(profile);
 
         if (input.getFileName().toString().endsWith(".jar")) {
-            if (args.length != 2) {
+            if (arguments.size() != 2) {
                 System.err.println("Expected output jar name");
             }
-            optimizeJar(stats, args[0], args[1]);
+            var libraryResolver = LibraryClassHierarchyResolver.of(libraries, cacheDirectory);
+            optimizeJar(stats, optimizations, ruleFiles, libraryResolver, cacheDirectory, threads, maxRewrites, arguments.get(0), arguments.get(1));
         }
 
-        stats.printSummary();
+        var report = stats.report();
+        for (var sink : sinks) {
+            sink.write(report);
+        }
     }
 
-    private static void optimizeJar(OptimizationStats stats, String inputJarPath, String outputJarPath) throws IOException {
-        try (var jarFile = new JarFile(inputJarPath)) {
-            // Create a thread-safe collection to store optimized entries
-            var optimizedEntries = new ConcurrentHashMap<String, byte[]>();
-
-            // Create class hierarchy resolver
-            var resolver = new JarClassHierarchyResolver(jarFile)
-                .orElse(ClassHierarchyResolver.defaultResolver())
-                .cached(ConcurrentHashMap::new);
-
-            // Get all entries that need processing
-            var classEntries = new ArrayList<JarEntry>();
-            var resourceEntries = new ArrayList<JarEntry>();
-            var errorEntries = Collections.synchronizedSet(new HashSet<JarEntry>());
-
-            var entries = jarFile.entries();
-            while (entries.hasMoreElements()) {
-                var entry = entries.nextElement();
-                if (entry.getName().endsWith(".class")) {
-                    classEntries.add(entry);
-                } else {
-                    resourceEntries.add(entry);
-                }
+    private static int positive(String option, String value) {
+        try {
+            int number = Integer.parseInt(value);
+            if (number > 0) {
+                return number;
             }
+        } catch (NumberFormatException _) {
+            // Reported like a number that is out of range
+        }
+        System.err.println(option + " expects a positive number, not '" + value + "'");
+        System.err.println(USAGE);
+        System.exit(2);
+        throw new AssertionError();
+    }
 
-            for (int pass = 1; pass <= 3; pass++) {
-                stats.setPass(pass);
-                // Process class files in parallel using virtual threads
-                try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
-                    var futures = classEntries.stream()
-                        .filter(o -> !errorEntries.contains(o))
-                        .map(entry -> runAsync(() -> {
-
-                        stats.recordFileProcessingStart(entry.getName());
-                        try (InputStream is = new BufferedInputStream(jarFile.getInputStream(entry))) {
-                            byte[] classBytes = is.readAllBytes();
-
+    static void optimizeJar(OptimizationStats stats, List<Optimization> optimizations, List<Path> ruleFiles, LibraryClassHierarchyResolver libraryResolver, Path cacheDirectory, int threads, int maxRewrites, String inputJarPath, String outputJarPath) throws IOException {
+        // Optimizing is CPU bound, so it's done by one worker per allowed core
+        try (var source = ZipReader.open(Path.of(inputJarPath)); var pool = new ForkJoinPool(threads)) {
+            // The jar's and libraries' classes are indexed up front, anything else is parsed on demand.
+            // Indexing in the pool keeps its parallel stream to the same workers.
+            var jarResolver = pool.submit(() -> new JarClassHierarchyResolver(source)).join();
+            var resolver = jarResolver
+                .orElse(libraryResolver.cached(ConcurrentHashMap::new))
+                .orElse(ClassHierarchyResolver.defaultResolver().cached(ConcurrentHashMap::new));
+
+            // Classes whose input and optimizations are unchanged are served from the cache, and
+            // those whose frames were recomputed only if the hierarchy is unchanged too
+            var cache = cacheDirectory == null ? null : new OptimizationCache(
+                cacheDirectory.resolve("classes"),
+                OptimizationCache.fingerprint(optimizations, ruleFiles, maxRewrites),
+                OptimizationCache.hierarchyFingerprint(List.of(jarResolver.fingerprint(), libraryResolver.fingerprint()))
+            );
+
+            // The largest classes take the longest to optimize, so they're started first rather
+            // than extending the tail of the run. They're written in the same order, which only
+            // depends on the jar's contents.
+            var classEntries = source.entries().stream()
+                .filter(entry -> entry.name().endsWith(".class"))
+                .sorted(Comparator.comparingLong(ZipReader.Entry::size).reversed())
+                .toList();
+
+            System.out.println("Optimizing " + classEntries.size() + " classes...");
+
+            // Registered up front, so that the workers only look up their counters
+            var countedOptimizations = Optimization.withStats(stats, optimizations);
+
+            var writeEvent = new JarWriteEvent();
+            writeEvent.begin();
+            try (var executor = Executors.newVirtualThreadPerTaskExecutor();
+                 var zip = new ZipWriter(Path.of(outputJarPath))) {
+                // Classes are read, optimized and compressed in parallel by the pool, and written in
+                // order while the rest are still being processed. The queue of classes in flight is
+                // bounded, so only that many are held in memory at a time.
+                var pending = new ArrayBlockingQueue<CompletableFuture<CompressedEntry>>(threads * 4);
+                // The producer blocks on the full queue, so it runs outside of the pool
+                var producer = executor.submit(() -> {
+                    for (var entry : classEntries) {
+                        pending.put(supplyAsync(() -> {
+                            byte[] classBytes;
+                            long start = stats.startPhase();
+                            var event = new ClassReadEvent();
+                            event.begin();
                             try {
-                                // Parse and optimize
-                                byte[] currentBytes = optimizedEntries.getOrDefault(
-                                    entry.getName(),
-                                    readEntryBytes(jarFile, entry)
-                                );
-
-                                stats.recordParseSuccess(entry.getName());
-                                var classModelOptimizer = new ClassOptimizer(stats, resolver, currentBytes);
-                                byte[] optimizedBytes = classModelOptimizer.optimize(Optimization.optimizations);
-                                optimizedEntries.put(entry.getName(), optimizedBytes);
-                            } catch (Exception e) {
-                                System.err.println("Error optimizing " + entry.getName() + ": " + e.getMessage());
-                                e.printStackTrace();
-                                // Store original bytes on error
-                                optimizedEntries.put(entry.getName(), classBytes);
-                                errorEntries.add(entry);
+                                classBytes = source.read(entry);
+                            } catch (IOException e) {
+                                stats.recordParseError(entry.name(), e);
+                                throw new CompletionException(e);
+                            }
+                            stats.recordPhase(READ, start);
+                            if (event.shouldCommit()) {
+                                event.className = entry.name();
+                                event.compressedSize = entry.compressedSize();
+                                event.size = classBytes.length;
+                                event.commit();
                             }
-                        } catch (IOException e) {
-                            stats.recordParseError(entry.getName(), e);
-                            errorEntries.add(entry);
-                            throw new CompletionException(e);
-                        }
-                    }, executor));
-
-                    // Wait for all optimization tasks to complete
-                    CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
-                }
-            }
-
-            System.out.println("\nWriting optimized JAR...");
 
-            try (var jos = new JarOutputStream(new BufferedOutputStream(new FileOutputStream(outputJarPath)))) {
-                for (var entry : classEntries) {
-                    jos.putNextEntry(new JarEntry(entry.getName()));
-                    jos.write(optimizedEntries.get(entry.getName()));
-                    jos.closeEntry();
+                            var optimizedBytes = optimizeClass(stats, countedOptimizations, resolver, cache, maxRewrites, entry.name(), classBytes);
+                            start = stats.startPhase();
+                            var compressed = CompressedEntry.of(entry.name(), optimizedBytes);
+                            stats.recordPhase(COMPRESS, start);
+                            return compressed;
+                        }, pool));
+                    }
+                    return null;
+                });
+
+                try {
+                    for (int i = classEntries.size(); i > 0; i--) {
+                        var entry = pending.take().join();
+                        long start = stats.startPhase();
+                        zip.write(entry);
+                        stats.recordPhase(WRITE, start);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while writing " + outputJarPath);
+                } finally {
+                    // Otherwise the producer stays blocked on the full queue if writing failed
+                    producer.cancel(true);
                 }
 
-                // Copy all the non-class files.
-                for (var entry : resourceEntries) {
-                    jos.putNextEntry(new JarEntry(entry.getName()));
-                    try (InputStream is = new BufferedInputStream(jarFile.getInputStream(entry))) {
-                        is.transferTo(jos);
+                // Copy all the non-class files, still compressed
+                for (var entry : source.entries()) {
+                    if (!entry.name().endsWith(".class")) {
+                        long start = stats.startPhase();
+                        zip.copy(source, entry);
+                        stats.recordPhase(WRITE, start);
                     }
-                    jos.closeEntry();
                 }
             }
+            if (writeEvent.shouldCommit()) {
+                writeEvent.path = outputJarPath;
+                writeEvent.classes = classEntries.size();
+                writeEvent.resources = source.entries().size() - classEntries.size();
+                writeEvent.size = Files.size(Path.of(outputJarPath));
+                writeEvent.commit();
+            }
         }
 
         System.out.println("Optimized JAR written to: " + outputJarPath);
     }
 
+    private static byte[] optimizeClass(OptimizationStats stats, List<Optimization> optimizations, ClassHierarchyResolver resolver, OptimizationCache cache, int maxRewrites, String name, byte[] classBytes) {
+        stats.recordFileProcessingStart(name);
+        try {
+            var cached = cache == null ? null : cache.get(classBytes);
+            if (cached != null) {
+                stats.recordCacheHit(classBytes.length - cached.length);
+                stats.recordClass(name, classBytes.length, cached.length, true);
+                return cached;
+            }
 
-    private static byte[] readEntryBytes(JarFile jarFile, JarEntry entry) throws IOException {
-        try (InputStream is = jarFile.getInputStream(entry)) {
-            return is.readAllBytes();
+            long start = stats.startPhase();
+            var classOptimizer = new ClassOptimizer(stats, resolver, classBytes, maxRewrites);
+            stats.recordParseSuccess(name);
+            stats.recordPhase(PARSE, start);
+            var optimizedBytes = classOptimizer.optimize(optimizations);
+            stats.recordClass(name, classBytes.length, optimizedBytes.length, false);
+            if (cache != null) {
+                cache.put(classBytes, optimizedBytes, classOptimizer.dependsOnHierarchy());
+            }
+            return optimizedBytes;
+        } catch (Exception e) {
+            System.err.println("Error optimizing " + name + ": " + e.getMessage());
+            e.printStackTrace();
+            // Keep the original bytes on error
+            return classBytes;
         }
     }
-}
\ No newline at end of file
+}
@@ -1,28 +1,24 @@
 package eu.jameshamilton.optimizer;
 
+import eu.jameshamilton.classfile.InstructionBuilder;
 import eu.jameshamilton.classfile.matcher.Window;
 import eu.jameshamilton.optimizer.artithmetic.AddZeroFolder;
 import eu.jameshamilton.optimizer.artithmetic.ConstantConversionFolder;
-import eu.jameshamilton.optimizer.artithmetic.IntegerPushSimplifier;
 import eu.jameshamilton.optimizer.artithmetic.DoubleConstantArithmeticFolder;
 import eu.jameshamilton.optimizer.artithmetic.IncrementFolder;
 import eu.jameshamilton.optimizer.artithmetic.IntegerConstantArithmeticFolder;
 import eu.jameshamilton.optimizer.artithmetic.MultiplyByOne;
 import eu.jameshamilton.optimizer.deadcode.ConditionalJumpNextRemover;
-import eu.jameshamilton.optimizer.deadcode.DoubleIncrementCombiner;
-import eu.jameshamilton.optimizer.deadcode.DoubleNegation;
-import eu.jameshamilton.optimizer.deadcode.DoubleStore;
 import eu.jameshamilton.optimizer.deadcode.GotoNextRemover;
 import eu.jameshamilton.optimizer.deadcode.NopRemover;
-import eu.jameshamilton.optimizer.deadcode.PopRemover;
 import eu.jameshamilton.optimizer.deadcode.RedundantFieldStore;
-import eu.jameshamilton.optimizer.deadcode.RedundantLoad;
 import eu.jameshamilton.optimizer.deadcode.RedundantStaticFieldStore;
 import eu.jameshamilton.optimizer.deadcode.RedundantStore;
 import eu.jameshamilton.optimizer.deadcode.ZeroComparisonOptimizer;
 import eu.jameshamilton.optimizer.inliner.BooleanFieldInliner;
 import eu.jameshamilton.optimizer.normalize.AddSubConstant;
 import eu.jameshamilton.optimizer.normalize.SwapConstant;
+import eu.jameshamilton.optimizer.rules.Rules;
 import eu.jameshamilton.optimizer.string.ClassConstantOptimizer;
 import eu.jameshamilton.optimizer.string.ConstantStringEquals;
 import eu.jameshamilton.optimizer.string.ConstantStringLength;
@@ -32,32 +28,36 @@ import eu.jameshamilton.optimizer.string.StringBuilderAppendCombiner;
 import eu.jameshamilton.optimizer.string.StringBuilderConstructorAppend;
 import eu.jameshamilton.optimizer.string.StringBuilderOptimizer;
 import eu.jameshamilton.optimizer.type.CheckcastSimplifier;
-import eu.jameshamilton.optimizer.type.ReflectionConstantFolder;
 import eu.jameshamilton.optimizer.type.TypeConversionSimplifier;
 
-import java.lang.classfile.CodeBuilder;
+import java.lang.classfile.Opcode;
+import java.lang.classfile.constantpool.ConstantPool;
 import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
 
+/**
+ * A peephole optimization over a window of a method's elements.
+ * <p>
+ * Instances are shared by all threads. Optimizations build their matchers once and reuse them,
+ * so matchers holding state, such as captures, have to be kept per thread.
+ */
 public interface Optimization {
 
-    List<Optimization> optimizations = List.of(
+    List<Optimization> optimizations = Stream.of(List.of(
         new AddSubConstant(),
         new SwapConstant(),
         new NopRemover(),
         new ConstantConversionFolder(),
         new IntegerConstantArithmeticFolder(),
-        new PopRemover(),
         new RedundantStore(),
-        new RedundantLoad(),
         new IncrementFolder(),
-        new DoubleStore(),
         new BooleanFieldInliner(),
         new GotoNextRemover(),
         new ConditionalJumpNextRemover(),
         new AddZeroFolder(),
         new MultiplyByOne(),
         new DoubleConstantArithmeticFolder(),
-        new DoubleNegation(),
         new RedundantFieldStore(),
         new RedundantStaticFieldStore(),
         new TypeConversionSimplifier(),
@@ -69,35 +69,46 @@ public interface Optimization {
         new ConstantStringLength(),
         new ConstantStringSubstring(),
         new ConstantStringEquals(),
-        new DoubleIncrementCombiner(),
-        new IntegerPushSimplifier(),
         new ZeroComparisonOptimizer(),
         new ClassConstantOptimizer()
-    );
+    ), Rules.builtin()).flatMap(List::stream).toList();
 
     static Optimization withStats(OptimizationStats stats, Optimization optimization) {
-        return new Optimization() {
-            @Override
-            public boolean apply(CodeBuilder builder, Window window) {
-                String name = optimization.getName();
-                stats.recordAttempt(name);
+        // Already counted optimizations keep their id rather than being registered again
+        if (optimization instanceof CountedOptimization counted && counted.stats() == stats) {
+            return optimization;
+        }
+        return new CountedOptimization(stats, stats.register(optimization.getName()), optimization);
+    }
 
-                boolean success = optimization.apply(builder, window);
-                if (success) {
-                    stats.recordTentativeSuccess(name);
-                }
+    /**
+     * Wraps the given optimizations to count their attempts and successes, registering them in
+     * order so that their ids are assigned before any class is optimized.
+     */
+    static List<Optimization> withStats(OptimizationStats stats, List<Optimization> optimizations) {
+        return optimizations.stream().map(optimization -> withStats(stats, optimization)).toList();
+    }
 
-                return success;
-            }
+    boolean apply(InstructionBuilder builder, Window window);
 
-            @Override
-            public String getName() {
-                return optimization.getName();
-            }
-        };
+    /**
+     * Called before the methods of a class are optimized, on the thread that then optimizes them.
+     * Optimizations that look for specific classes or members resolve them against the constant
+     * pool here, and return {@code false} if the class doesn't reference them, which skips the
+     * optimization for the whole class.
+     */
+    default boolean prepare(ConstantPool constantPool) {
+        return true;
     }
 
-    boolean apply(CodeBuilder builder, Window window);
+    /**
+     * The opcodes accepted at each position of the instruction sequence this optimization
+     * starts with. It may be a prefix of the full pattern, and an empty pattern means the
+     * optimization is tried at every element.
+     */
+    default List<Set<Opcode>> pattern() {
+        return List.of();
+    }
 
     String getName();
 }
@@ -0,0 +1,176 @@
+package eu.jameshamilton.optimizer;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * An on-disk cache of optimized classes. Entries are keyed by a hash of the input class together
+ * with a fingerprint of everything else the output depends on, so they never need invalidating:
+ * a different optimizer or configuration simply uses different keys.
+ * <p>
+ * The class hierarchy is only part of the key of classes whose stack map frames were recomputed,
+ * as nothing else depends on it. Adding or removing classes elsewhere in the jar then only misses
+ * for those classes.
+ * <p>
+ * Classes that the optimizer leaves unchanged are stored as empty files. The cache only ever
+ * saves work: a cache that can't be read misses, and one that can't be written is skipped.
+ */
+public class OptimizationCache {
+    private final Path directory;
+    private final byte[] fingerprint;
+    private final byte[] hierarchyFingerprint;
+    private final AtomicBoolean writable = new AtomicBoolean(true);
+
+    public OptimizationCache(Path directory, byte[] fingerprint, byte[] hierarchyFingerprint) {
+        this.directory = directory;
+        this.fingerprint = fingerprint.clone();
+        this.hierarchyFingerprint = hierarchyFingerprint.clone();
+    }
+
+    /**
+     * Returns the optimized version of the given class, or {@code null} if it isn't cached.
+     */
+    public byte[] get(byte[] classBytes) {
+        try {
+            var cached = read(file(classBytes, false));
+            if (cached == null) {
+                cached = read(file(classBytes, true));
+            }
+            if (cached == null) {
+                return null;
+            }
+            return cached.length == 0 ? classBytes : cached;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Stores the optimized version of the given class, keyed on the class hierarchy too if
+     * {@code dependsOnHierarchy} is set.
+     */
+    public void put(byte[] classBytes, byte[] optimizedBytes, boolean dependsOnHierarchy) {
+        if (!writable.get()) {
+            return;
+        }
+        var file = file(classBytes, dependsOnHierarchy);
+        Path temporary = null;
+        try {
+            Files.createDirectories(file.getParent());
+            // Moved into place once complete, so that concurrent runs never read a partial class
+            temporary = Files.createTempFile(file.getParent(), "class-", ".tmp");
+            Files.write(temporary, Arrays.equals(classBytes, optimizedBytes) ? new byte[0] : optimizedBytes);
+            Files.move(temporary, file, ATOMIC_MOVE, REPLACE_EXISTING);
+        } catch (IOException e) {
+            // Such as a full disk or a read-only directory, which the next classes would hit too
+            if (writable.getAndSet(false)) {
+                System.err.println("Not caching optimized classes in " + directory + ": " + e);
+            }
+            if (temporary != null) {
+                try {
+                    Files.deleteIfExists(temporary);
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    private static byte[] read(Path file) throws IOException {
+        return Files.isRegularFile(file) ? Files.readAllBytes(file) : null;
+    }
+
+    private Path file(byte[] classBytes, boolean dependsOnHierarchy) {
+        var digest = digest();
+        digest.update(fingerprint);
+        if (dependsOnHierarchy) {
+            digest.update(hierarchyFingerprint);
+        }
+        digest.update(classBytes);
+        var hash = HexFormat.of().formatHex(digest.digest());
+        return directory.resolve(hash.substring(0, 2)).resolve(hash.substring(2) + (dependsOnHierarchy ? "-h" : ""));
+    }
+
+    /**
+     * Returns a fingerprint of the given class hierarchy fingerprints, such as those of the
+     * jar's and the libraries' classes.
+     */
+    public static byte[] hierarchyFingerprint(List<byte[]> hierarchies) {
+        var digest = digest();
+        hierarchies.forEach(digest::update);
+        return digest.digest();
+    }
+
+    /**
+     * Returns a fingerprint of the optimizer's own code, the JDK it runs on, the optimizations,
+     * the rule files they were loaded from and the cap on rewrites.
+     */
+    public static byte[] fingerprint(List<Optimization> optimizations, List<Path> ruleFiles, int maxRewrites) throws IOException {
+        var digest = digest();
+        updateWithCode(digest);
+        update(digest, Runtime.version().toString());
+        update(digest, System.getProperty("java.home"));
+        update(digest, "max-rewrites:" + maxRewrites);
+        for (var optimization : optimizations) {
+            // Compiled rules are hidden classes, whose names end in an address that differs between runs
+            var className = optimization.getClass().getName();
+            if (optimization.getClass().isHidden()) {
+                className = className.substring(0, className.lastIndexOf('/'));
+            }
+            update(digest, className + ":" + optimization.getName());
+        }
+        for (var ruleFile : ruleFiles) {
+            digest.update(Files.readAllBytes(ruleFile));
+        }
+        return digest.digest();
+    }
+
+    private static void updateWithCode(MessageDigest digest) throws IOException {
+        var codeSource = OptimizationCache.class.getProtectionDomain().getCodeSource();
+        if (codeSource == null) {
+            update(digest, String.valueOf(OptimizationCache.class.getPackage().getImplementationVersion()));
+            return;
+        }
+
+        Path location;
+        try {
+            location = Path.of(codeSource.getLocation().toURI());
+        } catch (URISyntaxException e) {
+            throw new IOException(e);
+        }
+        if (Files.isDirectory(location)) {
+            // Running from a build directory rather than a jar
+            try (var files = Files.walk(location)) {
+                for (var file : files.filter(Files::isRegularFile).sorted().toList()) {
+                    update(digest, location.relativize(file).toString());
+                    digest.update(Files.readAllBytes(file));
+                }
+            }
+        } else {
+            digest.update(Files.readAllBytes(location));
+        }
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        digest.update((value + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static MessageDigest digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
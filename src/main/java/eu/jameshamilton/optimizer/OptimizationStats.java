@@ -1,46 +1,146 @@
 package eu.jameshamilton.optimizer;
 
-import java.util.HashMap;
+import eu.jameshamilton.optimizer.stats.StatsReport;
+import eu.jameshamilton.optimizer.stats.StatsReport.ClassStats;
+import eu.jameshamilton.optimizer.stats.StatsReport.PhaseStats;
+import eu.jameshamilton.optimizer.stats.StatsReport.RuleStats;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.LongAdder;
 
 public class OptimizationStats {
-    // Pass-specific optimization metrics
-    private final Map<Integer, Map<String, LongAdder>> applicationCountByPass = new ConcurrentHashMap<>();
-    private final Map<Integer, Map<String, LongAdder>> passSuccesses = new ConcurrentHashMap<>();
+    // When profiling, every this many attempts of an optimization one is timed. Not the first,
+    // which also pays for loading and warming up its code.
+    private static final int SAMPLE_INTERVAL = 64;
+
+    /**
+     * The phases of optimizing a jar, which are timed per class or entry when profiling.
+     * Building a class is counted as {@code FRAMES} if its stack map frames are recomputed.
+     */
+    public enum Phase {
+        READ, PARSE, OPTIMIZE, BUILD, FRAMES, COMPRESS, WRITE
+    }
+
+    private final boolean profile;
+
+    // Optimizations are counted by name, each of which gets a dense id indexing the counters
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private final List<String> names = new CopyOnWriteArrayList<>();
+
+    // Counted per thread without synchronization, and only added up for the summary
+    private final Queue<Counters> allCounters = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<Counters> counters = ThreadLocal.withInitial(() -> {
+        var counters = new Counters();
+        allCounters.add(counters);
+        return counters;
+    });
 
     // File-level metrics
-    private final Map<Integer, LongAdder> filesProcessedByPass = new ConcurrentHashMap<>();
-    private final Map<Integer, LongAdder> parseSuccessesByPass = new ConcurrentHashMap<>();
+    private final LongAdder filesProcessed = new LongAdder();
+    private final LongAdder parseSuccesses = new LongAdder();
     private final Map<String, ConcurrentHashMap<String, LongAdder>> fileErrorsByType = new ConcurrentHashMap<>();
 
     // Class optimization metrics
-    private final Map<Integer, LongAdder> optimizedClassCount = new ConcurrentHashMap<>();
-    private final Map<Integer, LongAdder> totalBytesReduced = new ConcurrentHashMap<>();
+    private final LongAdder optimizedClassCount = new LongAdder();
+    private final LongAdder totalBytesReduced = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final Queue<ClassStats> classes = new ConcurrentLinkedQueue<>();
+
+    private final Instant start = Instant.now();
+    private final long startNanos = System.nanoTime();
+
+    public OptimizationStats() {
+        this(false);
+    }
+
+    /**
+     * Creates stats that, if {@code profile} is set, also time a sample of the optimizations'
+     * attempts and the phases of optimizing each class.
+     */
+    public OptimizationStats(boolean profile) {
+        this.profile = profile;
+    }
+
+    /**
+     * The counters of one thread. Successes are tentative until the class they were found
+     * in is known to have been optimized.
+     */
+    private static class Counters {
+        private long[] attempts = new long[0];
+        private long[] successes = new long[0];
+        private int[] tentativeSuccesses = new int[0];
+        private double[] bytesSaved = new double[0];
+        private Histogram[] matchTimes = new Histogram[0];
+        private final Histogram[] phaseTimes = new Histogram[Phase.values().length];
 
-    // Thread-local storage for tentative successes
-    private final ThreadLocal<Map<String, Integer>> tentativeSuccesses = ThreadLocal.withInitial(HashMap::new);
+        private void ensureCapacity(int id) {
+            if (id >= attempts.length) {
+                int length = Math.max(id + 1, attempts.length * 2);
+                attempts = Arrays.copyOf(attempts, length);
+                successes = Arrays.copyOf(successes, length);
+                tentativeSuccesses = Arrays.copyOf(tentativeSuccesses, length);
+                bytesSaved = Arrays.copyOf(bytesSaved, length);
+                matchTimes = Arrays.copyOf(matchTimes, length);
+            }
+        }
 
-    private int currentPass = 1;
+        /**
+         * Commits the tentative successes of a class, sharing the bytes it saved between the
+         * optimizations in proportion to how often each applied.
+         */
+        private void commit(int bytesReduced) {
+            long total = 0;
+            for (int count : tentativeSuccesses) {
+                total += count;
+            }
+            for (int id = 0; id < tentativeSuccesses.length; id++) {
+                successes[id] += tentativeSuccesses[id];
+                if (total > 0) {
+                    bytesSaved[id] += (double) bytesReduced * tentativeSuccesses[id] / total;
+                }
+            }
+            discard();
+        }
 
-    public void setPass(int pass) {
-        System.out.println("Optimizing pass " + pass + "...");
-        this.currentPass = pass;
+        private void discard() {
+            Arrays.fill(tentativeSuccesses, 0);
+        }
     }
 
-    private Map<String, LongAdder> getPassMap(Map<Integer, Map<String, LongAdder>> passMaps) {
-        return passMaps.computeIfAbsent(currentPass, _ -> new ConcurrentHashMap<>());
+    /**
+     * Returns the id of the counters for the optimization with the given name. Ids are
+     * assigned under a lock, so that concurrent registrations never share one.
+     */
+    public int register(String optimizationName) {
+        var id = ids.get(optimizationName);
+        if (id != null) {
+            return id;
+        }
+        synchronized (names) {
+            return ids.computeIfAbsent(optimizationName, name -> {
+                names.add(name);
+                return names.size() - 1;
+            });
+        }
     }
 
     public void recordFileProcessingStart(String fileName) {
-        filesProcessedByPass.computeIfAbsent(currentPass, _ -> new LongAdder()).increment();
+        filesProcessed.increment();
         // Clear any tentative successes at the start of processing a file
-        tentativeSuccesses.get().clear();
+        counters.get().discard();
     }
 
     public void recordParseSuccess(String fileName) {
-        parseSuccessesByPass.computeIfAbsent(currentPass, _ -> new LongAdder()).increment();
+        parseSuccesses.increment();
     }
 
     public void recordParseError(String fileName, Exception e) {
@@ -49,57 +149,172 @@ public class OptimizationStats {
             .computeIfAbsent(errorType, _ -> new LongAdder())
             .increment();
         // Clear tentative successes on error
-        tentativeSuccesses.get().clear();
+        counters.get().discard();
     }
 
     public void recordClassOptimized(int bytesReduced) {
-        optimizedClassCount.computeIfAbsent(currentPass, _ -> new LongAdder()).increment();
-        totalBytesReduced.computeIfAbsent(currentPass, _ -> new LongAdder()).add(bytesReduced);
+        optimizedClassCount.increment();
+        totalBytesReduced.add(bytesReduced);
 
         // Commit all tentative successes
-        Map<String, Integer> successes = tentativeSuccesses.get();
-        successes.forEach((name, count) -> {
-            getPassMap(passSuccesses)
-                .computeIfAbsent(name, _ -> new LongAdder())
-                .add(count);
-        });
-        successes.clear();
-    }
-
-    public void recordAttempt(String optimizationName) {
-        getPassMap(applicationCountByPass)
-            .computeIfAbsent(optimizationName, _ -> new LongAdder())
-            .increment();
+        counters.get().commit(bytesReduced);
+    }
+
+    /**
+     * Records a class served from the optimization cache, which is only counted as optimized
+     * if it got smaller: the optimizations applied to it aren't known.
+     */
+    public void recordCacheHit(int bytesReduced) {
+        cacheHits.increment();
+        if (bytesReduced > 0) {
+            optimizedClassCount.increment();
+            totalBytesReduced.add(bytesReduced);
+        }
+    }
+
+    /**
+     * Records an attempt of an optimization, returning whether to time it with
+     * {@link #recordMatchTime} because it is one of the sampled attempts.
+     */
+    public boolean recordAttempt(int id) {
+        var counters = this.counters.get();
+        counters.ensureCapacity(id);
+        long attempts = ++counters.attempts[id];
+        return profile && attempts % SAMPLE_INTERVAL == 0;
+    }
+
+    public void recordMatchTime(int id, long nanos) {
+        var counters = this.counters.get();
+        if (counters.matchTimes[id] == null) {
+            counters.matchTimes[id] = new Histogram();
+        }
+        counters.matchTimes[id].record(nanos);
+    }
+
+    /**
+     * Returns the start time of a phase to pass to {@link #recordPhase}, if profiling.
+     */
+    public long startPhase() {
+        return profile ? System.nanoTime() : 0;
     }
 
-    public void recordTentativeSuccess(String optimizationName) {
+    public void recordPhase(Phase phase, long start) {
+        if (profile) {
+            var phaseTimes = counters.get().phaseTimes;
+            if (phaseTimes[phase.ordinal()] == null) {
+                phaseTimes[phase.ordinal()] = new Histogram();
+            }
+            phaseTimes[phase.ordinal()].record(System.nanoTime() - start);
+        }
+    }
+
+    public void recordTentativeSuccess(int id) {
         // Store success temporarily until the class optimization completes
-        tentativeSuccesses.get().merge(optimizationName, 1, Integer::sum);
+        var counters = this.counters.get();
+        counters.ensureCapacity(id);
+        counters.tentativeSuccesses[id]++;
+    }
+
+    public void recordClass(String name, int originalSize, int optimizedSize, boolean cached) {
+        classes.add(new ClassStats(name, originalSize, optimizedSize, cached));
     }
 
-    public void printSummary() {
-        applicationCountByPass.forEach((pass, attemptMap) -> {
-            System.out.printf("\nPass %d Optimizations:\n", pass);
-            System.out.println("-------------------");
+    /**
+     * Returns the stats of the run so far. Only called once all classes are optimized, as the
+     * counters of the threads that are still optimizing are read without synchronization.
+     */
+    public StatsReport report() {
+        var totals = totals();
+        var rules = new ArrayList<RuleStats>();
+        for (int id = 0; id < totals.attempts.length; id++) {
+            if (totals.attempts[id] > 0) {
+                var times = totals.matchTimes[id];
+                rules.add(new RuleStats(
+                    names.get(id),
+                    totals.attempts[id],
+                    totals.successes[id],
+                    totals.bytesSaved[id],
+                    estimatedNanos(totals, id),
+                    times == null ? 0 : times.percentile(0.5),
+                    times == null ? 0 : times.percentile(0.99)
+                ));
+            }
+        }
 
-            attemptMap.forEach((name, attempts) -> {
-                long removedInstructions = passSuccesses
-                    .getOrDefault(pass, Map.of())
-                    .getOrDefault(name, new LongAdder())
-                    .sum();
+        var phases = new ArrayList<PhaseStats>();
+        for (var phase : Phase.values()) {
+            var times = totals.phaseTimes[phase.ordinal()];
+            if (times != null) {
+                phases.add(new PhaseStats(
+                    phase.name().toLowerCase(),
+                    times.count(),
+                    times.sum(),
+                    times.percentile(0.5),
+                    times.percentile(0.99),
+                    times.max()
+                ));
+            }
+        }
 
-                System.out.printf("%-30s: %d%n",
-                    name.substring(0, Math.min(30, name.length())),
-                    removedInstructions);
-            });
+        long errorCount = fileErrorsByType.values().stream()
+            .flatMap(errors -> errors.values().stream())
+            .mapToLong(LongAdder::sum)
+            .sum();
+
+        return new StatsReport(
+            start,
+            System.nanoTime() - startNanos,
+            profile,
+            filesProcessed.sum(),
+            optimizedClassCount.sum(),
+            totalBytesReduced.sum(),
+            cacheHits.sum(),
+            errorCount,
+            List.copyOf(rules),
+            List.copyOf(phases),
+            classes.stream().sorted(Comparator.comparing(ClassStats::name)).toList()
+        );
+    }
 
-            // Print total bytes reduced for this pass
-            long bytesReduced = totalBytesReduced.getOrDefault(pass, new LongAdder()).sum();
-            long optimizedClasses = optimizedClassCount.getOrDefault(pass, new LongAdder()).sum();
-            if (optimizedClasses > 0) {
-                System.out.printf("\nOptimized %d classes, reduced %d bytes (avg %.2f bytes/class)%n",
-                    optimizedClasses, bytesReduced, (double) bytesReduced / optimizedClasses);
+    /**
+     * The time spent in an optimization, extrapolated from its sampled attempts.
+     */
+    private static double estimatedNanos(Counters totals, int id) {
+        var times = totals.matchTimes[id];
+        return times == null ? 0 : (double) times.sum() / times.count() * totals.attempts[id];
+    }
+
+    /**
+     * Adds up the counters of all threads. Only called once all classes are optimized, when
+     * they no longer change.
+     */
+    private Counters totals() {
+        var totals = new Counters();
+        if (!names.isEmpty()) {
+            totals.ensureCapacity(names.size() - 1);
+        }
+        for (var counters : allCounters) {
+            for (int id = 0; id < Math.min(counters.attempts.length, names.size()); id++) {
+                totals.attempts[id] += counters.attempts[id];
+                totals.successes[id] += counters.successes[id];
+                totals.bytesSaved[id] += counters.bytesSaved[id];
+                totals.matchTimes[id] = add(totals.matchTimes[id], counters.matchTimes[id]);
+            }
+            for (int phase = 0; phase < totals.phaseTimes.length; phase++) {
+                totals.phaseTimes[phase] = add(totals.phaseTimes[phase], counters.phaseTimes[phase]);
             }
-        });
+        }
+        return totals;
+    }
+
+    private static Histogram add(Histogram total, Histogram histogram) {
+        if (histogram == null) {
+            return total;
+        }
+        if (total == null) {
+            total = new Histogram();
+        }
+        total.add(histogram);
+        return total;
     }
-}
\ No newline at end of file
+}
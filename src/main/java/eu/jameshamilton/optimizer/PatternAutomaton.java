@@ -0,0 +1,162 @@
+package eu.jameshamilton.optimizer;
+
+import eu.jameshamilton.classfile.Bytecode;
+
+import java.lang.classfile.CodeElement;
+import java.lang.classfile.Instruction;
+import java.lang.classfile.Opcode;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Matches the opcode patterns of all optimizations at once, reporting which optimizations
+ * can match at a position in a single walk over the following instructions.
+ * <p>
+ * Every position of every pattern is a bit in a state vector (a bit-parallel "shift-and" automaton):
+ * at each instruction the vector is masked with the positions that accept its opcode and shifted
+ * by one, so shared prefixes such as constant loads are tested once for all optimizations. The
+ * walk stops as soon as no pattern is still alive, usually after one or two instructions.
+ * <p>
+ * Only the opcodes are checked here; the optimizations still match their operands themselves.
+ * Instances keep scratch state and are not thread safe.
+ */
+class PatternAutomaton {
+    private static final int OTHER = 256;
+
+    private final Optimization[] optimizations;
+    // State bit -> optimization, for the bits that end a pattern
+    private final int[] optimizationOfBit;
+    // [opcode byte or OTHER][word]: the pattern positions that accept an element
+    private final long[][] masks;
+    private final long[] starts;
+    private final long[] accepts;
+    // Optimizations without a pattern, which are tried everywhere
+    private final long[] unrestricted;
+    // The opcode bytes that can start a pattern
+    private final long[] leading = new long[256 / Long.SIZE];
+
+    private final long[] state;
+    private final long[] matched;
+
+    PatternAutomaton(List<Optimization> optimizations) {
+        this.optimizations = optimizations.toArray(Optimization[]::new);
+
+        int bits = 0;
+        for (var optimization : optimizations) {
+            bits += optimization.pattern().size();
+        }
+
+        int stateWords = words(bits);
+        int optimizationWords = words(optimizations.size());
+        optimizationOfBit = new int[bits];
+        masks = new long[OTHER + 1][stateWords];
+        starts = new long[stateWords];
+        accepts = new long[stateWords];
+        unrestricted = new long[optimizationWords];
+        state = new long[stateWords];
+        matched = new long[optimizationWords];
+
+        int bit = 0;
+        for (int i = 0; i < this.optimizations.length; i++) {
+            var pattern = this.optimizations[i].pattern();
+            if (pattern.isEmpty()) {
+                set(unrestricted, i);
+                continue;
+            }
+
+            set(starts, bit);
+            for (var opcode : pattern.getFirst()) {
+                set(leading, opcode.bytecode() & 0xFF);
+            }
+            for (Set<Opcode> opcodes : pattern) {
+                for (var opcode : opcodes) {
+                    // Wide variants share the low byte of the instruction they widen
+                    set(masks[opcode.bytecode() & 0xFF], bit);
+                }
+                bit++;
+            }
+            set(accepts, bit - 1);
+            optimizationOfBit[bit - 1] = i;
+        }
+    }
+
+    /**
+     * Stores the optimizations that can match at {@code index}, in their original order,
+     * into {@code candidates} and returns how many there are.
+     */
+    int candidates(List<CodeElement> code, int index, Optimization[] candidates) {
+        System.arraycopy(unrestricted, 0, matched, 0, matched.length);
+        System.arraycopy(starts, 0, state, 0, state.length);
+
+        for (int i = index; i < code.size(); i++) {
+            var mask = masks[opcodeByte(code.get(i))];
+            boolean alive = false;
+            for (int w = 0; w < state.length; w++) {
+                state[w] &= mask[w];
+                alive |= state[w] != 0;
+            }
+            if (!alive) {
+                break;
+            }
+
+            for (int w = 0; w < state.length; w++) {
+                long accepted = state[w] & accepts[w];
+                while (accepted != 0) {
+                    set(matched, optimizationOfBit[w * Long.SIZE + Long.numberOfTrailingZeros(accepted)]);
+                    accepted &= accepted - 1;
+                }
+                // Don't carry a completed pattern into the first position of the next one
+                state[w] &= ~accepts[w];
+            }
+
+            shiftLeft(state);
+        }
+
+        int count = 0;
+        for (int w = 0; w < matched.length; w++) {
+            long bits = matched[w];
+            while (bits != 0) {
+                candidates[count++] = optimizations[w * Long.SIZE + Long.numberOfTrailingZeros(bits)];
+                bits &= bits - 1;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns whether any optimization can match somewhere in the given raw bytecode, which
+     * is checked without parsing it: a method that contains no opcode that starts a pattern
+     * can be left as it is.
+     */
+    boolean canMatch(byte[] bytecode) {
+        for (long bits : unrestricted) {
+            if (bits != 0) {
+                return true;
+            }
+        }
+        return optimizations.length > 0 && Bytecode.containsAny(bytecode, leading);
+    }
+
+    int size() {
+        return optimizations.length;
+    }
+
+    private static int opcodeByte(CodeElement element) {
+        return element instanceof Instruction i ? i.opcode().bytecode() & 0xFF : OTHER;
+    }
+
+    private static void shiftLeft(long[] bits) {
+        for (int w = bits.length - 1; w > 0; w--) {
+            bits[w] = (bits[w] << 1) | (bits[w - 1] >>> (Long.SIZE - 1));
+        }
+        bits[0] <<= 1;
+    }
+
+    private static void set(long[] bits, int bit) {
+        bits[bit / Long.SIZE] |= 1L << bit;
+    }
+
+    private static int words(int bits) {
+        return Math.max(1, (bits + Long.SIZE - 1) / Long.SIZE);
+    }
+}
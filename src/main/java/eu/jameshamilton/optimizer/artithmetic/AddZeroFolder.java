@@ -1,11 +1,16 @@
 package eu.jameshamilton.optimizer.artithmetic;
 
+import eu.jameshamilton.classfile.InstructionBuilder;
+import eu.jameshamilton.classfile.Opcodes;
 import eu.jameshamilton.classfile.matcher.Matcher;
 import eu.jameshamilton.classfile.matcher.Window;
 import eu.jameshamilton.optimizer.Optimization;
 
-import java.lang.classfile.CodeBuilder;
+import java.lang.classfile.CodeElement;
+import java.lang.classfile.Opcode;
 import java.lang.constant.ConstantDesc;
+import java.util.List;
+import java.util.Set;
 
 import static eu.jameshamilton.classfile.matcher.InstructionMatchers.loadConstant;
 import static eu.jameshamilton.classfile.matcher.InstructionMatchers.dsub;
@@ -18,14 +23,20 @@ import static eu.jameshamilton.classfile.matcher.InstructionMatchers.lsub;
 public class AddZeroFolder implements Optimization {
     private static final Matcher<ConstantDesc> NUMBER = c -> c instanceof Number;
     private static final Matcher<ConstantDesc> ZERO = NUMBER.and(c -> c.equals(0) || c.equals(0L) || c.equals(0f) || c.equals(0.0));
+    private static final List<Matcher<CodeElement>> PATTERN = List.of(
+        loadConstant(ZERO),
+        isub().or(lsub()).or(fsub()).or(dsub())
+            .or(iadd()).or(ladd()) // cannot do dadd/fadd due to -0.0
+    );
 
     @Override
-    public boolean apply(CodeBuilder builder, Window window) {
-        return window.matches(
-            loadConstant(ZERO),
-            isub().or(lsub()).or(fsub()).or(dsub())
-                .or(iadd()).or(ladd()) // cannot do dadd/fadd due to -0.0
-        );
+    public boolean apply(InstructionBuilder builder, Window window) {
+        return window.matches(PATTERN);
+    }
+
+    @Override
+    public List<Set<Opcode>> pattern() {
+        return List.of(Opcodes.CONSTANTS, Set.of(Opcode.ISUB, Opcode.LSUB, Opcode.FSUB, Opcode.DSUB, Opcode.IADD, Opcode.LADD));
     }
 
     @Override
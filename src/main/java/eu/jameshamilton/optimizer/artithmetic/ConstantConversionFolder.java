@@ -1,37 +1,68 @@
 package eu.jameshamilton.optimizer.artithmetic;
 
+import eu.jameshamilton.classfile.InstructionBuilder;
+import eu.jameshamilton.classfile.Opcodes;
 import eu.jameshamilton.classfile.matcher.Capture;
+import eu.jameshamilton.classfile.matcher.IntCapture;
+import eu.jameshamilton.classfile.matcher.Matcher;
+import eu.jameshamilton.classfile.matcher.OpcodeSet;
 import eu.jameshamilton.classfile.matcher.Window;
 import eu.jameshamilton.optimizer.Optimization;
 
-import java.lang.classfile.CodeBuilder;
+import java.lang.classfile.CodeElement;
+import java.lang.classfile.Opcode;
+import java.util.List;
+import java.util.Set;
 
-import static eu.jameshamilton.classfile.matcher.InstructionMatchers.i2b;
-import static eu.jameshamilton.classfile.matcher.InstructionMatchers.i2c;
-import static eu.jameshamilton.classfile.matcher.InstructionMatchers.i2d;
-import static eu.jameshamilton.classfile.matcher.InstructionMatchers.i2f;
-import static eu.jameshamilton.classfile.matcher.InstructionMatchers.i2l;
-import static eu.jameshamilton.classfile.matcher.InstructionMatchers.i2s;
-import static eu.jameshamilton.classfile.matcher.InstructionMatchers.loadConstant;
+import static eu.jameshamilton.classfile.matcher.InstructionMatchers.instruction;
+import static eu.jameshamilton.classfile.matcher.InstructionMatchers.loadConstantInteger;
+import static java.lang.classfile.Opcode.I2B;
+import static java.lang.classfile.Opcode.I2C;
+import static java.lang.classfile.Opcode.I2D;
+import static java.lang.classfile.Opcode.I2F;
+import static java.lang.classfile.Opcode.I2L;
+import static java.lang.classfile.Opcode.I2S;
 
 public class ConstantConversionFolder implements Optimization {
+    private static final OpcodeSet CONVERSIONS = OpcodeSet.of(I2L, I2F, I2D, I2B, I2S, I2C);
+
+    private final ThreadLocal<Matchers> matchers = ThreadLocal.withInitial(Matchers::new);
+
+    private static final class Matchers {
+        final IntCapture constant = new IntCapture();
+        final Capture<Opcode> op = new Capture<>();
+        final List<Matcher<CodeElement>> pattern = List.of(loadConstantInteger(constant), instruction(CONVERSIONS, op));
+
+        Matchers clear() {
+            constant.clear();
+            op.clear();
+            return this;
+        }
+    }
+
     @Override
-    public boolean apply(CodeBuilder builder, Window window) {
-        var constant = new Capture<Integer>();
-
-        if (window.matches(loadConstant(constant.clear()), i2l())) {
-            builder.loadConstant(constant.get().longValue());
-        } else if (window.matches(loadConstant(constant.clear()), i2f())) {
-            builder.loadConstant(constant.get().floatValue());
-        } else if (window.matches(loadConstant(constant.clear()), i2d())) {
-            builder.loadConstant(constant.get().doubleValue());
-        } else if (window.matches(loadConstant(constant.clear()), i2b())) {
-            builder.loadConstant(constant.get().byteValue());
-        } else if (window.matches(loadConstant(constant.clear()), i2s().or(i2c()))) {
-            builder.loadConstant(constant.get().shortValue());
+    public boolean apply(InstructionBuilder builder, Window window) {
+        var m = matchers.get().clear();
+
+        if (window.matches(m.pattern)) {
+            var constant = m.constant.get();
+            switch (m.op.get()) {
+                case I2L -> builder.loadConstant((long) constant);
+                case I2F -> builder.loadConstant((float) constant);
+                case I2D -> builder.loadConstant((double) constant);
+                case I2B -> builder.loadConstant((byte) constant);
+                case I2C -> builder.loadConstant((char) constant);
+                default -> builder.loadConstant((short) constant);
+            }
+            return true;
         }
 
-        return window.getMatchedCount() > 0;
+        return false;
+    }
+
+    @Override
+    public List<Set<Opcode>> pattern() {
+        return List.of(Opcodes.CONSTANTS, Set.of(I2L, I2F, I2D, I2B, I2S, I2C));
     }
 
     @Override
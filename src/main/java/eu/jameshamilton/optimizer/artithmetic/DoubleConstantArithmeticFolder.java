@@ -1,12 +1,17 @@
 package eu.jameshamilton.optimizer.artithmetic;
 
+import eu.jameshamilton.classfile.InstructionBuilder;
+import eu.jameshamilton.classfile.Opcodes;
 import eu.jameshamilton.classfile.matcher.Capture;
-import eu.jameshamilton.classfile.matcher.CollectionMatcher;
+import eu.jameshamilton.classfile.matcher.Matcher;
+import eu.jameshamilton.classfile.matcher.OpcodeSet;
 import eu.jameshamilton.classfile.matcher.Window;
 import eu.jameshamilton.optimizer.Optimization;
 
-import java.lang.classfile.CodeBuilder;
+import java.lang.classfile.CodeElement;
 import java.lang.classfile.Opcode;
+import java.util.List;
+import java.util.Set;
 
 import static eu.jameshamilton.classfile.matcher.InstructionMatchers.loadConstant;
 import static eu.jameshamilton.classfile.matcher.InstructionMatchers.instruction;
@@ -17,24 +22,36 @@ import static java.lang.classfile.Opcode.DREM;
 import static java.lang.classfile.Opcode.DSUB;
 
 public class DoubleConstantArithmeticFolder implements Optimization {
-    private static final CollectionMatcher<Opcode> doubleArithmetic = new CollectionMatcher<>(
-        DADD, DSUB, DMUL, DDIV, DREM
-    );
+    private static final OpcodeSet doubleArithmetic = OpcodeSet.of(DADD, DSUB, DMUL, DDIV, DREM);
 
-    @Override
-    public boolean apply(CodeBuilder builder, Window window) {
-        var c1 = new Capture<Double>();
-        var c2 = new Capture<Double>();
-        var op = new Capture<Opcode>();
+    private final ThreadLocal<Matchers> matchers = ThreadLocal.withInitial(Matchers::new);
 
-        if (window.matches(
+    private static final class Matchers {
+        final Capture<Double> c1 = new Capture<>();
+        final Capture<Double> c2 = new Capture<>();
+        final Capture<Opcode> op = new Capture<>();
+        final List<Matcher<CodeElement>> pattern = List.of(
             loadConstant(c1),
             loadConstant(c2),
-            instruction(doubleArithmetic.and(op))
-        )) {
-            var i1 = c1.get();
-            var i2 = c2.get();
-            var value = switch (op.get()) {
+            instruction(doubleArithmetic, op)
+        );
+
+        Matchers clear() {
+            c1.clear();
+            c2.clear();
+            op.clear();
+            return this;
+        }
+    }
+
+    @Override
+    public boolean apply(InstructionBuilder builder, Window window) {
+        var m = matchers.get().clear();
+
+        if (window.matches(m.pattern)) {
+            var i1 = m.c1.get();
+            var i2 = m.c2.get();
+            var value = switch (m.op.get()) {
                 case DADD -> i1 + i2;
                 case DSUB -> i1 - i2;
                 case DMUL -> i1 * i2;
@@ -52,6 +69,11 @@ public class DoubleConstantArithmeticFolder implements Optimization {
         return false;
     }
 
+    @Override
+    public List<Set<Opcode>> pattern() {
+        return List.of(Opcodes.CONSTANTS, Opcodes.CONSTANTS, Set.of(DADD, DSUB, DMUL, DDIV, DREM));
+    }
+
     @Override
     public String getName() {
         return "double constant arithmetic folder";
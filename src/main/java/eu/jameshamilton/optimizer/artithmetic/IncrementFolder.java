@@ -1,11 +1,18 @@
 package eu.jameshamilton.optimizer.artithmetic;
 
+import eu.jameshamilton.classfile.InstructionBuilder;
+import eu.jameshamilton.classfile.Opcodes;
 import eu.jameshamilton.classfile.matcher.Capture;
+import eu.jameshamilton.classfile.matcher.IntCapture;
+import eu.jameshamilton.classfile.matcher.Matcher;
 import eu.jameshamilton.classfile.matcher.Window;
 import eu.jameshamilton.optimizer.Optimization;
 
-import java.lang.classfile.CodeBuilder;
+import java.lang.classfile.CodeElement;
+import java.lang.classfile.Opcode;
 import java.lang.classfile.TypeKind;
+import java.util.List;
+import java.util.Set;
 
 import static eu.jameshamilton.classfile.matcher.InstructionMatchers.iadd;
 import static eu.jameshamilton.classfile.matcher.InstructionMatchers.loadConstantInteger;
@@ -13,26 +20,45 @@ import static eu.jameshamilton.classfile.matcher.InstructionMatchers.loadInstruc
 import static eu.jameshamilton.classfile.matcher.InstructionMatchers.storeInstruction;
 
 public class IncrementFolder implements Optimization {
-    @Override
-    public boolean apply(CodeBuilder builder, Window window) {
-        Capture<Integer> constant = new Capture<>();
-        Capture<Integer> slot = new Capture<>();
-        Capture<TypeKind> kind = new Capture<>();
+    private final ThreadLocal<Matchers> matchers = ThreadLocal.withInitial(Matchers::new);
 
-        if (window.matches(
+    private static final class Matchers {
+        final IntCapture constant = new IntCapture();
+        final IntCapture slot = new IntCapture();
+        final Capture<TypeKind> kind = new Capture<>();
+        final List<Matcher<CodeElement>> pattern = List.of(
             loadInstruction(kind, slot),
             // the integer has to be byte-sized, to fit the iinc operand.
-            loadConstantInteger(constant.and(i -> i.byteValue() == i)),
+            loadConstantInteger(constant.and(i -> i == (byte) i)),
             iadd(),
-            storeInstruction(kind, slot))
-        ) {
-            builder.iinc(slot.get(), constant.get());
+            storeInstruction(kind, slot)
+        );
+
+        Matchers clear() {
+            constant.clear();
+            slot.clear();
+            kind.clear();
+            return this;
+        }
+    }
+
+    @Override
+    public boolean apply(InstructionBuilder builder, Window window) {
+        var m = matchers.get().clear();
+
+        if (window.matches(m.pattern)) {
+            builder.iinc(m.slot.get(), m.constant.get());
             return true;
         }
 
         return false;
     }
 
+    @Override
+    public List<Set<Opcode>> pattern() {
+        return List.of(Opcodes.LOADS, Opcodes.CONSTANTS, Set.of(Opcode.IADD), Opcodes.STORES);
+    }
+
     @Override
     public String getName() {
         return "increment folder";
@@ -1,20 +1,27 @@
 package eu.jameshamilton.optimizer.artithmetic;
 
+import eu.jameshamilton.classfile.InstructionBuilder;
+import eu.jameshamilton.classfile.Opcodes;
 import eu.jameshamilton.classfile.matcher.Capture;
-import eu.jameshamilton.classfile.matcher.CollectionMatcher;
+import eu.jameshamilton.classfile.matcher.IntCapture;
+import eu.jameshamilton.classfile.matcher.Matcher;
+import eu.jameshamilton.classfile.matcher.OpcodeSet;
 import eu.jameshamilton.classfile.matcher.Window;
 import eu.jameshamilton.optimizer.Optimization;
 
-import java.lang.classfile.CodeBuilder;
+import java.lang.classfile.CodeElement;
 import java.lang.classfile.Opcode;
+import java.util.List;
+import java.util.Set;
 
-import static eu.jameshamilton.classfile.matcher.InstructionMatchers.loadConstant;
 import static eu.jameshamilton.classfile.matcher.InstructionMatchers.ineg;
 import static eu.jameshamilton.classfile.matcher.InstructionMatchers.instruction;
+import static eu.jameshamilton.classfile.matcher.InstructionMatchers.loadConstantInteger;
 import static java.lang.classfile.Opcode.IADD;
 import static java.lang.classfile.Opcode.IAND;
 import static java.lang.classfile.Opcode.IDIV;
 import static java.lang.classfile.Opcode.IMUL;
+import static java.lang.classfile.Opcode.INEG;
 import static java.lang.classfile.Opcode.IOR;
 import static java.lang.classfile.Opcode.IREM;
 import static java.lang.classfile.Opcode.ISHL;
@@ -24,53 +31,79 @@ import static java.lang.classfile.Opcode.IUSHR;
 import static java.lang.classfile.Opcode.IXOR;
 
 public class IntegerConstantArithmeticFolder implements Optimization {
-    private static final CollectionMatcher<Opcode> integerArithmetic = new CollectionMatcher<>(
+    private static final OpcodeSet integerArithmetic = OpcodeSet.of(
         IADD, ISUB, IMUL, IDIV, IREM, IAND, IOR, IXOR, ISHL, ISHR, IUSHR
     );
+    // Either a binary operation on two constants, or the negation of one
+    private static final List<Set<Opcode>> PATTERN = List.of(
+        Opcodes.CONSTANTS,
+        Opcodes.union(Opcodes.CONSTANTS, Set.of(INEG))
+    );
+
+    private final ThreadLocal<Matchers> matchers = ThreadLocal.withInitial(Matchers::new);
+
+    private static final class Matchers {
+        final IntCapture c1 = new IntCapture();
+        final IntCapture c2 = new IntCapture();
+        final Capture<Opcode> op = new Capture<>();
+        final List<Matcher<CodeElement>> binary = List.of(
+            loadConstantInteger(c1),
+            loadConstantInteger(c2),
+            instruction(integerArithmetic, op)
+        );
+        final List<Matcher<CodeElement>> negation = List.of(
+            loadConstantInteger(c1),
+            ineg()
+        );
+
+        Matchers clear() {
+            c1.clear();
+            c2.clear();
+            op.clear();
+            return this;
+        }
+    }
 
     @Override
-    public boolean apply(CodeBuilder builder, Window window) {
-        var c1 = new Capture<Integer>();
-        var c2 = new Capture<Integer>();
-        var op = new Capture<Opcode>();
+    public boolean apply(InstructionBuilder builder, Window window) {
+        var m = matchers.get().clear();
+
+        if (window.matches(m.binary)) {
+            var i1 = m.c1.get();
+            var i2 = m.c2.get();
+            var op = m.op.get();
+            if ((op == IDIV || op == IREM) && i2 == 0) {
+                return false;
+            }
 
-        if (window.matches(
-            loadConstant(c1),
-            loadConstant(c2),
-            instruction(integerArithmetic.and(op))
-        )) {
-            var i1 = c1.get();
-            var i2 = c2.get();
-            var value = switch (op.get()) {
+            builder.loadConstant(switch (op) {
                 case IADD -> i1 + i2;
                 case ISUB -> i1 - i2;
                 case IMUL -> i1 * i2;
-                case IDIV -> i2 != 0 ? i1 / i2 : null;
-                case IREM -> i2 != 0 ? i1 % i2 : null;
+                case IDIV -> i1 / i2;
+                case IREM -> i1 % i2;
                 case IAND -> i1 & i2;
                 case IOR -> i1 | i2;
                 case IXOR -> i1 ^ i2;
                 case ISHL -> i1 << (i2 & 0x1F);
                 case ISHR -> i1 >> (i2 & 0x1F);
                 case IUSHR -> i1 >>> (i2 & 0x1F);
-                default -> null;
-            };
-
-            if (value != null) {
-                builder.loadConstant(value);
-                return true;
-            }
-        } else if (window.matches(
-            loadConstant(c1.clear()),
-            ineg())
-        ) {
-            builder.loadConstant(-c1.get());
+                default -> throw new IllegalStateException("Unexpected operation: " + op);
+            });
+            return true;
+        } else if (window.matches(m.clear().negation)) {
+            builder.loadConstant(-m.c1.get());
             return true;
         }
 
         return false;
     }
 
+    @Override
+    public List<Set<Opcode>> pattern() {
+        return PATTERN;
+    }
+
     @Override
     public String getName() {
         return "integer constant arithmetic folder";
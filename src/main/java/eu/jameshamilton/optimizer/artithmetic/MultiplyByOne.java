@@ -1,11 +1,16 @@
 package eu.jameshamilton.optimizer.artithmetic;
 
+import eu.jameshamilton.classfile.InstructionBuilder;
+import eu.jameshamilton.classfile.Opcodes;
 import eu.jameshamilton.classfile.matcher.Matcher;
 import eu.jameshamilton.classfile.matcher.Window;
 import eu.jameshamilton.optimizer.Optimization;
 
-import java.lang.classfile.CodeBuilder;
+import java.lang.classfile.CodeElement;
+import java.lang.classfile.Opcode;
 import java.lang.constant.ConstantDesc;
+import java.util.List;
+import java.util.Set;
 
 import static eu.jameshamilton.classfile.matcher.InstructionMatchers.loadConstant;
 import static eu.jameshamilton.classfile.matcher.InstructionMatchers.dmul;
@@ -16,13 +21,19 @@ import static eu.jameshamilton.classfile.matcher.InstructionMatchers.lmul;
 public class MultiplyByOne implements Optimization {
     private static final Matcher<ConstantDesc> NUMBER = c -> c instanceof Number;
     private static final Matcher<ConstantDesc> ONE = NUMBER.and(c -> c.equals(1) || c.equals(1L) || c.equals(1f) || c.equals(1.0));
+    private static final List<Matcher<CodeElement>> PATTERN = List.of(
+        loadConstant(ONE),
+        imul().or(lmul()).or(dmul()).or(fmul())
+    );
 
     @Override
-    public boolean apply(CodeBuilder builder, Window window) {
-        return window.matches(
-            loadConstant(ONE),
-            imul().or(lmul()).or(dmul()).or(fmul())
-        );
+    public boolean apply(InstructionBuilder builder, Window window) {
+        return window.matches(PATTERN);
+    }
+
+    @Override
+    public List<Set<Opcode>> pattern() {
+        return List.of(Opcodes.CONSTANTS, Set.of(Opcode.IMUL, Opcode.LMUL, Opcode.DMUL, Opcode.FMUL));
     }
 
     @Override
@@ -1,11 +1,16 @@
 package eu.jameshamilton.optimizer.deadcode;
 
+import eu.jameshamilton.classfile.InstructionBuilder;
 import eu.jameshamilton.classfile.matcher.Capture;
+import eu.jameshamilton.classfile.matcher.Matcher;
 import eu.jameshamilton.classfile.matcher.Window;
 import eu.jameshamilton.optimizer.Optimization;
 
-import java.lang.classfile.CodeBuilder;
+import java.lang.classfile.CodeElement;
 import java.lang.classfile.Label;
+import java.lang.classfile.Opcode;
+import java.util.List;
+import java.util.Set;
 
 import static eu.jameshamilton.classfile.matcher.InstructionMatchers.ifeq;
 import static eu.jameshamilton.classfile.matcher.InstructionMatchers.ifge;
@@ -14,17 +19,28 @@ import static eu.jameshamilton.classfile.matcher.InstructionMatchers.ifne;
 import static eu.jameshamilton.classfile.matcher.InstructionMatchers.label;
 
 public class ConditionalJumpNextRemover implements Optimization {
+    private final ThreadLocal<Matchers> matchers = ThreadLocal.withInitial(Matchers::new);
+
+    private static final class Matchers {
+        final Capture<Label> label = new Capture<>();
+        final List<Matcher<CodeElement>> pattern = List.of(
+            ifeq(label).or(ifne(label)).or(ifle(label)).or(ifge(label)),
+            label(label)
+        );
+
+        Matchers clear() {
+            label.clear();
+            return this;
+        }
+    }
+
     @Override
-    public boolean apply(CodeBuilder builder, Window window) {
+    public boolean apply(InstructionBuilder builder, Window window) {
         // Remove conditional jump to next instruction.
-        var label = new Capture<Label>();
-        if (window.matches(
-            ifeq(label.clear()).or(ifne(label.clear())).or(ifle(label.clear())).or(ifge(label.clear())),
-            label(label)
-        )) {
+        if (window.matches(matchers.get().clear().pattern)) {
             builder
                 .pop()
-                .labelBinding(label.get());
+                .with(window.get(1));
 
             return true;
         }
@@ -32,6 +48,11 @@ public class ConditionalJumpNextRemover implements Optimization {
         return false;
     }
 
+    @Override
+    public List<Set<Opcode>> pattern() {
+        return List.of(Set.of(Opcode.IFEQ, Opcode.IFNE, Opcode.IFLE, Opcode.IFGE));
+    }
+
     @Override
     public String getName() {
         return "conditional jump next remover";
@@ -1,31 +1,52 @@
 package eu.jameshamilton.optimizer.deadcode;
 
+import eu.jameshamilton.classfile.InstructionBuilder;
 import eu.jameshamilton.classfile.matcher.Capture;
+import eu.jameshamilton.classfile.matcher.Matcher;
 import eu.jameshamilton.classfile.matcher.Window;
 import eu.jameshamilton.optimizer.Optimization;
 
-import java.lang.classfile.CodeBuilder;
+import java.lang.classfile.CodeElement;
 import java.lang.classfile.Label;
+import java.lang.classfile.Opcode;
+import java.util.List;
+import java.util.Set;
 
 import static eu.jameshamilton.classfile.matcher.InstructionMatchers.goto_;
 import static eu.jameshamilton.classfile.matcher.InstructionMatchers.label;
 
 public class GotoNextRemover implements Optimization {
-    @Override
-    public boolean apply(CodeBuilder builder, Window window) {
-        // Remove goto to next instruction.
-        var label = new Capture<Label>();
-        if (window.matches(
+    private final ThreadLocal<Matchers> matchers = ThreadLocal.withInitial(Matchers::new);
+
+    private static final class Matchers {
+        final Capture<Label> label = new Capture<>();
+        final List<Matcher<CodeElement>> pattern = List.of(
             goto_(label),
             label(label)
-        )) {
-            builder.labelBinding(label.get());
+        );
+
+        Matchers clear() {
+            label.clear();
+            return this;
+        }
+    }
+
+    @Override
+    public boolean apply(InstructionBuilder builder, Window window) {
+        // Remove goto to next instruction.
+        if (window.matches(matchers.get().clear().pattern)) {
+            builder.with(window.get(1));
             return true;
         }
 
         return false;
     }
 
+    @Override
+    public List<Set<Opcode>> pattern() {
+        return List.of(Set.of(Opcode.GOTO, Opcode.GOTO_W));
+    }
+
     @Override
     public String getName() {
         return "goto next remover";
@@ -1,17 +1,28 @@
 package eu.jameshamilton.optimizer.deadcode;
 
+import eu.jameshamilton.classfile.InstructionBuilder;
+import eu.jameshamilton.classfile.matcher.Matcher;
 import eu.jameshamilton.classfile.matcher.Window;
 import eu.jameshamilton.optimizer.Optimization;
 
-import java.lang.classfile.CodeBuilder;
+import java.lang.classfile.CodeElement;
+import java.lang.classfile.Opcode;
+import java.util.List;
+import java.util.Set;
 
 import static eu.jameshamilton.classfile.matcher.InstructionMatchers.nop;
 
 public class NopRemover implements Optimization {
+    private static final List<Matcher<CodeElement>> PATTERN = List.of(nop());
 
     @Override
-    public boolean apply(CodeBuilder builder, Window window) {
-        return window.matches(nop());
+    public boolean apply(InstructionBuilder builder, Window window) {
+        return window.matches(PATTERN);
+    }
+
+    @Override
+    public List<Set<Opcode>> pattern() {
+        return List.of(Set.of(Opcode.NOP));
     }
 
     @Override
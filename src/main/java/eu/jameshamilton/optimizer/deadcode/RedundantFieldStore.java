@@ -1,29 +1,55 @@
 package eu.jameshamilton.optimizer.deadcode;
 
+import eu.jameshamilton.classfile.InstructionBuilder;
+import eu.jameshamilton.classfile.Opcodes;
 import eu.jameshamilton.classfile.matcher.Capture;
+import eu.jameshamilton.classfile.matcher.IntCapture;
+import eu.jameshamilton.classfile.matcher.Matcher;
 import eu.jameshamilton.classfile.matcher.Window;
 import eu.jameshamilton.optimizer.Optimization;
 
-import java.lang.classfile.CodeBuilder;
+import java.lang.classfile.CodeElement;
+import java.lang.classfile.Opcode;
 import java.lang.constant.ClassDesc;
+import java.util.List;
+import java.util.Set;
 
 import static eu.jameshamilton.classfile.matcher.InstructionMatchers.aload;
 import static eu.jameshamilton.classfile.matcher.InstructionMatchers.getfield;
 import static eu.jameshamilton.classfile.matcher.InstructionMatchers.putfield;
 
 public class RedundantFieldStore implements Optimization {
-    @Override
-    public boolean apply(CodeBuilder builder, Window window) {
-        var slot = new Capture<Integer>();
-        var owner = new Capture<ClassDesc>();
-        var name = new Capture<String>();
-        var type = new Capture<ClassDesc>();
-        return window.matches(
+    private final ThreadLocal<Matchers> matchers = ThreadLocal.withInitial(Matchers::new);
+
+    private static final class Matchers {
+        final IntCapture slot = new IntCapture();
+        final Capture<ClassDesc> owner = new Capture<>();
+        final Capture<String> name = new Capture<>();
+        final Capture<ClassDesc> type = new Capture<>();
+        final List<Matcher<CodeElement>> pattern = List.of(
             aload(slot),
             aload(slot),
             getfield(owner, name, type),
             putfield(owner, name, type)
         );
+
+        Matchers clear() {
+            slot.clear();
+            owner.clear();
+            name.clear();
+            type.clear();
+            return this;
+        }
+    }
+
+    @Override
+    public boolean apply(InstructionBuilder builder, Window window) {
+        return window.matches(matchers.get().clear().pattern);
+    }
+
+    @Override
+    public List<Set<Opcode>> pattern() {
+        return List.of(Opcodes.LOADS, Opcodes.LOADS, Set.of(Opcode.GETFIELD), Set.of(Opcode.PUTFIELD));
     }
 
     @Override
@@ -1,25 +1,48 @@
 package eu.jameshamilton.optimizer.deadcode;
 
+import eu.jameshamilton.classfile.InstructionBuilder;
 import eu.jameshamilton.classfile.matcher.Capture;
+import eu.jameshamilton.classfile.matcher.Matcher;
 import eu.jameshamilton.classfile.matcher.Window;
 import eu.jameshamilton.optimizer.Optimization;
 
-import java.lang.classfile.CodeBuilder;
+import java.lang.classfile.CodeElement;
+import java.lang.classfile.Opcode;
 import java.lang.constant.ClassDesc;
+import java.util.List;
+import java.util.Set;
 
 import static eu.jameshamilton.classfile.matcher.InstructionMatchers.getstatic;
 import static eu.jameshamilton.classfile.matcher.InstructionMatchers.putstatic;
 
 public class RedundantStaticFieldStore implements Optimization {
-    @Override
-    public boolean apply(CodeBuilder builder, Window window) {
-        var owner = new Capture<ClassDesc>();
-        var name = new Capture<String>();
-        var type = new Capture<ClassDesc>();
-        return window.matches(
+    private final ThreadLocal<Matchers> matchers = ThreadLocal.withInitial(Matchers::new);
+
+    private static final class Matchers {
+        final Capture<ClassDesc> owner = new Capture<>();
+        final Capture<String> name = new Capture<>();
+        final Capture<ClassDesc> type = new Capture<>();
+        final List<Matcher<CodeElement>> pattern = List.of(
             getstatic(owner, name, type),
             putstatic(owner, name, type)
         );
+
+        Matchers clear() {
+            owner.clear();
+            name.clear();
+            type.clear();
+            return this;
+        }
+    }
+
+    @Override
+    public boolean apply(InstructionBuilder builder, Window window) {
+        return window.matches(matchers.get().clear().pattern);
+    }
+
+    @Override
+    public List<Set<Opcode>> pattern() {
+        return List.of(Set.of(Opcode.GETSTATIC), Set.of(Opcode.PUTSTATIC));
     }
 
     @Override
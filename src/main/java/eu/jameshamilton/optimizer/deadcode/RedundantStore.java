@@ -1,24 +1,48 @@
 package eu.jameshamilton.optimizer.deadcode;
 
+import eu.jameshamilton.classfile.InstructionBuilder;
+import eu.jameshamilton.classfile.Opcodes;
 import eu.jameshamilton.classfile.matcher.Capture;
+import eu.jameshamilton.classfile.matcher.IntCapture;
+import eu.jameshamilton.classfile.matcher.Matcher;
 import eu.jameshamilton.classfile.matcher.Window;
 import eu.jameshamilton.optimizer.Optimization;
 
-import java.lang.classfile.CodeBuilder;
+import java.lang.classfile.CodeElement;
+import java.lang.classfile.Opcode;
 import java.lang.classfile.TypeKind;
+import java.util.List;
+import java.util.Set;
 
 import static eu.jameshamilton.classfile.matcher.InstructionMatchers.loadInstruction;
 import static eu.jameshamilton.classfile.matcher.InstructionMatchers.storeInstruction;
 
 public class RedundantStore implements Optimization {
-    @Override
-    public boolean apply(CodeBuilder builder, Window window) {
-        var typeKind = new Capture<TypeKind>();
-        var capture = new Capture<Integer>();
-        return window.matches(
+    private final ThreadLocal<Matchers> matchers = ThreadLocal.withInitial(Matchers::new);
+
+    private static final class Matchers {
+        final Capture<TypeKind> typeKind = new Capture<>();
+        final IntCapture capture = new IntCapture();
+        final List<Matcher<CodeElement>> pattern = List.of(
             loadInstruction(typeKind, capture),
             storeInstruction(typeKind, capture)
         );
+
+        Matchers clear() {
+            typeKind.clear();
+            capture.clear();
+            return this;
+        }
+    }
+
+    @Override
+    public boolean apply(InstructionBuilder builder, Window window) {
+        return window.matches(matchers.get().clear().pattern);
+    }
+
+    @Override
+    public List<Set<Opcode>> pattern() {
+        return List.of(Opcodes.LOADS, Opcodes.STORES);
     }
 
     @Override
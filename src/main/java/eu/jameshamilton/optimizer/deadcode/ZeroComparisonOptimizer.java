@@ -1,19 +1,27 @@
 package eu.jameshamilton.optimizer.deadcode;
 
+import eu.jameshamilton.classfile.InstructionBuilder;
+import eu.jameshamilton.classfile.Opcodes;
 import eu.jameshamilton.classfile.matcher.Capture;
+import eu.jameshamilton.classfile.matcher.Matcher;
+import eu.jameshamilton.classfile.matcher.OpcodeSet;
 import eu.jameshamilton.classfile.matcher.Window;
 import eu.jameshamilton.optimizer.Optimization;
 
-import java.lang.classfile.CodeBuilder;
+import java.lang.classfile.CodeElement;
 import java.lang.classfile.Label;
+import java.lang.classfile.Opcode;
+import java.util.List;
+import java.util.Set;
 
+import static eu.jameshamilton.classfile.matcher.InstructionMatchers.branch;
 import static eu.jameshamilton.classfile.matcher.InstructionMatchers.iconst;
-import static eu.jameshamilton.classfile.matcher.InstructionMatchers.if_icmpeq;
-import static eu.jameshamilton.classfile.matcher.InstructionMatchers.if_icmpge;
-import static eu.jameshamilton.classfile.matcher.InstructionMatchers.if_icmpgt;
-import static eu.jameshamilton.classfile.matcher.InstructionMatchers.if_icmple;
-import static eu.jameshamilton.classfile.matcher.InstructionMatchers.if_icmplt;
-import static eu.jameshamilton.classfile.matcher.InstructionMatchers.if_icmpne;
+import static java.lang.classfile.Opcode.IF_ICMPEQ;
+import static java.lang.classfile.Opcode.IF_ICMPGE;
+import static java.lang.classfile.Opcode.IF_ICMPGT;
+import static java.lang.classfile.Opcode.IF_ICMPLE;
+import static java.lang.classfile.Opcode.IF_ICMPLT;
+import static java.lang.classfile.Opcode.IF_ICMPNE;
 
 /**
  * The ZeroComparisonOptimizer class provides an optimization for bytecode
@@ -34,49 +42,54 @@ import static eu.jameshamilton.classfile.matcher.InstructionMatchers.if_icmpne;
  * by simplifying the instruction flow.
  */
 public class ZeroComparisonOptimizer implements Optimization {
-    @Override
-    public boolean apply(CodeBuilder builder, Window window) {
-        var label = new Capture<Label>();
-        
-        // iconst_0, if_icmpeq -> ifeq
-        if (window.matches(iconst(0), if_icmpeq(label))) {
-            builder.ifeq(label.get());
-            return true;
-        }
-        
-        // iconst_0, if_icmpne -> ifne  
-        if (window.matches(iconst(0), if_icmpne(label))) {
-            builder.ifne(label.get());
-            return true;
-        }
-        
-        // iconst_0, if_icmplt -> iflt
-        if (window.matches(iconst(0), if_icmplt(label))) {
-            builder.iflt(label.get());
-            return true;
-        }
-        
-        // iconst_0, if_icmpgt -> ifgt
-        if (window.matches(iconst(0), if_icmpgt(label))) {
-            builder.ifgt(label.get());
-            return true;
-        }
-        
-        // iconst_0, if_icmple -> ifle
-        if (window.matches(iconst(0), if_icmple(label))) {
-            builder.ifle(label.get());
-            return true;
+    private static final Set<Opcode> COMPARISONS = Set.of(IF_ICMPEQ, IF_ICMPNE, IF_ICMPLT, IF_ICMPGT, IF_ICMPLE, IF_ICMPGE);
+    private static final OpcodeSet COMPARISON_SET = OpcodeSet.of(COMPARISONS);
+
+    private final ThreadLocal<Matchers> matchers = ThreadLocal.withInitial(Matchers::new);
+
+    private static final class Matchers {
+        final Capture<Label> label = new Capture<>();
+        final Capture<Opcode> comparison = new Capture<>();
+        // iconst_0, if_icmp<cond> -> if<cond>
+        final List<Matcher<CodeElement>> pattern = List.of(
+            iconst(0),
+            branch(COMPARISON_SET.and(comparison), label)
+        );
+
+        Matchers clear() {
+            label.clear();
+            comparison.clear();
+            return this;
         }
-        
-        // iconst_0, if_icmpge -> ifge
-        if (window.matches(iconst(0), if_icmpge(label))) {
-            builder.ifge(label.get());
+    }
+
+    @Override
+    public boolean apply(InstructionBuilder builder, Window window) {
+        var m = matchers.get().clear();
+        var label = m.label;
+        var comparison = m.comparison;
+
+        if (window.matches(m.pattern)) {
+            switch (comparison.get()) {
+                case IF_ICMPEQ -> builder.ifeq(label.get());
+                case IF_ICMPNE -> builder.ifne(label.get());
+                case IF_ICMPLT -> builder.iflt(label.get());
+                case IF_ICMPGT -> builder.ifgt(label.get());
+                case IF_ICMPLE -> builder.ifle(label.get());
+                case IF_ICMPGE -> builder.ifge(label.get());
+                default -> throw new IllegalStateException("Unexpected comparison: " + comparison.get());
+            }
             return true;
         }
-        
+
         return false;
     }
-    
+
+    @Override
+    public List<Set<Opcode>> pattern() {
+        return List.of(Opcodes.CONSTANTS, COMPARISONS);
+    }
+
     @Override
     public String getName() {
         return "zero comparison optimizer";
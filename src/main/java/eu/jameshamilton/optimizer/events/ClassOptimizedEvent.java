@@ -0,0 +1,34 @@
+package eu.jameshamilton.optimizer.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("eu.jameshamilton.optimizer.ClassOptimized")
+@Label("Class Optimized")
+@Category("Optimizer")
+@Description("A class run through the optimizations, whether or not any of them applied")
+@StackTrace(false)
+public class ClassOptimizedEvent extends Event {
+    @Label("Class")
+    public String className;
+
+    @Label("Original Size")
+    @DataAmount
+    public int originalSize;
+
+    @Label("Optimized Size")
+    @DataAmount
+    public int optimizedSize;
+
+    @Label("Rewrites")
+    public int rewrites;
+
+    @Label("Rules Fired")
+    @Description("How often each optimization applied, by name")
+    public String rulesFired;
+}
@@ -0,0 +1,27 @@
+package eu.jameshamilton.optimizer.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("eu.jameshamilton.optimizer.ClassRead")
+@Label("Class Read")
+@Category("Optimizer")
+@Description("A class read and inflated from the input jar")
+@StackTrace(false)
+public class ClassReadEvent extends Event {
+    @Label("Class")
+    public String className;
+
+    @Label("Compressed Size")
+    @DataAmount
+    public long compressedSize;
+
+    @Label("Size")
+    @DataAmount
+    public long size;
+}
@@ -0,0 +1,26 @@
+package eu.jameshamilton.optimizer.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("eu.jameshamilton.optimizer.FrameGeneration")
+@Label("Frame Generation")
+@Category("Optimizer")
+@Description("Building a class with its stack map frames recomputed, which needs the class hierarchy")
+@StackTrace(false)
+public class FrameGenerationEvent extends Event {
+    @Label("Class")
+    public String className;
+
+    @Label("Methods")
+    @Description("Methods whose rewrites changed the types the verifier sees")
+    public int methods;
+
+    @Label("Succeeded")
+    @Description("False if the hierarchy couldn't be resolved and the original code was kept")
+    public boolean succeeded;
+}
@@ -0,0 +1,29 @@
+package eu.jameshamilton.optimizer.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("eu.jameshamilton.optimizer.JarWrite")
+@Label("Jar Write")
+@Category("Optimizer")
+@Description("Writing the output jar, which overlaps with optimizing its classes")
+@StackTrace(false)
+public class JarWriteEvent extends Event {
+    @Label("Path")
+    public String path;
+
+    @Label("Classes")
+    public int classes;
+
+    @Label("Resources")
+    public int resources;
+
+    @Label("Size")
+    @DataAmount
+    public long size;
+}
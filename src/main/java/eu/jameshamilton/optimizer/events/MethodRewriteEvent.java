@@ -0,0 +1,33 @@
+package eu.jameshamilton.optimizer.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("eu.jameshamilton.optimizer.MethodRewrite")
+@Label("Method Rewrite")
+@Category("Optimizer")
+@Description("A method body that at least one optimization rewrote")
+@StackTrace(false)
+public class MethodRewriteEvent extends Event {
+    @Label("Class")
+    public String className;
+
+    @Label("Method")
+    public String methodName;
+
+    @Label("Descriptor")
+    public String methodDescriptor;
+
+    @Label("Rewrites")
+    public int rewrites;
+
+    @Label("Elements Before")
+    public int elementsBefore;
+
+    @Label("Elements After")
+    public int elementsAfter;
+}
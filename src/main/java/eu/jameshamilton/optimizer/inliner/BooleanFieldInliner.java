@@ -1,36 +1,65 @@
 package eu.jameshamilton.optimizer.inliner;
 
-import eu.jameshamilton.classfile.matcher.Capture;
+import eu.jameshamilton.classfile.InstructionBuilder;
 import eu.jameshamilton.classfile.matcher.Matcher;
+import eu.jameshamilton.classfile.matcher.MemberRefMatcher;
 import eu.jameshamilton.classfile.matcher.Window;
 import eu.jameshamilton.optimizer.Optimization;
 
-import java.lang.classfile.CodeBuilder;
+import java.lang.classfile.CodeElement;
+import java.lang.classfile.Opcode;
+import java.lang.classfile.constantpool.ConstantPool;
+import java.lang.classfile.instruction.FieldInstruction;
 import java.lang.constant.ClassDesc;
 import java.lang.constant.MethodTypeDesc;
+import java.util.List;
+import java.util.Set;
 
 import static eu.jameshamilton.classfile.matcher.InstructionMatchers.getstatic;
 import static eu.jameshamilton.classfile.matcher.InstructionMatchers.invokevirtual;
 
 public class BooleanFieldInliner implements Optimization {
-    private static final Matcher<ClassDesc> javaLangBoolean = e -> e.equals(ClassDesc.of("java.lang.Boolean"));
-    private static final Matcher<String> trueOrFalseField = e -> e.equals("TRUE") || e.equals("FALSE");
-    private static final Matcher<String> booleanValueMethod = e -> e.equals("booleanValue");
-    private static final Matcher<MethodTypeDesc> booleanValueMethodTypeDesc = e -> e.equals(MethodTypeDesc.ofDescriptor("()Z"));
+    private static final ClassDesc javaLangBoolean = ClassDesc.of("java.lang.Boolean");
+
+    private final ThreadLocal<Matchers> matchers = ThreadLocal.withInitial(Matchers::new);
+
+    private static final class Matchers {
+        final MemberRefMatcher trueField = MemberRefMatcher.field(javaLangBoolean, "TRUE", javaLangBoolean);
+        final MemberRefMatcher falseField = MemberRefMatcher.field(javaLangBoolean, "FALSE", javaLangBoolean);
+        final MemberRefMatcher booleanValue = MemberRefMatcher.method(javaLangBoolean, "booleanValue", MethodTypeDesc.ofDescriptor("()Z"));
+        final List<Matcher<CodeElement>> pattern = List.of(
+            getstatic(trueField.or(falseField)),
+            invokevirtual(booleanValue)
+        );
+
+        boolean resolve(ConstantPool constantPool) {
+            // Resolve every reference, so none keeps the index from a previous class
+            boolean hasTrue = trueField.resolve(constantPool);
+            boolean hasFalse = falseField.resolve(constantPool);
+            return booleanValue.resolve(constantPool) && (hasTrue || hasFalse);
+        }
+    }
 
     @Override
-    public boolean apply(CodeBuilder codeBuilder, Window window) {
-        var fieldName = new Capture<String>();
-        if (window.matches(
-            getstatic(javaLangBoolean, trueOrFalseField.and(fieldName), javaLangBoolean),
-            invokevirtual(javaLangBoolean, booleanValueMethod, booleanValueMethodTypeDesc)
-        )) {
-            codeBuilder.loadConstant(fieldName.matches("TRUE") ? 1 : 0);
+    public boolean prepare(ConstantPool constantPool) {
+        return matchers.get().resolve(constantPool);
+    }
+
+    @Override
+    public boolean apply(InstructionBuilder codeBuilder, Window window) {
+        var m = matchers.get();
+        if (window.matches(m.pattern) && window.get(0) instanceof FieldInstruction field) {
+            codeBuilder.loadConstant(m.trueField.matches(field.field()) ? 1 : 0);
         }
 
         return window.getMatchedCount() > 0;
     }
 
+    @Override
+    public List<Set<Opcode>> pattern() {
+        return List.of(Set.of(Opcode.GETSTATIC), Set.of(Opcode.INVOKEVIRTUAL));
+    }
+
     @Override
     public String getName() {
         return "boolean field inliner";
@@ -1,32 +1,51 @@
 package eu.jameshamilton.optimizer.normalize;
 
-import eu.jameshamilton.classfile.matcher.Capture;
+import eu.jameshamilton.classfile.InstructionBuilder;
+import eu.jameshamilton.classfile.Opcodes;
+import eu.jameshamilton.classfile.matcher.IntCapture;
+import eu.jameshamilton.classfile.matcher.Matcher;
 import eu.jameshamilton.classfile.matcher.Window;
 import eu.jameshamilton.optimizer.Optimization;
 
-import java.lang.classfile.CodeBuilder;
+import java.lang.classfile.CodeElement;
+import java.lang.classfile.Opcode;
+import java.util.List;
+import java.util.Set;
 
 import static eu.jameshamilton.classfile.matcher.Any.any;
-import static eu.jameshamilton.classfile.matcher.InstructionMatchers.loadConstant;
+import static eu.jameshamilton.classfile.matcher.InstructionMatchers.loadConstantInteger;
 import static eu.jameshamilton.classfile.matcher.InstructionMatchers.iadd;
 import static eu.jameshamilton.classfile.matcher.InstructionMatchers.instruction;
 import static eu.jameshamilton.classfile.matcher.InstructionMatchers.isub;
 
 public class AddSubConstant implements Optimization {
-    @Override
-    public boolean apply(CodeBuilder builder, Window window) {
-        var a = new Capture<Integer>();
-        var b = new Capture<Integer>();
-        if (window.matches(
-            loadConstant(a),
+    private final ThreadLocal<Matchers> matchers = ThreadLocal.withInitial(Matchers::new);
+
+    private static final class Matchers {
+        final IntCapture a = new IntCapture();
+        final IntCapture b = new IntCapture();
+        final List<Matcher<CodeElement>> pattern = List.of(
+            loadConstantInteger(a),
             instruction(any()),
-            loadConstant(b),
+            loadConstantInteger(b),
             iadd(),
             isub()
-        )) {
+        );
+
+        Matchers clear() {
+            a.clear();
+            b.clear();
+            return this;
+        }
+    }
+
+    @Override
+    public boolean apply(InstructionBuilder builder, Window window) {
+        var m = matchers.get().clear();
+        if (window.matches(m.pattern)) {
             builder
-                .loadConstant(a.get())
-                .loadConstant(b.get())
+                .loadConstant(m.a.get())
+                .loadConstant(m.b.get())
                 .isub()
                 .with(window.get(1))
                 .isub();
@@ -36,6 +55,11 @@ public class AddSubConstant implements Optimization {
         return false;
     }
 
+    @Override
+    public List<Set<Opcode>> pattern() {
+        return List.of(Opcodes.CONSTANTS, Opcodes.ALL, Opcodes.CONSTANTS, Set.of(Opcode.IADD), Set.of(Opcode.ISUB));
+    }
+
     @Override
     public String getName() {
         return "a - (y+b) => (a-b) - y";
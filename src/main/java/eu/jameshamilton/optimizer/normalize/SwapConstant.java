@@ -1,25 +1,34 @@
 package eu.jameshamilton.optimizer.normalize;
 
+import eu.jameshamilton.classfile.InstructionBuilder;
+import eu.jameshamilton.classfile.Opcodes;
+import eu.jameshamilton.classfile.matcher.Matcher;
 import eu.jameshamilton.classfile.matcher.Window;
 import eu.jameshamilton.optimizer.Optimization;
 
-import java.lang.classfile.CodeBuilder;
+import java.lang.classfile.CodeElement;
+import java.lang.classfile.Opcode;
+import java.util.List;
+import java.util.Set;
 
 import static eu.jameshamilton.classfile.matcher.Any.any;
+import static eu.jameshamilton.classfile.matcher.Any.anyInt;
 import static eu.jameshamilton.classfile.matcher.InstructionMatchers.loadConstant;
 import static eu.jameshamilton.classfile.matcher.InstructionMatchers.iadd;
 import static eu.jameshamilton.classfile.matcher.InstructionMatchers.imul;
 import static eu.jameshamilton.classfile.matcher.InstructionMatchers.loadInstruction;
 
 public class SwapConstant implements Optimization {
+    private static final List<Matcher<CodeElement>> PATTERN = List.of(
+        loadConstant(any()),
+        loadInstruction(any(), anyInt()),
+        iadd().or(imul())
+    );
+
     @Override
-    public boolean apply(CodeBuilder builder, Window window) {
+    public boolean apply(InstructionBuilder builder, Window window) {
         // normalize, so we can match other constant optimizations
-        if (window.matches(
-            loadConstant(any()),
-            loadInstruction(any(), any()),
-            iadd().or(imul())
-        )) {
+        if (window.matches(PATTERN)) {
             builder.with(window.get(1))
                 .with(window.get(0))
                 .with(window.get(2));
@@ -29,6 +38,11 @@ public class SwapConstant implements Optimization {
         return false;
     }
 
+    @Override
+    public List<Set<Opcode>> pattern() {
+        return List.of(Opcodes.CONSTANTS, Opcodes.LOADS, Set.of(Opcode.IADD, Opcode.IMUL));
+    }
+
     @Override
     public String getName() {
         return "normalize constant + imul/iadd";
@@ -0,0 +1,43 @@
+package eu.jameshamilton.optimizer.rules;
+
+import java.util.List;
+
+/**
+ * A parsed peephole rule: the instructions it matches, an optional guard over the captured
+ * operands, and the instructions the match is replaced with.
+ */
+record Rule(String source, int line, String name, List<Step> pattern, Expression guard, List<Step> replacement) {
+
+    /**
+     * An instruction in a pattern or replacement, such as {@code iload($x)}, or a reference
+     * {@code #n} to the n-th matched element.
+     */
+    record Step(String mnemonic, List<Expression> operands) {
+        static Step reference(int index) {
+            return new Step("#", List.of(new Expression.Literal(index, false)));
+        }
+
+        boolean isReference() {
+            return mnemonic.equals("#");
+        }
+    }
+
+    sealed interface Expression {
+        record Literal(long value, boolean isLong) implements Expression { }
+
+        record Capture(String name) implements Expression { }
+
+        record Wildcard() implements Expression { }
+
+        record Negate(Expression operand) implements Expression { }
+
+        /**
+         * Arithmetic ({@code + - *}), comparison ({@code == != < <= > >=}) or {@code &&}.
+         */
+        record Binary(String operator, Expression left, Expression right) implements Expression { }
+    }
+
+    String location() {
+        return source + ":" + line;
+    }
+}
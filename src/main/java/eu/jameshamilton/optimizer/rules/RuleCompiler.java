@@ -0,0 +1,534 @@
+package eu.jameshamilton.optimizer.rules;
+
+import eu.jameshamilton.classfile.InstructionBuilder;
+import eu.jameshamilton.classfile.Opcodes;
+import eu.jameshamilton.classfile.matcher.Window;
+import eu.jameshamilton.optimizer.Optimization;
+import eu.jameshamilton.optimizer.rules.Rule.Expression;
+import eu.jameshamilton.optimizer.rules.Rule.Step;
+
+import java.lang.classfile.ClassFile;
+import java.lang.classfile.ClassHierarchyResolver;
+import java.lang.classfile.CodeBuilder;
+import java.lang.classfile.CodeElement;
+import java.lang.classfile.Instruction;
+import java.lang.classfile.Label;
+import java.lang.classfile.Opcode;
+import java.lang.classfile.TypeKind;
+import java.lang.classfile.instruction.ConstantInstruction;
+import java.lang.classfile.instruction.IncrementInstruction;
+import java.lang.classfile.instruction.LoadInstruction;
+import java.lang.classfile.instruction.OperatorInstruction;
+import java.lang.classfile.instruction.StoreInstruction;
+import java.lang.constant.ClassDesc;
+import java.lang.constant.ConstantDesc;
+import java.lang.constant.MethodTypeDesc;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static java.lang.classfile.ClassFile.ACC_FINAL;
+import static java.lang.classfile.ClassFile.ACC_PRIVATE;
+import static java.lang.classfile.ClassFile.ACC_PUBLIC;
+import static java.lang.classfile.ClassFile.ACC_SYNTHETIC;
+import static java.lang.constant.ConstantDescs.CD_List;
+import static java.lang.constant.ConstantDescs.CD_Object;
+import static java.lang.constant.ConstantDescs.CD_String;
+import static java.lang.constant.ConstantDescs.CD_boolean;
+import static java.lang.constant.ConstantDescs.CD_int;
+import static java.lang.constant.ConstantDescs.CD_long;
+import static java.lang.constant.ConstantDescs.CD_void;
+import static java.lang.constant.ConstantDescs.INIT_NAME;
+import static java.lang.constant.ConstantDescs.MTD_void;
+
+/**
+ * Compiles a {@link Rule} into a hidden class implementing {@link Optimization}.
+ * <p>
+ * The generated {@code apply} method tests the window's elements one after the other with
+ * {@code instanceof} checks and direct calls, keeping captures in local variables, so a rule
+ * is straight-line code without matcher objects and is stateless.
+ */
+class RuleCompiler {
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+    private static final ClassDesc CD_RULE = ClassDesc.of(RuleCompiler.class.getPackageName() + ".CompiledRule");
+    private static final ClassDesc CD_Optimization = desc(Optimization.class);
+    private static final ClassDesc CD_InstructionBuilder = desc(InstructionBuilder.class);
+    private static final ClassDesc CD_Window = desc(Window.class);
+    private static final ClassDesc CD_CodeElement = desc(CodeElement.class);
+    private static final ClassDesc CD_Instruction = desc(Instruction.class);
+    private static final ClassDesc CD_Opcode = desc(Opcode.class);
+    private static final ClassDesc CD_TypeKind = desc(TypeKind.class);
+    private static final ClassDesc CD_ConstantInstruction = desc(ConstantInstruction.class);
+    private static final ClassDesc CD_IncrementInstruction = desc(IncrementInstruction.class);
+    private static final ClassDesc CD_LoadInstruction = desc(LoadInstruction.class);
+    private static final ClassDesc CD_StoreInstruction = desc(StoreInstruction.class);
+    private static final ClassDesc CD_ConstantDesc = desc(ConstantDesc.class);
+    private static final ClassDesc CD_Integer = desc(Integer.class);
+    private static final ClassDesc CD_Long = desc(Long.class);
+
+    private static final Map<Character, TypeKind> LOCAL_TYPES = Map.of(
+        'i', TypeKind.INT, 'l', TypeKind.LONG, 'f', TypeKind.FLOAT, 'd', TypeKind.DOUBLE, 'a', TypeKind.REFERENCE
+    );
+
+    /**
+     * The instruction forms rules can match.
+     */
+    private enum Shape {
+        PLAIN, LOAD, STORE, IINC, INT_CONSTANT, LONG_CONSTANT, BIPUSH, SIPUSH
+    }
+
+    private final Rule rule;
+    private final Map<String, Integer> captureSlots = new HashMap<>();
+    private final Map<String, TypeKind> captureTypes = new HashMap<>();
+
+    private RuleCompiler(Rule rule) {
+        this.rule = rule;
+    }
+
+    static Optimization compile(Rule rule) {
+        var compiler = new RuleCompiler(rule);
+        var pattern = compiler.pattern();
+        var bytes = compiler.generate();
+        try {
+            var hidden = LOOKUP.defineHiddenClass(bytes, true);
+            var constructor = hidden.findConstructor(hidden.lookupClass(), MethodType.methodType(void.class, String.class, List.class));
+            return (Optimization) constructor.invoke(rule.name(), pattern);
+        } catch (Throwable e) {
+            throw new IllegalStateException(rule.location() + ": could not load compiled rule", e);
+        }
+    }
+
+    private List<Set<Opcode>> pattern() {
+        return rule.pattern().stream().map(step -> switch (shape(step)) {
+            case PLAIN -> Set.of(opcode(step));
+            case LOAD -> localOpcodes(Opcode.Kind.LOAD, step);
+            case STORE -> localOpcodes(Opcode.Kind.STORE, step);
+            case IINC -> Set.of(Opcode.IINC, Opcode.IINC_W);
+            case INT_CONSTANT, LONG_CONSTANT -> Opcodes.CONSTANTS;
+            case BIPUSH -> Set.of(Opcode.BIPUSH);
+            case SIPUSH -> Set.of(Opcode.SIPUSH);
+        }).toList();
+    }
+
+    private static Set<Opcode> localOpcodes(Opcode.Kind kind, Step step) {
+        var prefix = step.mnemonic().toUpperCase();
+        return Arrays.stream(Opcode.values())
+            .filter(opcode -> opcode.kind() == kind && opcode.name().startsWith(prefix))
+            .collect(Collectors.toUnmodifiableSet());
+    }
+
+    private byte[] generate() {
+        var classFile = ClassFile.of(ClassFile.ClassHierarchyResolverOption.of(
+            ClassHierarchyResolver.ofClassLoading(RuleCompiler.class.getClassLoader())
+        ));
+        return classFile.build(CD_RULE, clazz -> clazz
+            .withVersion(ClassFile.latestMajorVersion(), 0)
+            .withFlags(ACC_PUBLIC | ACC_FINAL | ACC_SYNTHETIC)
+            .withInterfaceSymbols(CD_Optimization)
+            .withField("name", CD_String, ACC_PRIVATE | ACC_FINAL)
+            .withField("pattern", CD_List, ACC_PRIVATE | ACC_FINAL)
+            .withMethodBody(INIT_NAME, MethodTypeDesc.of(CD_void, CD_String, CD_List), ACC_PUBLIC, code -> code
+                .aload(0)
+                .invokespecial(CD_Object, INIT_NAME, MTD_void)
+                .aload(0)
+                .aload(1)
+                .putfield(CD_RULE, "name", CD_String)
+                .aload(0)
+                .aload(2)
+                .putfield(CD_RULE, "pattern", CD_List)
+                .return_())
+            .withMethodBody("getName", MethodTypeDesc.of(CD_String), ACC_PUBLIC, code -> code
+                .aload(0)
+                .getfield(CD_RULE, "name", CD_String)
+                .areturn())
+            .withMethodBody("pattern", MethodTypeDesc.of(CD_List), ACC_PUBLIC, code -> code
+                .aload(0)
+                .getfield(CD_RULE, "pattern", CD_List)
+                .areturn())
+            .withMethodBody("apply", MethodTypeDesc.of(CD_boolean, CD_InstructionBuilder, CD_Window), ACC_PUBLIC, this::apply)
+        );
+    }
+
+    // apply(InstructionBuilder builder, Window window): the builder is in slot 1, the window in slot 2.
+    private void apply(CodeBuilder code) {
+        var fail = code.newLabel();
+
+        var steps = rule.pattern();
+        for (int i = 0; i < steps.size(); i++) {
+            match(code, steps.get(i), i, fail);
+        }
+
+        if (rule.guard() != null) {
+            condition(code, rule.guard(), fail);
+        }
+
+        code.aload(2)
+            .loadConstant(steps.size())
+            .invokevirtual(CD_Window, "setMatchedCount", MethodTypeDesc.of(CD_void, CD_int));
+
+        code.aload(1);
+        for (var step : rule.replacement()) {
+            emit(code, step);
+        }
+        code.pop()
+            .iconst_1()
+            .ireturn();
+
+        code.labelBinding(fail);
+        code.iconst_0()
+            .ireturn();
+    }
+
+    private void match(CodeBuilder code, Step step, int index, Label fail) {
+        var shape = shape(step);
+        int element = code.allocateLocal(TypeKind.REFERENCE);
+        code.aload(2)
+            .loadConstant(index)
+            .invokevirtual(CD_Window, "get", MethodTypeDesc.of(CD_CodeElement, CD_int))
+            .astore(element);
+
+        switch (shape) {
+            case PLAIN -> {
+                isInstance(code, element, CD_Instruction, fail);
+                checkOpcode(code, element, CD_Instruction, opcode(step), fail);
+            }
+            case LOAD, STORE -> {
+                var type = shape == Shape.LOAD ? CD_LoadInstruction : CD_StoreInstruction;
+                isInstance(code, element, type, fail);
+                code.aload(element)
+                    .checkcast(type)
+                    .invokeinterface(type, "typeKind", MethodTypeDesc.of(CD_TypeKind))
+                    .getstatic(CD_TypeKind, localType(step).name(), CD_TypeKind)
+                    .if_acmpne(fail);
+                code.aload(element)
+                    .checkcast(type)
+                    .invokeinterface(type, "slot", MethodTypeDesc.of(CD_int));
+                operand(code, step.operands().get(0), TypeKind.INT, fail);
+            }
+            case IINC -> {
+                isInstance(code, element, CD_IncrementInstruction, fail);
+                code.aload(element)
+                    .checkcast(CD_IncrementInstruction)
+                    .invokeinterface(CD_IncrementInstruction, "slot", MethodTypeDesc.of(CD_int));
+                operand(code, step.operands().get(0), TypeKind.INT, fail);
+                code.aload(element)
+                    .checkcast(CD_IncrementInstruction)
+                    .invokeinterface(CD_IncrementInstruction, "constant", MethodTypeDesc.of(CD_int));
+                operand(code, step.operands().get(1), TypeKind.INT, fail);
+            }
+            case INT_CONSTANT, LONG_CONSTANT, BIPUSH, SIPUSH -> {
+                isInstance(code, element, CD_ConstantInstruction, fail);
+                if (shape == Shape.BIPUSH || shape == Shape.SIPUSH) {
+                    checkOpcode(code, element, CD_ConstantInstruction, opcode(step), fail);
+                }
+
+                var isLong = shape == Shape.LONG_CONSTANT;
+                var box = isLong ? CD_Long : CD_Integer;
+                int value = code.allocateLocal(TypeKind.REFERENCE);
+                code.aload(element)
+                    .checkcast(CD_ConstantInstruction)
+                    .invokeinterface(CD_ConstantInstruction, "constantValue", MethodTypeDesc.of(CD_ConstantDesc))
+                    .astore(value);
+                isInstance(code, value, box, fail);
+                code.aload(value)
+                    .checkcast(box);
+                if (isLong) {
+                    code.invokevirtual(CD_Long, "longValue", MethodTypeDesc.of(CD_long));
+                } else {
+                    code.invokevirtual(CD_Integer, "intValue", MethodTypeDesc.of(CD_int));
+                }
+                operand(code, step.operands().get(0), isLong ? TypeKind.LONG : TypeKind.INT, fail);
+            }
+        }
+    }
+
+    private static void isInstance(CodeBuilder code, int local, ClassDesc type, Label fail) {
+        code.aload(local)
+            .instanceOf(type)
+            .ifeq(fail);
+    }
+
+    private static void checkOpcode(CodeBuilder code, int local, ClassDesc type, Opcode opcode, Label fail) {
+        code.aload(local)
+            .checkcast(type)
+            .invokeinterface(type, "opcode", MethodTypeDesc.of(CD_Opcode))
+            .getstatic(CD_Opcode, opcode.name(), CD_Opcode)
+            .if_acmpne(fail);
+    }
+
+    /**
+     * Matches the operand on top of the stack: a wildcard accepts it, the first occurrence
+     * of a capture stores it, and anything else has to evaluate to the same value.
+     */
+    private void operand(CodeBuilder code, Expression expression, TypeKind type, Label fail) {
+        switch (expression) {
+            case Expression.Wildcard() -> {
+                if (type == TypeKind.LONG) {
+                    code.pop2();
+                } else {
+                    code.pop();
+                }
+            }
+            case Expression.Capture(var name) when !captureSlots.containsKey(name) -> {
+                int slot = code.allocateLocal(type);
+                code.storeLocal(type, slot);
+                captureSlots.put(name, slot);
+                captureTypes.put(name, type);
+            }
+            default -> {
+                if (type(expression) != type) {
+                    throw error(expression + " is not of type " + type.name().toLowerCase());
+                }
+                value(code, expression, type);
+                if (type == TypeKind.LONG) {
+                    code.lcmp().ifne(fail);
+                } else {
+                    code.if_icmpne(fail);
+                }
+            }
+        }
+    }
+
+    private void condition(CodeBuilder code, Expression expression, Label fail) {
+        if (!(expression instanceof Expression.Binary(var operator, var left, var right)) ||
+            type(expression) != TypeKind.BOOLEAN) {
+            throw error("the guard has to be a comparison");
+        }
+
+        if (operator.equals("&&")) {
+            condition(code, left, fail);
+            condition(code, right, fail);
+            return;
+        }
+
+        var type = type(left) == TypeKind.LONG || type(right) == TypeKind.LONG ? TypeKind.LONG : TypeKind.INT;
+        value(code, left, type);
+        value(code, right, type);
+        if (type == TypeKind.LONG) {
+            code.lcmp();
+            code.branch(switch (operator) {
+                case "==" -> Opcode.IFNE;
+                case "!=" -> Opcode.IFEQ;
+                case "<" -> Opcode.IFGE;
+                case "<=" -> Opcode.IFGT;
+                case ">" -> Opcode.IFLE;
+                default -> Opcode.IFLT;
+            }, fail);
+        } else {
+            code.branch(switch (operator) {
+                case "==" -> Opcode.IF_ICMPNE;
+                case "!=" -> Opcode.IF_ICMPEQ;
+                case "<" -> Opcode.IF_ICMPGE;
+                case "<=" -> Opcode.IF_ICMPGT;
+                case ">" -> Opcode.IF_ICMPLE;
+                default -> Opcode.IF_ICMPLT;
+            }, fail);
+        }
+    }
+
+    private void value(CodeBuilder code, Expression expression, TypeKind type) {
+        var actual = type(expression);
+        if (actual == TypeKind.LONG && type == TypeKind.INT || actual == TypeKind.BOOLEAN) {
+            throw error(expression + " is not of type " + type.name().toLowerCase());
+        }
+
+        switch (expression) {
+            case Expression.Literal(var value, var _) -> {
+                if (type == TypeKind.LONG) {
+                    code.loadConstant(value);
+                } else {
+                    code.loadConstant((int) value);
+                }
+                return;
+            }
+            case Expression.Capture(var name) -> code.loadLocal(actual, captureSlots.get(name));
+            case Expression.Negate(var operand) -> {
+                value(code, operand, actual);
+                if (actual == TypeKind.LONG) {
+                    code.lneg();
+                } else {
+                    code.ineg();
+                }
+            }
+            case Expression.Binary(var operator, var left, var right) -> {
+                value(code, left, actual);
+                value(code, right, actual);
+                boolean isLong = actual == TypeKind.LONG;
+                switch (operator) {
+                    case "+" -> code.with(OperatorInstruction.of(isLong ? Opcode.LADD : Opcode.IADD));
+                    case "-" -> code.with(OperatorInstruction.of(isLong ? Opcode.LSUB : Opcode.ISUB));
+                    default -> code.with(OperatorInstruction.of(isLong ? Opcode.LMUL : Opcode.IMUL));
+                }
+            }
+            case Expression.Wildcard() -> throw error("'_' can only be used as a pattern operand");
+        }
+
+        if (actual == TypeKind.INT && type == TypeKind.LONG) {
+            code.i2l();
+        }
+    }
+
+    private TypeKind type(Expression expression) {
+        return switch (expression) {
+            case Expression.Literal(var _, var isLong) -> isLong ? TypeKind.LONG : TypeKind.INT;
+            case Expression.Capture(var name) -> {
+                var type = captureTypes.get(name);
+                if (type == null) {
+                    throw error("$" + name + " is used before it is captured");
+                }
+                yield type;
+            }
+            case Expression.Wildcard() -> throw error("'_' can only be used as a pattern operand");
+            case Expression.Negate(var operand) -> type(operand);
+            case Expression.Binary(var operator, var left, var right) -> switch (operator) {
+                case "+", "-", "*" -> type(left) == TypeKind.LONG || type(right) == TypeKind.LONG ? TypeKind.LONG : TypeKind.INT;
+                case "&&" -> {
+                    if (type(left) != TypeKind.BOOLEAN || type(right) != TypeKind.BOOLEAN) {
+                        throw error("'&&' needs comparisons on both sides");
+                    }
+                    yield TypeKind.BOOLEAN;
+                }
+                default -> {
+                    if (type(left) == TypeKind.BOOLEAN || type(right) == TypeKind.BOOLEAN) {
+                        throw error("cannot compare the result of a comparison");
+                    }
+                    yield TypeKind.BOOLEAN;
+                }
+            };
+        };
+    }
+
+    // Emits one replacement step; the builder is on top of the stack before and after.
+    private void emit(CodeBuilder code, Step step) {
+        var operands = step.operands();
+        if (step.isReference()) {
+            var index = ((Expression.Literal) operands.get(0)).value();
+            if (index >= rule.pattern().size()) {
+                throw error("#" + index + " refers past the end of the pattern");
+            }
+            code.aload(2)
+                .loadConstant((int) index)
+                .invokevirtual(CD_Window, "get", MethodTypeDesc.of(CD_CodeElement, CD_int))
+                .invokevirtual(CD_InstructionBuilder, "with", MethodTypeDesc.of(CD_InstructionBuilder, CD_CodeElement));
+            return;
+        }
+
+        var mnemonic = step.mnemonic();
+        switch (mnemonic) {
+            case "iconst" -> {
+                expectOperands(step, 1);
+                value(code, operands.get(0), TypeKind.INT);
+                code.invokevirtual(CD_InstructionBuilder, "loadConstant", MethodTypeDesc.of(CD_InstructionBuilder, CD_int));
+            }
+            case "lconst" -> {
+                expectOperands(step, 1);
+                value(code, operands.get(0), TypeKind.LONG);
+                code.invokevirtual(CD_InstructionBuilder, "loadConstant", MethodTypeDesc.of(CD_InstructionBuilder, CD_long));
+            }
+            default -> {
+                if (isLocal(mnemonic, "load") || isLocal(mnemonic, "store")) {
+                    expectOperands(step, 1);
+                    code.getstatic(CD_TypeKind, localType(step).name(), CD_TypeKind);
+                    value(code, operands.get(0), TypeKind.INT);
+                    var method = isLocal(mnemonic, "load") ? "loadLocal" : "storeLocal";
+                    code.invokevirtual(CD_InstructionBuilder, method, MethodTypeDesc.of(CD_InstructionBuilder, CD_TypeKind, CD_int));
+                    return;
+                }
+
+                // Anything else is emitted through the InstructionBuilder method of the same name
+                var method = builderMethod(step);
+                for (var operand : operands) {
+                    value(code, operand, TypeKind.INT);
+                }
+                var parameters = new ClassDesc[method.getParameterCount()];
+                Arrays.fill(parameters, CD_int);
+                code.invokevirtual(CD_InstructionBuilder, method.getName(), MethodTypeDesc.of(CD_InstructionBuilder, parameters));
+            }
+        }
+    }
+
+    private Method builderMethod(Step step) {
+        return Arrays.stream(InstructionBuilder.class.getMethods())
+            .filter(method -> method.getName().equals(step.mnemonic()) &&
+                Modifier.isPublic(method.getModifiers()) &&
+                method.getReturnType() == InstructionBuilder.class &&
+                method.getParameterCount() == step.operands().size() &&
+                Arrays.stream(method.getParameterTypes()).allMatch(type -> type == int.class))
+            .findFirst()
+            .orElseThrow(() -> error("cannot emit '" + step.mnemonic() + "' with " + step.operands().size() + " int operand(s)"));
+    }
+
+    private Shape shape(Step step) {
+        if (step.isReference()) {
+            throw error("#n can only be used in a replacement");
+        }
+
+        var mnemonic = step.mnemonic();
+        var shape = switch (mnemonic) {
+            case "iconst" -> Shape.INT_CONSTANT;
+            case "lconst" -> Shape.LONG_CONSTANT;
+            case "bipush" -> Shape.BIPUSH;
+            case "sipush" -> Shape.SIPUSH;
+            case "iinc" -> Shape.IINC;
+            default -> {
+                if (isLocal(mnemonic, "load")) {
+                    yield Shape.LOAD;
+                }
+                if (isLocal(mnemonic, "store")) {
+                    yield Shape.STORE;
+                }
+                if (opcode(step).sizeIfFixed() != 1) {
+                    throw error("'" + mnemonic + "' has operands that cannot be matched");
+                }
+                yield Shape.PLAIN;
+            }
+        };
+
+        int operands = switch (shape) {
+            case PLAIN -> 0;
+            case IINC -> 2;
+            default -> 1;
+        };
+        expectOperands(step, operands);
+        return shape;
+    }
+
+    private void expectOperands(Step step, int count) {
+        if (step.operands().size() != count) {
+            throw error("'" + step.mnemonic() + "' takes " + count + " operand(s)");
+        }
+    }
+
+    private static boolean isLocal(String mnemonic, String suffix) {
+        return mnemonic.length() == suffix.length() + 1 &&
+            mnemonic.endsWith(suffix) &&
+            LOCAL_TYPES.containsKey(mnemonic.charAt(0));
+    }
+
+    private static TypeKind localType(Step step) {
+        return LOCAL_TYPES.get(step.mnemonic().charAt(0));
+    }
+
+    private Opcode opcode(Step step) {
+        try {
+            return Opcode.valueOf(step.mnemonic().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw error("unknown instruction '" + step.mnemonic() + "'");
+        }
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(rule.location() + ": " + message);
+    }
+
+    private static ClassDesc desc(Class<?> clazz) {
+        return clazz.describeConstable().orElseThrow();
+    }
+}
@@ -0,0 +1,205 @@
+package eu.jameshamilton.optimizer.rules;
+
+import eu.jameshamilton.optimizer.rules.Rule.Expression;
+import eu.jameshamilton.optimizer.rules.Rule.Step;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Parses rule files. Each non-blank line that is not a {@code #} comment holds one rule:
+ * <pre>
+ * name: pattern [where guard] =&gt; [replacement]
+ * </pre>
+ * The pattern and replacement are comma separated instructions, see {@link Rules}.
+ */
+class RuleParser {
+    private static final Pattern TOKEN = Pattern.compile(
+        "\\s*(=>|&&|==|!=|<=|>=|[<>+\\-*(),_]|\\$[A-Za-z]\\w*|#\\d+|\\d+L?|[a-z][a-z0-9_]*)"
+    );
+
+    private final String source;
+    private final int line;
+    private final List<String> tokens;
+    private int position;
+
+    private RuleParser(String source, int line, List<String> tokens) {
+        this.source = source;
+        this.line = line;
+        this.tokens = tokens;
+    }
+
+    static List<Rule> parse(String source, String text) {
+        var rules = new ArrayList<Rule>();
+        var lines = text.split("\\R");
+        for (int i = 0; i < lines.length; i++) {
+            var line = lines[i].strip();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+
+            int colon = line.indexOf(':');
+            if (colon <= 0) {
+                throw new IllegalArgumentException(source + ":" + (i + 1) + ": expected 'name: pattern => replacement'");
+            }
+            var parser = new RuleParser(source, i + 1, tokenize(source, i + 1, line.substring(colon + 1)));
+            rules.add(parser.rule(line.substring(0, colon).strip()));
+        }
+        return rules;
+    }
+
+    private static List<String> tokenize(String source, int line, String text) {
+        var tokens = new ArrayList<String>();
+        Matcher matcher = TOKEN.matcher(text);
+        int end = 0;
+        while (end < text.length()) {
+            if (text.substring(end).isBlank()) {
+                break;
+            }
+            if (!matcher.find(end) || matcher.start() != end) {
+                throw new IllegalArgumentException(source + ":" + line + ": unexpected '" + text.substring(end).strip() + "'");
+            }
+            tokens.add(matcher.group(1));
+            end = matcher.end();
+        }
+        return tokens;
+    }
+
+    private Rule rule(String name) {
+        var pattern = steps();
+        Expression guard = null;
+        if (accept("where")) {
+            guard = expression();
+        }
+        expect("=>");
+        var replacement = peek() == null ? List.<Step>of() : steps();
+        if (peek() != null) {
+            throw error("unexpected '" + peek() + "'");
+        }
+        return new Rule(source, line, name, pattern, guard, replacement);
+    }
+
+    private List<Step> steps() {
+        var steps = new ArrayList<Step>();
+        do {
+            steps.add(step());
+        } while (accept(","));
+        return steps;
+    }
+
+    private Step step() {
+        var token = next();
+        if (token.startsWith("#")) {
+            return Step.reference(Integer.parseInt(token.substring(1)));
+        }
+        if (!Character.isLetter(token.charAt(0)) || token.equals("where")) {
+            throw error("expected an instruction but found '" + token + "'");
+        }
+
+        var operands = new ArrayList<Expression>();
+        if (accept("(")) {
+            do {
+                operands.add(expression());
+            } while (accept(","));
+            expect(")");
+        }
+        return new Step(token, operands);
+    }
+
+    private Expression expression() {
+        var left = comparison();
+        while (accept("&&")) {
+            left = new Expression.Binary("&&", left, comparison());
+        }
+        return left;
+    }
+
+    private Expression comparison() {
+        var left = sum();
+        var token = peek();
+        if (token != null && List.of("==", "!=", "<", "<=", ">", ">=").contains(token)) {
+            next();
+            return new Expression.Binary(token, left, sum());
+        }
+        return left;
+    }
+
+    private Expression sum() {
+        var left = product();
+        while ("+".equals(peek()) || "-".equals(peek())) {
+            left = new Expression.Binary(next(), left, product());
+        }
+        return left;
+    }
+
+    private Expression product() {
+        var left = unary();
+        while (accept("*")) {
+            left = new Expression.Binary("*", left, unary());
+        }
+        return left;
+    }
+
+    private Expression unary() {
+        if (accept("-")) {
+            var operand = unary();
+            if (operand instanceof Expression.Literal(long value, boolean isLong)) {
+                return new Expression.Literal(-value, isLong);
+            }
+            return new Expression.Negate(operand);
+        }
+        return primary();
+    }
+
+    private Expression primary() {
+        var token = next();
+        if (token.equals("(")) {
+            var expression = expression();
+            expect(")");
+            return expression;
+        }
+        if (token.equals("_")) {
+            return new Expression.Wildcard();
+        }
+        if (token.startsWith("$")) {
+            return new Expression.Capture(token.substring(1));
+        }
+        if (Character.isDigit(token.charAt(0))) {
+            boolean isLong = token.endsWith("L");
+            var value = Long.parseLong(isLong ? token.substring(0, token.length() - 1) : token);
+            return new Expression.Literal(value, isLong || value != (int) value);
+        }
+        throw error("expected an operand but found '" + token + "'");
+    }
+
+    private String peek() {
+        return position < tokens.size() ? tokens.get(position) : null;
+    }
+
+    private String next() {
+        if (position == tokens.size()) {
+            throw error("unexpected end of rule");
+        }
+        return tokens.get(position++);
+    }
+
+    private boolean accept(String token) {
+        if (token.equals(peek())) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(String token) {
+        if (!accept(token)) {
+            throw error("expected '" + token + "'" + (peek() == null ? "" : " but found '" + peek() + "'"));
+        }
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(source + ":" + line + ": " + message);
+    }
+}
@@ -0,0 +1,73 @@
+package eu.jameshamilton.optimizer.rules;
+
+import eu.jameshamilton.optimizer.Optimization;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Peephole optimizations written as rules instead of Java, compiled into hidden classes
+ * when they are loaded. A rule file has one rule per line:
+ * <pre>
+ * # comment
+ * name: pattern [where guard] =&gt; [replacement]
+ * </pre>
+ * The pattern is a comma separated list of instructions that have to appear in a row:
+ * <ul>
+ *     <li>instructions without operands by their mnemonic, such as {@code ineg} or {@code pop};</li>
+ *     <li>{@code iload(slot)}, {@code lload}, {@code fload}, {@code dload}, {@code aload} and the
+ *     corresponding stores, in any of their encodings;</li>
+ *     <li>{@code iinc(slot, amount)};</li>
+ *     <li>{@code iconst(value)} and {@code lconst(value)} for any instruction loading an int or a
+ *     long constant, and {@code bipush(value)} and {@code sipush(value)}.</li>
+ * </ul>
+ * Operands are {@code _} for any value, a {@code $capture} which takes the value where it first
+ * appears and has to be equal everywhere else, or an expression over earlier captures and
+ * literals with {@code + - *}. The guard combines comparisons with {@code &&}.
+ * <p>
+ * The replacement is a comma separated list of the same instructions with expressions as
+ * operands, {@code #n} to keep the n-th matched element, or any other {@link
+ * eu.jameshamilton.classfile.InstructionBuilder} method taking int operands. An empty
+ * replacement removes the match. Rules sharing a name are counted together in the statistics.
+ * <pre>
+ * double increment combiner: iinc($s, $a), iinc($s, $b) where $a + $b &gt;= -128 &amp;&amp; $a + $b &lt;= 127 =&gt; iinc($s, $a + $b)
+ * </pre>
+ */
+public final class Rules {
+    private static final String BUILTIN = "builtin.rules";
+
+    private Rules() {
+    }
+
+    /**
+     * The rules shipped with the optimizer.
+     */
+    public static List<Optimization> builtin() {
+        try (InputStream is = Rules.class.getResourceAsStream(BUILTIN)) {
+            if (is == null) {
+                throw new IllegalStateException("Missing " + BUILTIN);
+            }
+            return parse(BUILTIN, new String(is.readAllBytes(), StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static List<Optimization> load(Path path) throws IOException {
+        return parse(path.toString(), Files.readString(path));
+    }
+
+    /**
+     * Parses and compiles the rules in {@code text}, reporting errors against {@code source}.
+     */
+    public static List<Optimization> parse(String source, String text) {
+        return RuleParser.parse(source, text).stream()
+            .map(RuleCompiler::compile)
+            .toList();
+    }
+}
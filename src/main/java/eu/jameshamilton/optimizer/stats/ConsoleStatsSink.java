@@ -0,0 +1,74 @@
+package eu.jameshamilton.optimizer.stats;
+
+import eu.jameshamilton.optimizer.stats.StatsReport.RuleStats;
+
+import java.io.PrintStream;
+import java.util.Comparator;
+
+/**
+ * Prints a summary of the stats, and the profile if the run was profiled.
+ */
+public class ConsoleStatsSink implements StatsSink {
+    private final PrintStream out;
+
+    public ConsoleStatsSink(PrintStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void write(StatsReport report) {
+        out.printf("\nOptimizations (%d classes):\n", report.classCount());
+        out.println("-------------------");
+
+        for (var rule : report.rules()) {
+            out.printf("%-30s: %d%n", truncate(rule.name()), rule.hits());
+        }
+
+        if (report.cacheHits() > 0) {
+            out.printf("\nServed %d classes from the cache%n", report.cacheHits());
+        }
+
+        if (report.optimizedClassCount() > 0) {
+            out.printf("\nOptimized %d classes, reduced %d bytes (avg %.2f bytes/class)%n",
+                report.optimizedClassCount(), report.bytesReduced(), (double) report.bytesReduced() / report.optimizedClassCount());
+        }
+
+        if (report.profiled()) {
+            printProfile(report);
+        }
+    }
+
+    private void printProfile(StatsReport report) {
+        out.println("\nOptimization profile (sampled attempts, most expensive first):");
+        out.printf("%-30s %12s %8s %10s %8s %8s %8s%n", "", "attempts", "hits", "est. ms", "p50 ns", "p99 ns", "bytes");
+        var rules = report.rules().stream()
+            .sorted(Comparator.comparingDouble(RuleStats::estimatedNanos).reversed())
+            .toList();
+        for (var rule : rules) {
+            out.printf("%-30s %12d %8d %10.1f %8d %8d %8.0f%n",
+                truncate(rule.name()),
+                rule.attempts(),
+                rule.hits(),
+                rule.estimatedNanos() / 1e6,
+                rule.p50Nanos(),
+                rule.p99Nanos(),
+                rule.bytesSaved());
+        }
+
+        out.println("\nPhases:");
+        out.printf("%-30s %12s %10s %8s %8s %8s%n", "", "count", "total ms", "p50 us", "p99 us", "max us");
+        for (var phase : report.phases()) {
+            out.printf("%-30s %12d %10.1f %8.1f %8.1f %8.1f%n",
+                phase.name(),
+                phase.count(),
+                phase.totalNanos() / 1e6,
+                phase.p50Nanos() / 1e3,
+                phase.p99Nanos() / 1e3,
+                phase.maxNanos() / 1e3);
+        }
+    }
+
+    private static String truncate(String name) {
+        return name.substring(0, Math.min(30, name.length()));
+    }
+}
@@ -0,0 +1,94 @@
+package eu.jameshamilton.optimizer.stats;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+
+/**
+ * Appends the stats to a file as JSON objects, one per line: one for the run, and one for
+ * each optimization, phase and class. Every line has a {@code type} and the {@code run}'s
+ * start time, so that the runs in a file can be told apart.
+ */
+public class JsonLinesStatsSink implements StatsSink {
+    private final Path file;
+
+    public JsonLinesStatsSink(Path file) {
+        this.file = file;
+    }
+
+    @Override
+    public void write(StatsReport report) throws IOException {
+        var run = quote(report.start().toString());
+        try (var writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8, CREATE, APPEND)) {
+            line(writer, "{\"type\":\"run\",\"run\":" + run +
+                ",\"durationNanos\":" + report.durationNanos() +
+                ",\"profiled\":" + report.profiled() +
+                ",\"classes\":" + report.classCount() +
+                ",\"optimizedClasses\":" + report.optimizedClassCount() +
+                ",\"bytesReduced\":" + report.bytesReduced() +
+                ",\"cacheHits\":" + report.cacheHits() +
+                ",\"errors\":" + report.errorCount() + "}");
+
+            for (var rule : report.rules()) {
+                line(writer, "{\"type\":\"rule\",\"run\":" + run +
+                    ",\"name\":" + quote(rule.name()) +
+                    ",\"attempts\":" + rule.attempts() +
+                    ",\"hits\":" + rule.hits() +
+                    ",\"bytesSaved\":" + rule.bytesSaved() +
+                    ",\"estimatedNanos\":" + rule.estimatedNanos() +
+                    ",\"p50Nanos\":" + rule.p50Nanos() +
+                    ",\"p99Nanos\":" + rule.p99Nanos() + "}");
+            }
+
+            for (var phase : report.phases()) {
+                line(writer, "{\"type\":\"phase\",\"run\":" + run +
+                    ",\"name\":" + quote(phase.name()) +
+                    ",\"count\":" + phase.count() +
+                    ",\"totalNanos\":" + phase.totalNanos() +
+                    ",\"p50Nanos\":" + phase.p50Nanos() +
+                    ",\"p99Nanos\":" + phase.p99Nanos() +
+                    ",\"maxNanos\":" + phase.maxNanos() + "}");
+            }
+
+            for (var clazz : report.classes()) {
+                line(writer, "{\"type\":\"class\",\"run\":" + run +
+                    ",\"name\":" + quote(clazz.name()) +
+                    ",\"originalSize\":" + clazz.originalSize() +
+                    ",\"optimizedSize\":" + clazz.optimizedSize() +
+                    ",\"cached\":" + clazz.cached() + "}");
+            }
+        }
+    }
+
+    private static void line(Writer writer, String json) throws IOException {
+        writer.write(json);
+        writer.write('\n');
+    }
+
+    private static String quote(String string) {
+        var quoted = new StringBuilder(string.length() + 2).append('"');
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            switch (c) {
+                case '"' -> quoted.append("\\\"");
+                case '\\' -> quoted.append("\\\\");
+                case '\n' -> quoted.append("\\n");
+                case '\r' -> quoted.append("\\r");
+                case '\t' -> quoted.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        quoted.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        quoted.append(c);
+                    }
+                }
+            }
+        }
+        return quoted.append('"').toString();
+    }
+}
@@ -0,0 +1,93 @@
+package eu.jameshamilton.optimizer.stats;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * Writes the stats of the last run in the Prometheus text exposition format, for example for
+ * the node exporter's textfile collector. The file is replaced atomically, so it's never read
+ * half written. All values are gauges of the last run; classes are only counted, as a series
+ * per class would be far too many.
+ */
+public class PrometheusStatsSink implements StatsSink {
+    private static final String PREFIX = "joptimizer_";
+
+    private final Path file;
+
+    public PrometheusStatsSink(Path file) {
+        this.file = file;
+    }
+
+    @Override
+    public void write(StatsReport report) throws IOException {
+        var metrics = new StringBuilder();
+        gauge(metrics, "last_run_timestamp_seconds", "Start time of the last run.", report.start().toEpochMilli() / 1e3);
+        gauge(metrics, "run_duration_seconds", "Duration of the last run.", report.durationNanos() / 1e9);
+        gauge(metrics, "classes", "Classes processed.", report.classCount());
+        gauge(metrics, "optimized_classes", "Classes that got smaller.", report.optimizedClassCount());
+        gauge(metrics, "bytes_reduced", "Bytes saved over all classes.", report.bytesReduced());
+        gauge(metrics, "cache_hits", "Classes served from the optimization cache.", report.cacheHits());
+        gauge(metrics, "errors", "Entries that couldn't be read.", report.errorCount());
+
+        if (!report.rules().isEmpty()) {
+            header(metrics, "rule_attempts", "gauge", "Attempts of an optimization.");
+            report.rules().forEach(rule -> sample(metrics, "rule_attempts", "rule", rule.name(), rule.attempts()));
+            header(metrics, "rule_hits", "gauge", "Applications of an optimization in classes that got smaller.");
+            report.rules().forEach(rule -> sample(metrics, "rule_hits", "rule", rule.name(), rule.hits()));
+            header(metrics, "rule_bytes_saved", "gauge", "Share of the bytes saved attributed to an optimization.");
+            report.rules().forEach(rule -> sample(metrics, "rule_bytes_saved", "rule", rule.name(), rule.bytesSaved()));
+            if (report.profiled()) {
+                header(metrics, "rule_estimated_seconds", "gauge", "Time spent in an optimization, extrapolated from sampled attempts.");
+                report.rules().forEach(rule -> sample(metrics, "rule_estimated_seconds", "rule", rule.name(), rule.estimatedNanos() / 1e9));
+            }
+        }
+
+        if (!report.phases().isEmpty()) {
+            header(metrics, "phase_seconds", "summary", "Time spent per class or entry in a phase.");
+            for (var phase : report.phases()) {
+                var labels = "phase=\"" + escape(phase.name()) + "\"";
+                metrics.append(PREFIX).append("phase_seconds{").append(labels).append(",quantile=\"0.5\"} ").append(format(phase.p50Nanos() / 1e9)).append('\n');
+                metrics.append(PREFIX).append("phase_seconds{").append(labels).append(",quantile=\"0.99\"} ").append(format(phase.p99Nanos() / 1e9)).append('\n');
+                metrics.append(PREFIX).append("phase_seconds_sum{").append(labels).append("} ").append(format(phase.totalNanos() / 1e9)).append('\n');
+                metrics.append(PREFIX).append("phase_seconds_count{").append(labels).append("} ").append(phase.count()).append('\n');
+            }
+        }
+
+        var directory = file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        var temporary = Files.createTempFile(directory, "metrics-", ".tmp");
+        Files.writeString(temporary, metrics, StandardCharsets.UTF_8);
+        Files.move(temporary, file, ATOMIC_MOVE, REPLACE_EXISTING);
+    }
+
+    private static void gauge(StringBuilder metrics, String name, String help, double value) {
+        header(metrics, name, "gauge", help);
+        metrics.append(PREFIX).append(name).append(' ').append(format(value)).append('\n');
+    }
+
+    private static void header(StringBuilder metrics, String name, String type, String help) {
+        metrics.append("# HELP ").append(PREFIX).append(name).append(' ').append(help).append('\n');
+        metrics.append("# TYPE ").append(PREFIX).append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder metrics, String name, String label, String value, double sample) {
+        metrics.append(PREFIX).append(name)
+            .append('{').append(label).append("=\"").append(escape(value)).append("\"} ")
+            .append(format(sample)).append('\n');
+    }
+
+    private static String format(double value) {
+        return value == Math.rint(value) && Math.abs(value) < 1e15
+            ? Long.toString((long) value)
+            : Double.toString(value);
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,38 @@
+package eu.jameshamilton.optimizer.stats;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * The stats of a run, for {@link StatsSink}s to write out. Timings are only known if the run
+ * was profiled, otherwise they are zero.
+ */
+public record StatsReport(
+    Instant start,
+    long durationNanos,
+    boolean profiled,
+    long classCount,
+    long optimizedClassCount,
+    long bytesReduced,
+    long cacheHits,
+    long errorCount,
+    List<RuleStats> rules,
+    List<PhaseStats> phases,
+    List<ClassStats> classes
+) {
+    /**
+     * The stats of an optimization. Its time is extrapolated from the sampled attempts, and
+     * the bytes it saved are its share of the reduction of the classes it applied to.
+     */
+    public record RuleStats(String name, long attempts, long hits, double bytesSaved, double estimatedNanos, long p50Nanos, long p99Nanos) {
+    }
+
+    public record PhaseStats(String name, long count, long totalNanos, long p50Nanos, long p99Nanos, long maxNanos) {
+    }
+
+    /**
+     * The sizes of a class before and after optimizing it, or serving it from the cache.
+     */
+    public record ClassStats(String name, int originalSize, int optimizedSize, boolean cached) {
+    }
+}
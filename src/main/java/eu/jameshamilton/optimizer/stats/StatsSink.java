@@ -0,0 +1,10 @@
+package eu.jameshamilton.optimizer.stats;
+
+import java.io.IOException;
+
+/**
+ * A destination for the stats of a run, written once it's finished.
+ */
+public interface StatsSink {
+    void write(StatsReport report) throws IOException;
+}
@@ -1,34 +1,65 @@
 package eu.jameshamilton.optimizer.string;
 
+import eu.jameshamilton.classfile.InstructionBuilder;
+import eu.jameshamilton.classfile.Opcodes;
 import eu.jameshamilton.classfile.matcher.Capture;
+import eu.jameshamilton.classfile.matcher.Matcher;
+import eu.jameshamilton.classfile.matcher.MemberRefMatcher;
 import eu.jameshamilton.classfile.matcher.Window;
 import eu.jameshamilton.optimizer.Optimization;
 
-import java.lang.classfile.CodeBuilder;
+import java.lang.classfile.CodeElement;
+import java.lang.classfile.Opcode;
+import java.lang.classfile.constantpool.ConstantPool;
 import java.lang.constant.ClassDesc;
 import java.lang.constant.MethodTypeDesc;
+import java.util.List;
+import java.util.Set;
 
 import static eu.jameshamilton.classfile.matcher.InstructionMatchers.invokevirtual;
 import static eu.jameshamilton.classfile.matcher.InstructionMatchers.loadConstant;
 
 public class ClassConstantOptimizer implements Optimization {
-    @Override
-    public boolean apply(CodeBuilder builder, Window window) {
-        var clazz = new Capture<ClassDesc>();
-        
+    private final ThreadLocal<Matchers> matchers = ThreadLocal.withInitial(Matchers::new);
+
+    private static final class Matchers {
+        final Capture<ClassDesc> clazz = new Capture<>();
+        final MemberRefMatcher getName = MemberRefMatcher.method(ClassDesc.of("java.lang.Class"), "getName",
+            MethodTypeDesc.ofDescriptor("()Ljava/lang/String;"));
         // SomeClass.class.getName() at compile time
-        if (window.matches(
+        final List<Matcher<CodeElement>> pattern = List.of(
             loadConstant(clazz),
-            invokevirtual(ClassDesc.of("java.lang.Class"), "getName", 
-                         MethodTypeDesc.ofDescriptor("()Ljava/lang/String;"))
-        )) {
-            builder.loadConstant(clazz.get().displayName());
+            invokevirtual(getName)
+        );
+
+        Matchers clear() {
+            clazz.clear();
+            return this;
+        }
+    }
+
+    @Override
+    public boolean prepare(ConstantPool constantPool) {
+        return matchers.get().getName.resolve(constantPool);
+    }
+
+    @Override
+    public boolean apply(InstructionBuilder builder, Window window) {
+        var m = matchers.get().clear();
+
+        if (window.matches(m.pattern)) {
+            builder.loadConstant(m.clazz.get().displayName());
             return true;
         }
         
         return false;
     }
 
+    @Override
+    public List<Set<Opcode>> pattern() {
+        return List.of(Opcodes.CONSTANTS, Set.of(Opcode.INVOKEVIRTUAL));
+    }
+
     @Override
     public String getName() {
         return "class name constant optimizer";
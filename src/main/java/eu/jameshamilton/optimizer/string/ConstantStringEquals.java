@@ -1,42 +1,68 @@
 package eu.jameshamilton.optimizer.string;
 
+import eu.jameshamilton.classfile.InstructionBuilder;
+import eu.jameshamilton.classfile.Opcodes;
 import eu.jameshamilton.classfile.matcher.Capture;
 import eu.jameshamilton.classfile.matcher.Matcher;
+import eu.jameshamilton.classfile.matcher.MemberRefMatcher;
 import eu.jameshamilton.classfile.matcher.Window;
 import eu.jameshamilton.optimizer.Optimization;
 
-import java.lang.classfile.CodeBuilder;
+import java.lang.classfile.CodeElement;
+import java.lang.classfile.Opcode;
+import java.lang.classfile.constantpool.ConstantPool;
 import java.lang.constant.ClassDesc;
 import java.lang.constant.MethodTypeDesc;
+import java.util.List;
+import java.util.Set;
 
 import static eu.jameshamilton.classfile.matcher.InstructionMatchers.loadConstant;
 import static eu.jameshamilton.classfile.matcher.InstructionMatchers.invokevirtual;
 
 public class ConstantStringEquals implements Optimization {
-    private static final Matcher<ClassDesc> stringClass =
-        e -> e.equals(ClassDesc.of("java.lang.String"));
-    private static final Matcher<String> substringMethodName =
-        e -> e.equals("equals");
-    private static final Matcher<MethodTypeDesc> substringMethodType1 =
-        e -> e.equals(MethodTypeDesc.ofDescriptor("(Ljava/lang/String;)Z"));
+    private static final ClassDesc stringClass = ClassDesc.of("java.lang.String");
 
-    @Override
-    public boolean apply(CodeBuilder builder, Window window) {
-        var string = new Capture<String>();
-        var string2 = new Capture<String>();
+    private final ThreadLocal<Matchers> matchers = ThreadLocal.withInitial(Matchers::new);
 
-        if (window.matches(
+    private static final class Matchers {
+        final Capture<String> string = new Capture<>();
+        final Capture<String> string2 = new Capture<>();
+        final MemberRefMatcher equals = MemberRefMatcher.method(stringClass, "equals", MethodTypeDesc.ofDescriptor("(Ljava/lang/String;)Z"));
+        final List<Matcher<CodeElement>> pattern = List.of(
             loadConstant(string),
             loadConstant(string2),
-            invokevirtual(stringClass, substringMethodName, substringMethodType1)
-        )) {
-            builder.loadConstant(string.get().equals(string2.get()) ? 1 : 0);
+            invokevirtual(equals)
+        );
+
+        Matchers clear() {
+            string.clear();
+            string2.clear();
+            return this;
+        }
+    }
+
+    @Override
+    public boolean prepare(ConstantPool constantPool) {
+        return matchers.get().equals.resolve(constantPool);
+    }
+
+    @Override
+    public boolean apply(InstructionBuilder builder, Window window) {
+        var m = matchers.get().clear();
+
+        if (window.matches(m.pattern)) {
+            builder.loadConstant(m.string.get().equals(m.string2.get()) ? 1 : 0);
             return true;
         }
 
         return false;
     }
 
+    @Override
+    public List<Set<Opcode>> pattern() {
+        return List.of(Opcodes.CONSTANTS, Opcodes.CONSTANTS, Set.of(Opcode.INVOKEVIRTUAL));
+    }
+
     @Override
     public String getName() {
         return "constant string equals";
@@ -1,36 +1,64 @@
 package eu.jameshamilton.optimizer.string;
 
+import eu.jameshamilton.classfile.InstructionBuilder;
+import eu.jameshamilton.classfile.Opcodes;
 import eu.jameshamilton.classfile.matcher.Capture;
 import eu.jameshamilton.classfile.matcher.Matcher;
+import eu.jameshamilton.classfile.matcher.MemberRefMatcher;
 import eu.jameshamilton.classfile.matcher.Window;
 import eu.jameshamilton.optimizer.Optimization;
 
-import java.lang.classfile.CodeBuilder;
+import java.lang.classfile.CodeElement;
+import java.lang.classfile.Opcode;
+import java.lang.classfile.constantpool.ConstantPool;
 import java.lang.constant.ClassDesc;
 import java.lang.constant.MethodTypeDesc;
+import java.util.List;
+import java.util.Set;
 
 import static eu.jameshamilton.classfile.matcher.InstructionMatchers.loadConstant;
 import static eu.jameshamilton.classfile.matcher.InstructionMatchers.invokevirtual;
 
 public class ConstantStringLength implements Optimization {
-    private static final Matcher<ClassDesc> stringClass = e -> e.equals(ClassDesc.of("java.lang.String"));
-    private static final Matcher<String> stringLengthMethodName = e -> e.equals("length");
-    private static final Matcher<MethodTypeDesc> stringLengthMethodType = e -> e.equals(MethodTypeDesc.ofDescriptor("()I"));
+    private static final ClassDesc stringClass = ClassDesc.of("java.lang.String");
 
-    @Override
-    public boolean apply(CodeBuilder builder, Window window) {
-        var s = new Capture<String>();
-        if (window.matches(
+    private final ThreadLocal<Matchers> matchers = ThreadLocal.withInitial(Matchers::new);
+
+    private static final class Matchers {
+        final Capture<String> s = new Capture<>();
+        final MemberRefMatcher length = MemberRefMatcher.method(stringClass, "length", MethodTypeDesc.ofDescriptor("()I"));
+        final List<Matcher<CodeElement>> pattern = List.of(
             loadConstant(s),
-            invokevirtual(stringClass, stringLengthMethodName, stringLengthMethodType)
-        )) {
-            builder.loadConstant(s.get().length());
+            invokevirtual(length)
+        );
+
+        Matchers clear() {
+            s.clear();
+            return this;
+        }
+    }
+
+    @Override
+    public boolean prepare(ConstantPool constantPool) {
+        return matchers.get().length.resolve(constantPool);
+    }
+
+    @Override
+    public boolean apply(InstructionBuilder builder, Window window) {
+        var m = matchers.get().clear();
+        if (window.matches(m.pattern)) {
+            builder.loadConstant(m.s.get().length());
             return true;
         }
 
         return false;
     }
 
+    @Override
+    public List<Set<Opcode>> pattern() {
+        return List.of(Opcodes.CONSTANTS, Set.of(Opcode.INVOKEVIRTUAL));
+    }
+
     @Override
     public String getName() {
         return "string.length() constant";
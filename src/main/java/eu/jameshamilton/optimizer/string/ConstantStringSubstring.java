@@ -1,38 +1,70 @@
 package eu.jameshamilton.optimizer.string;
 
+import eu.jameshamilton.classfile.InstructionBuilder;
+import eu.jameshamilton.classfile.Opcodes;
 import eu.jameshamilton.classfile.matcher.Capture;
+import eu.jameshamilton.classfile.matcher.IntCapture;
 import eu.jameshamilton.classfile.matcher.Matcher;
+import eu.jameshamilton.classfile.matcher.MemberRefMatcher;
 import eu.jameshamilton.classfile.matcher.Window;
 import eu.jameshamilton.optimizer.Optimization;
 
-import java.lang.classfile.CodeBuilder;
+import java.lang.classfile.CodeElement;
+import java.lang.classfile.Opcode;
+import java.lang.classfile.constantpool.ConstantPool;
 import java.lang.constant.ClassDesc;
 import java.lang.constant.MethodTypeDesc;
+import java.util.List;
+import java.util.Set;
 
-import static eu.jameshamilton.classfile.matcher.ConstantTypeMatcher.INTEGER;
 import static eu.jameshamilton.classfile.matcher.ConstantTypeMatcher.STRING;
 import static eu.jameshamilton.classfile.matcher.InstructionMatchers.loadConstant;
+import static eu.jameshamilton.classfile.matcher.InstructionMatchers.loadConstantInteger;
 import static eu.jameshamilton.classfile.matcher.InstructionMatchers.invokevirtual;
 
 public class ConstantStringSubstring implements Optimization {
-    private static final Matcher<ClassDesc> stringClass = e -> e.equals(ClassDesc.of("java.lang.String"));
-    private static final Matcher<String> substringMethodName = e -> e.equals("substring");
-    private static final Matcher<MethodTypeDesc> substringMethodType1 = e -> e.equals(MethodTypeDesc.ofDescriptor("(I)Ljava/lang/String;"));
-    private static final Matcher<MethodTypeDesc> substringMethodType2 = e -> e.equals(MethodTypeDesc.ofDescriptor("(II)Ljava/lang/String;"));
+    private static final ClassDesc stringClass = ClassDesc.of("java.lang.String");
 
-    @Override
-    public boolean apply(CodeBuilder builder, Window window) {
-        var string = new Capture<String>();
-        var begin = new Capture<Integer>();
-        var end = new Capture<Integer>();
+    private final ThreadLocal<Matchers> matchers = ThreadLocal.withInitial(Matchers::new);
 
-        if (window.matches(
+    private static final class Matchers {
+        final Capture<String> string = new Capture<>();
+        final IntCapture begin = new IntCapture();
+        final IntCapture end = new IntCapture();
+        final MemberRefMatcher substring1 = MemberRefMatcher.method(stringClass, "substring", MethodTypeDesc.ofDescriptor("(I)Ljava/lang/String;"));
+        final MemberRefMatcher substring2 = MemberRefMatcher.method(stringClass, "substring", MethodTypeDesc.ofDescriptor("(II)Ljava/lang/String;"));
+        final List<Matcher<CodeElement>> pattern = List.of(
             loadConstant(STRING.and(string)),
-            loadConstant(INTEGER.and(begin)),
-            loadConstant(INTEGER.and(end)).optional(),
-            invokevirtual(stringClass, substringMethodName, substringMethodType1.or(substringMethodType2))
-        )) {
-            if (end.get() != null) {
+            loadConstantInteger(begin),
+            loadConstantInteger(end).optional(),
+            invokevirtual(substring1.or(substring2))
+        );
+
+        Matchers clear() {
+            string.clear();
+            begin.clear();
+            end.clear();
+            return this;
+        }
+    }
+
+    @Override
+    public boolean prepare(ConstantPool constantPool) {
+        var m = matchers.get();
+        // Resolve both, so neither keeps the index from a previous class
+        boolean hasSubstring1 = m.substring1.resolve(constantPool);
+        return m.substring2.resolve(constantPool) || hasSubstring1;
+    }
+
+    @Override
+    public boolean apply(InstructionBuilder builder, Window window) {
+        var m = matchers.get().clear();
+        var string = m.string;
+        var begin = m.begin;
+        var end = m.end;
+
+        if (window.matches(m.pattern)) {
+            if (end.isCaptured()) {
                 if (begin.get() > end.get() ||
                     end.get() > string.get().length() ||
                     begin.get() < 0) {
@@ -54,6 +86,11 @@ public class ConstantStringSubstring implements Optimization {
         return false;
     }
 
+    @Override
+    public List<Set<Opcode>> pattern() {
+        return List.of(Opcodes.CONSTANTS, Opcodes.CONSTANTS);
+    }
+
     @Override
     public String getName() {
         return "constant string substring";
@@ -1,35 +1,63 @@
 package eu.jameshamilton.optimizer.string;
 
+import eu.jameshamilton.classfile.InstructionBuilder;
+import eu.jameshamilton.classfile.Opcodes;
 import eu.jameshamilton.classfile.matcher.Capture;
 import eu.jameshamilton.classfile.matcher.Matcher;
+import eu.jameshamilton.classfile.matcher.MemberRefMatcher;
 import eu.jameshamilton.classfile.matcher.Window;
 import eu.jameshamilton.optimizer.Optimization;
 
-import java.lang.classfile.CodeBuilder;
+import java.lang.classfile.CodeElement;
+import java.lang.classfile.Opcode;
+import java.lang.classfile.constantpool.ConstantPool;
 import java.lang.constant.ClassDesc;
 import java.lang.constant.MethodTypeDesc;
+import java.util.List;
+import java.util.Set;
 
 import static eu.jameshamilton.classfile.matcher.InstructionMatchers.loadConstant;
 import static eu.jameshamilton.classfile.matcher.InstructionMatchers.invokevirtual;
 
 public class ConstantToStringOptimization implements Optimization {
-    private static final Matcher<ClassDesc> stringClass = e -> e.equals(ClassDesc.of("java.lang.String"));
-    private static final Matcher<String> toStringName = e -> e.equals("toString");
-    private static final Matcher<MethodTypeDesc> toStringDescriptor = e -> e.equals(MethodTypeDesc.ofDescriptor("()Ljava/lang/String;"));
+    private static final ClassDesc stringClass = ClassDesc.of("java.lang.String");
 
-    @Override
-    public boolean apply(CodeBuilder builder, Window window) {
-        var string = new Capture<String>();
-        if (window.matches(
+    private final ThreadLocal<Matchers> matchers = ThreadLocal.withInitial(Matchers::new);
+
+    private static final class Matchers {
+        final Capture<String> string = new Capture<>();
+        final MemberRefMatcher stringToString = MemberRefMatcher.method(stringClass, "toString", MethodTypeDesc.ofDescriptor("()Ljava/lang/String;"));
+        final List<Matcher<CodeElement>> pattern = List.of(
             loadConstant(string),
-            invokevirtual(stringClass, toStringName, toStringDescriptor)
-        )) {
-            builder.loadConstant(string.get());
+            invokevirtual(stringToString)
+        );
+
+        Matchers clear() {
+            string.clear();
+            return this;
+        }
+    }
+
+    @Override
+    public boolean prepare(ConstantPool constantPool) {
+        return matchers.get().stringToString.resolve(constantPool);
+    }
+
+    @Override
+    public boolean apply(InstructionBuilder builder, Window window) {
+        var m = matchers.get().clear();
+        if (window.matches(m.pattern)) {
+            builder.loadConstant(m.string.get());
             return true;
         }
         return false;
     }
 
+    @Override
+    public List<Set<Opcode>> pattern() {
+        return List.of(Opcodes.CONSTANTS, Set.of(Opcode.INVOKEVIRTUAL));
+    }
+
     @Override
     public String getName() {
         return "string.toString() -> string";
@@ -1,6 +1,8 @@
 package eu.jameshamilton.optimizer.string;
 
 import eu.jameshamilton.classfile.ConstantDescUtil;
+import eu.jameshamilton.classfile.InstructionBuilder;
+import eu.jameshamilton.classfile.Opcodes;
 import eu.jameshamilton.classfile.matcher.Capture;
 import eu.jameshamilton.classfile.matcher.Collector;
 import eu.jameshamilton.classfile.matcher.ConstantTypeMatcher;
@@ -8,13 +10,18 @@ import eu.jameshamilton.classfile.matcher.Matcher;
 import eu.jameshamilton.classfile.matcher.Window;
 import eu.jameshamilton.optimizer.Optimization;
 
-import java.lang.classfile.CodeBuilder;
+import java.lang.classfile.CodeElement;
+import java.lang.classfile.Opcode;
+import java.lang.classfile.constantpool.ConstantPool;
 import java.lang.constant.ClassDesc;
 import java.lang.constant.ConstantDesc;
 import java.lang.constant.MethodTypeDesc;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
 
+import static eu.jameshamilton.classfile.ConstantPoolUtil.referencesClass;
 import static eu.jameshamilton.classfile.matcher.Any.any;
 import static eu.jameshamilton.classfile.matcher.InstructionMatchers.loadConstant;
 import static eu.jameshamilton.classfile.matcher.InstructionMatchers.invokevirtual;
@@ -28,20 +35,43 @@ public class StringBuilderAppendCombiner implements Optimization {
     private static final ConstantTypeMatcher<ConstantDesc> supportedConstantTypeMatcher =
         new ConstantTypeMatcher<>(Long.class, Double.class, Float.class, Integer.class, String.class, ClassDesc.class);
 
-    @Override
-    public boolean apply(CodeBuilder codeBuilder, Window window) {
-        var constants = new ArrayList<ConstantDesc>();
-        var classDescCapture = new Capture<ClassDesc>();
-        var stringBuilder = classDescCapture.and(stringBuilderClass.or(stringBufferClass));
-        var constantCollector =
-            loadConstant(supportedConstantTypeMatcher.and(new Collector<>(constants)));
+    private static final ClassDesc STRING_BUILDER = ClassDesc.of("java.lang.StringBuilder");
+    private static final ClassDesc STRING_BUFFER = ClassDesc.of("java.lang.StringBuffer");
 
-        if (window.matches(
+    private final ThreadLocal<Matchers> matchers = ThreadLocal.withInitial(Matchers::new);
+
+    private static final class Matchers {
+        final List<ConstantDesc> constants = new ArrayList<>();
+        final Capture<ClassDesc> classDescCapture = new Capture<>();
+        final Matcher<ClassDesc> stringBuilder = classDescCapture.and(stringBuilderClass.or(stringBufferClass));
+        final Matcher<CodeElement> constantCollector =
+            loadConstant(supportedConstantTypeMatcher.and(new Collector<>(constants)));
+        final List<Matcher<CodeElement>> pattern = List.of(
             constantCollector,
             invokevirtual(stringBuilder, appendName, any()),
             constantCollector,
             invokevirtual(stringBuilder, appendName, any())
-        )) {
+        );
+
+        Matchers clear() {
+            constants.clear();
+            classDescCapture.clear();
+            return this;
+        }
+    }
+
+    @Override
+    public boolean prepare(ConstantPool constantPool) {
+        return referencesClass(constantPool, STRING_BUILDER) || referencesClass(constantPool, STRING_BUFFER);
+    }
+
+    @Override
+    public boolean apply(InstructionBuilder codeBuilder, Window window) {
+        var m = matchers.get().clear();
+        var constants = m.constants;
+        var classDescCapture = m.classDescCapture;
+
+        if (window.matches(m.pattern)) {
             String s = constants.stream()
                 .map(ConstantDescUtil::constantDescAsString)
                 .collect(Collectors.joining());
@@ -64,6 +94,11 @@ public class StringBuilderAppendCombiner implements Optimization {
         return false;
     }
 
+    @Override
+    public List<Set<Opcode>> pattern() {
+        return List.of(Opcodes.CONSTANTS, Set.of(Opcode.INVOKEVIRTUAL), Opcodes.CONSTANTS, Set.of(Opcode.INVOKEVIRTUAL));
+    }
+
     @Override
     public String getName() {
         return "StringBuilder append combiner";
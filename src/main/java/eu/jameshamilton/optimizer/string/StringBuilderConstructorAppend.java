@@ -1,16 +1,23 @@
 package eu.jameshamilton.optimizer.string;
 
+import eu.jameshamilton.classfile.InstructionBuilder;
+import eu.jameshamilton.classfile.Opcodes;
 import eu.jameshamilton.classfile.matcher.Capture;
 import eu.jameshamilton.classfile.matcher.Matcher;
 import eu.jameshamilton.classfile.matcher.Window;
 import eu.jameshamilton.optimizer.Optimization;
 
-import java.lang.classfile.CodeBuilder;
+import java.lang.classfile.CodeElement;
+import java.lang.classfile.Opcode;
+import java.lang.classfile.constantpool.ConstantPool;
 import java.lang.constant.ClassDesc;
 import java.lang.constant.ConstantDesc;
 import java.lang.constant.MethodTypeDesc;
+import java.util.List;
+import java.util.Set;
 
 import static eu.jameshamilton.classfile.ConstantDescUtil.constantToTypeDesc;
+import static eu.jameshamilton.classfile.ConstantPoolUtil.referencesClass;
 import static eu.jameshamilton.classfile.matcher.Any.any;
 import static eu.jameshamilton.classfile.matcher.InstructionMatchers.loadConstant;
 import static eu.jameshamilton.classfile.matcher.InstructionMatchers.dup;
@@ -25,19 +32,42 @@ public class StringBuilderConstructorAppend implements Optimization {
     private static final Matcher<MethodTypeDesc> defaultConstructor = e -> e.equals(MethodTypeDesc.ofDescriptor("()V"));
     private static final Matcher<String> appendName = e -> e.equals("append");
 
-    @Override
-    public boolean apply(CodeBuilder builder, Window window) {
-        var constants = new Capture<ConstantDesc>();
-        Capture<ClassDesc> classDescCapture = new Capture<>();
-        var stringBuilderOrBufferClass = classDescCapture.and(stringBufferClass.or(stringBuilderClass));
+    private static final ClassDesc STRING_BUILDER = ClassDesc.of("java.lang.StringBuilder");
+    private static final ClassDesc STRING_BUFFER = ClassDesc.of("java.lang.StringBuffer");
+
+    private final ThreadLocal<Matchers> matchers = ThreadLocal.withInitial(Matchers::new);
 
-        if (window.matches(
+    private static final class Matchers {
+        final Capture<ConstantDesc> constants = new Capture<>();
+        final Capture<ClassDesc> classDescCapture = new Capture<>();
+        final Matcher<ClassDesc> stringBuilderOrBufferClass = classDescCapture.and(stringBufferClass.or(stringBuilderClass));
+        final List<Matcher<CodeElement>> pattern = List.of(
             newObjectInstruction(stringBuilderOrBufferClass),
             dup(),
             invokespecial(stringBuilderOrBufferClass, constructor, defaultConstructor),
             loadConstant(constants),
             invokevirtual(stringBuilderOrBufferClass, appendName, any())
-        )) {
+        );
+
+        Matchers clear() {
+            constants.clear();
+            classDescCapture.clear();
+            return this;
+        }
+    }
+
+    @Override
+    public boolean prepare(ConstantPool constantPool) {
+        return referencesClass(constantPool, STRING_BUILDER) || referencesClass(constantPool, STRING_BUFFER);
+    }
+
+    @Override
+    public boolean apply(InstructionBuilder builder, Window window) {
+        var m = matchers.get().clear();
+        var constants = m.constants;
+        var classDescCapture = m.classDescCapture;
+
+        if (window.matches(m.pattern)) {
             builder
                 .new_(classDescCapture.get())
                 .dup()
@@ -54,6 +84,11 @@ public class StringBuilderConstructorAppend implements Optimization {
         return false;
     }
 
+    @Override
+    public List<Set<Opcode>> pattern() {
+        return List.of(Set.of(Opcode.NEW), Set.of(Opcode.DUP), Set.of(Opcode.INVOKESPECIAL), Opcodes.CONSTANTS, Set.of(Opcode.INVOKEVIRTUAL));
+    }
+
     @Override
     public String getName() {
         return "stringbuilder constructor simplify";
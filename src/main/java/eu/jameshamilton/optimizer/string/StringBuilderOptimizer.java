@@ -1,19 +1,25 @@
 package eu.jameshamilton.optimizer.string;
 
 import eu.jameshamilton.classfile.ConstantDescUtil;
+import eu.jameshamilton.classfile.InstructionBuilder;
 import eu.jameshamilton.classfile.matcher.Capture;
 import eu.jameshamilton.classfile.matcher.Collector;
 import eu.jameshamilton.classfile.matcher.Matcher;
 import eu.jameshamilton.classfile.matcher.Window;
 import eu.jameshamilton.optimizer.Optimization;
 
-import java.lang.classfile.CodeBuilder;
+import java.lang.classfile.CodeElement;
+import java.lang.classfile.Opcode;
+import java.lang.classfile.constantpool.ConstantPool;
 import java.lang.constant.ClassDesc;
 import java.lang.constant.ConstantDesc;
 import java.lang.constant.MethodTypeDesc;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
 
+import static eu.jameshamilton.classfile.ConstantPoolUtil.referencesClass;
 import static eu.jameshamilton.classfile.matcher.Any.any;
 import static eu.jameshamilton.classfile.matcher.InstructionMatchers.loadConstant;
 import static eu.jameshamilton.classfile.matcher.InstructionMatchers.dup;
@@ -31,32 +37,57 @@ public class StringBuilderOptimizer implements Optimization {
     private static final Matcher<String> toStringName = e -> e.equals("toString");
     private static final Matcher<MethodTypeDesc> toStringDescriptor = e -> e.equals(MethodTypeDesc.ofDescriptor("()Ljava/lang/String;"));
 
-    @Override
-    public boolean apply(CodeBuilder codeBuilder, Window window) {
-        var constants = new ArrayList<ConstantDesc>();
-        var collector = new Collector<>(constants);
-        var stringBuilderOrBufferClass = new Capture<ClassDesc>().and(stringBufferClass.or(stringBuilderClass));
+    private static final ClassDesc STRING_BUILDER = ClassDesc.of("java.lang.StringBuilder");
+    private static final ClassDesc STRING_BUFFER = ClassDesc.of("java.lang.StringBuffer");
+
+    private final ThreadLocal<Matchers> matchers = ThreadLocal.withInitial(Matchers::new);
 
-        if (window.matches(
+    private static final class Matchers {
+        final List<ConstantDesc> constants = new ArrayList<>();
+        final Collector<ConstantDesc> collector = new Collector<>(constants);
+        final Capture<ClassDesc> classDescCapture = new Capture<>();
+        final Matcher<ClassDesc> stringBuilderOrBufferClass = classDescCapture.and(stringBufferClass.or(stringBuilderClass));
+        final List<Matcher<CodeElement>> constructorCall = List.of(
             newObjectInstruction(stringBuilderOrBufferClass),
             dup(),
             loadConstant(collector).optional(),
             invokespecial(stringBuilderOrBufferClass, constructor, defaultConstructor.or(stringConstructor))
-        )) {
+        );
+        final List<Matcher<CodeElement>> append = List.of(
+            loadConstant(collector),
+            invokevirtual(stringBuilderOrBufferClass, appendName, any())
+        );
+        final List<Matcher<CodeElement>> toStringCall = List.of(
+            invokevirtual(stringBuilderOrBufferClass, toStringName, toStringDescriptor)
+        );
+
+        Matchers clear() {
+            constants.clear();
+            classDescCapture.clear();
+            return this;
+        }
+    }
+
+    @Override
+    public boolean prepare(ConstantPool constantPool) {
+        return referencesClass(constantPool, STRING_BUILDER) || referencesClass(constantPool, STRING_BUFFER);
+    }
+
+    @Override
+    public boolean apply(InstructionBuilder codeBuilder, Window window) {
+        var m = matchers.get().clear();
+        var constants = m.constants;
+
+        if (window.matches(m.constructorCall)) {
 
             int startIndex = window.getMatchedCount();
             do {
-                if (window.matches(startIndex,
-                    loadConstant(collector),
-                    invokevirtual(stringBuilderOrBufferClass, appendName, any()))
-                ) {
+                if (window.matches(startIndex, m.append)) {
                     startIndex = window.getMatchedCount();
                 }
             } while (window.getMatchedCount() > 0);
 
-            if (window.matches(startIndex,
-                invokevirtual(stringBuilderOrBufferClass, toStringName, toStringDescriptor)
-            )) {
+            if (window.matches(startIndex, m.toStringCall)) {
                 String s = constants.stream()
                     .map(ConstantDescUtil::constantDescAsString)
                     .collect(Collectors.joining());
@@ -74,6 +105,11 @@ public class StringBuilderOptimizer implements Optimization {
         return false;
     }
 
+    @Override
+    public List<Set<Opcode>> pattern() {
+        return List.of(Set.of(Opcode.NEW), Set.of(Opcode.DUP));
+    }
+
     @Override
     public String getName() {
         return "string builder optimizer";
@@ -1,19 +1,46 @@
 package eu.jameshamilton.optimizer.type;
 
+import eu.jameshamilton.classfile.InstructionBuilder;
 import eu.jameshamilton.classfile.matcher.Capture;
+import eu.jameshamilton.classfile.matcher.Matcher;
 import eu.jameshamilton.classfile.matcher.Window;
 import eu.jameshamilton.optimizer.Optimization;
 
-import java.lang.classfile.CodeBuilder;
+import java.lang.classfile.CodeElement;
+import java.lang.classfile.Opcode;
 import java.lang.classfile.constantpool.ClassEntry;
+import java.util.List;
+import java.util.Set;
 
 import static eu.jameshamilton.classfile.matcher.InstructionMatchers.checkcast;
 
 public class CheckcastSimplifier implements Optimization {
+    private final ThreadLocal<Matchers> matchers = ThreadLocal.withInitial(Matchers::new);
+
+    private static final class Matchers {
+        final Capture<ClassEntry> type = new Capture<>();
+        final List<Matcher<CodeElement>> pattern = List.of(checkcast(type), checkcast(type));
+
+        Matchers clear() {
+            type.clear();
+            return this;
+        }
+    }
+
+    @Override
+    public boolean apply(InstructionBuilder builder, Window window) {
+        if (window.matches(matchers.get().clear().pattern)) {
+            // The second checkcast is redundant, the first one is still needed.
+            builder.with(window.get(0));
+            return true;
+        }
+
+        return false;
+    }
+
     @Override
-    public boolean apply(CodeBuilder builder, Window window) {
-        var type = new Capture<ClassEntry>();
-        return window.matches(checkcast(type), checkcast(type));
+    public List<Set<Opcode>> pattern() {
+        return List.of(Set.of(Opcode.CHECKCAST), Set.of(Opcode.CHECKCAST));
     }
 
     @Override
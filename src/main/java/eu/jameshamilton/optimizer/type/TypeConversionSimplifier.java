@@ -1,9 +1,14 @@
 package eu.jameshamilton.optimizer.type;
 
+import eu.jameshamilton.classfile.InstructionBuilder;
+import eu.jameshamilton.classfile.matcher.Matcher;
 import eu.jameshamilton.classfile.matcher.Window;
 import eu.jameshamilton.optimizer.Optimization;
 
-import java.lang.classfile.CodeBuilder;
+import java.lang.classfile.CodeElement;
+import java.lang.classfile.Opcode;
+import java.util.List;
+import java.util.Set;
 
 import static eu.jameshamilton.classfile.matcher.InstructionMatchers.d2i;
 import static eu.jameshamilton.classfile.matcher.InstructionMatchers.i2b;
@@ -14,43 +19,45 @@ import static eu.jameshamilton.classfile.matcher.InstructionMatchers.i2s;
 import static eu.jameshamilton.classfile.matcher.InstructionMatchers.l2i;
 
 public class TypeConversionSimplifier implements Optimization {
+    private static final List<Matcher<CodeElement>> TO_BYTE = List.of(i2b().or(i2c()).or(i2s()), i2b());
+    private static final List<Matcher<CodeElement>> TO_CHAR = List.of(i2c().or(i2s()), i2c());
+    private static final List<Matcher<CodeElement>> TO_SHORT = List.of(i2s().or(i2c()), i2s());
+    private static final List<Matcher<CodeElement>> LONG_ROUND_TRIP = List.of(i2l(), l2i());
+    private static final List<Matcher<CodeElement>> DOUBLE_ROUND_TRIP = List.of(i2d(), d2i());
+
     @Override
-    public boolean apply(CodeBuilder builder, Window window) {
-        if (window.matches(
-            i2b().or(i2c()).or(i2s()),
-            i2b()
-        )) {
+    public boolean apply(InstructionBuilder builder, Window window) {
+        if (window.matches(TO_BYTE)) {
             builder.i2b();
             return true;
         }
 
-        if (window.matches(
-            i2c().or(i2s()),
-            i2c()
-        )) {
+        if (window.matches(TO_CHAR)) {
             builder.i2c();
             return true;
         }
 
-        if (window.matches(
-            i2s().or(i2c()),
-            i2s()
-        )) {
+        if (window.matches(TO_SHORT)) {
             builder.i2s();
             return true;
         }
 
-        if (window.matches(i2l(), l2i())) {
+        if (window.matches(LONG_ROUND_TRIP)) {
             return true;
         }
 
-        if (window.matches(i2d(), d2i())) {
+        if (window.matches(DOUBLE_ROUND_TRIP)) {
             return true;
         }
 
         return false;
     }
 
+    @Override
+    public List<Set<Opcode>> pattern() {
+        return List.of(Set.of(Opcode.I2B, Opcode.I2C, Opcode.I2S, Opcode.I2L, Opcode.I2D), Set.of(Opcode.I2B, Opcode.I2C, Opcode.I2S, Opcode.L2I, Opcode.D2I));
+    }
+
     @Override
     public String getName() {
         return "type conversion simplifier";
@@ -0,0 +1,39 @@
+package eu.jameshamilton.zip;
+
+import java.io.ByteArrayOutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+/**
+ * A zip entry whose data is already compressed with the given method, together with the CRC-32
+ * and size of the uncompressed data, ready to be written by a {@link ZipWriter}.
+ */
+public record CompressedEntry(String name, int method, byte[] data, long crc, long size) {
+
+    /**
+     * Compresses the given bytes. Entries that deflating doesn't make smaller, such as
+     * directories and already compressed resources, are stored instead.
+     */
+    public static CompressedEntry of(String name, byte[] bytes) {
+        var crc = new CRC32();
+        crc.update(bytes);
+
+        var deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            deflater.setInput(bytes);
+            deflater.finish();
+            var output = new ByteArrayOutputStream(bytes.length / 2 + 64);
+            var buffer = new byte[8192];
+            while (!deflater.finished()) {
+                output.write(buffer, 0, deflater.deflate(buffer));
+            }
+            if (output.size() < bytes.length) {
+                return new CompressedEntry(name, ZipEntry.DEFLATED, output.toByteArray(), crc.getValue(), bytes.length);
+            }
+        } finally {
+            deflater.end();
+        }
+        return new CompressedEntry(name, ZipEntry.STORED, bytes, crc.getValue(), bytes.length);
+    }
+}
@@ -0,0 +1,263 @@
+package eu.jameshamilton.zip;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+import static java.lang.foreign.ValueLayout.JAVA_BYTE;
+
+/**
+ * Reads a zip file by mapping it into memory and parsing its central directory once. Entries
+ * are read from slices of the mapping, each with its own inflater, so any number of threads
+ * can read entries at the same time without sharing a lock. The compressed data of an entry
+ * can also be copied as is, without inflating it.
+ * <p>
+ * Zip files with a preamble, such as jmods and executable jars, are supported: offsets are
+ * relative to where the central directory says the archive starts.
+ * <p>
+ * Malformed archives are reported with a {@link ZipException}, and the data of every entry
+ * that is read is checked against its CRC-32.
+ */
+public class ZipReader implements Closeable {
+    static final int LOCAL_HEADER = 0x04034B50;
+    static final int CENTRAL_HEADER = 0x02014B50;
+    static final int ZIP64_END = 0x06064B50;
+    static final int ZIP64_LOCATOR = 0x07064B50;
+    static final int END = 0x06054B50;
+    static final int ZIP64_EXTRA = 0x0001;
+    static final long MAX_ENTRIES = 0xFFFF;
+    static final long MAX_OFFSET = 0xFFFFFFFFL;
+
+    private static final int END_SIZE = 22;
+    private static final int MAX_COMMENT = 0xFFFF;
+    // The largest array most VMs can allocate
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+    private static final ValueLayout.OfShort SHORT = ValueLayout.JAVA_SHORT_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+    private static final ValueLayout.OfInt INT = ValueLayout.JAVA_INT_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+    private static final ValueLayout.OfLong LONG = ValueLayout.JAVA_LONG_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+
+    /**
+     * An entry of the central directory. Sizes are those of the compressed and uncompressed data,
+     * and the offset is that of its local header in the file.
+     */
+    public record Entry(String name, int flags, int method, long crc, long compressedSize, long size, long localHeaderOffset) {
+    }
+
+    private final FileChannel channel;
+    private final MemorySegment file;
+    private final List<Entry> entries;
+
+    private ZipReader(FileChannel channel, MemorySegment file) throws IOException {
+        this.channel = channel;
+        this.file = file;
+        try {
+            this.entries = readCentralDirectory();
+        } catch (IndexOutOfBoundsException e) {
+            throw new ZipException("Truncated central directory");
+        }
+    }
+
+    public static ZipReader open(Path path) throws IOException {
+        var channel = FileChannel.open(path);
+        try {
+            // The mapping can be read from any thread, and is unmapped once the reader is
+            // unreachable: inflaters can't read from mappings that could be closed under them
+            return new ZipReader(channel, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), Arena.ofAuto()));
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * The entries in the order of the central directory.
+     */
+    public List<Entry> entries() {
+        return entries;
+    }
+
+    /**
+     * Reads and inflates the data of the entry.
+     */
+    public byte[] read(Entry entry) throws IOException {
+        var data = data(entry);
+        if (entry.size() < 0 || entry.size() > MAX_ARRAY_SIZE) {
+            throw new ZipException("Invalid size of " + entry.name() + ": " + entry.size());
+        }
+        var bytes = new byte[(int) entry.size()];
+        switch (entry.method()) {
+            case ZipEntry.STORED -> {
+                if (data.byteSize() != bytes.length) {
+                    throw new ZipException("Invalid size of stored entry " + entry.name());
+                }
+                MemorySegment.copy(data, JAVA_BYTE, 0, bytes, 0, bytes.length);
+            }
+            case ZipEntry.DEFLATED -> {
+                var inflater = new Inflater(true);
+                try {
+                    inflater.setInput(data.asByteBuffer());
+                    int length = 0;
+                    while (length < bytes.length && !inflater.finished() && !inflater.needsInput()) {
+                        length += inflater.inflate(bytes, length, bytes.length - length);
+                    }
+                    if (length != bytes.length) {
+                        throw new ZipException("Invalid size of deflated entry " + entry.name());
+                    }
+                } catch (DataFormatException e) {
+                    throw new ZipException("Invalid deflated data in " + entry.name() + ": " + e.getMessage());
+                } finally {
+                    inflater.end();
+                }
+            }
+            default -> throw new ZipException("Unsupported compression method " + entry.method() + " of " + entry.name());
+        }
+
+        var crc = new CRC32();
+        crc.update(bytes);
+        if (crc.getValue() != entry.crc()) {
+            throw new ZipException("Invalid CRC-32 of " + entry.name());
+        }
+        return bytes;
+    }
+
+    /**
+     * Transfers the compressed data of the entry to the target, which the operating system
+     * can do without copying it through the heap.
+     */
+    long transferData(Entry entry, WritableByteChannel target) throws IOException {
+        long position = data(entry).address() - file.address();
+        long end = position + entry.compressedSize();
+        while (position < end) {
+            long transferred = channel.transferTo(position, end - position, target);
+            if (transferred == 0) {
+                // The file was truncated after it was opened
+                throw new ZipException("Truncated data of " + entry.name());
+            }
+            position += transferred;
+        }
+        return entry.compressedSize();
+    }
+
+    private MemorySegment data(Entry entry) throws IOException {
+        long header = entry.localHeaderOffset();
+        if (header < 0 || header + 30 > file.byteSize() || file.get(INT, header) != LOCAL_HEADER) {
+            throw new ZipException("Missing local header for " + entry.name());
+        }
+        long data = header + 30 + u16(header + 26) + u16(header + 28);
+        if (entry.compressedSize() < 0 || data + entry.compressedSize() > file.byteSize()) {
+            throw new ZipException("Truncated data of " + entry.name());
+        }
+        return file.asSlice(data, entry.compressedSize());
+    }
+
+    private List<Entry> readCentralDirectory() throws IOException {
+        // The end record is followed by a comment of up to 64 KiB
+        long size = file.byteSize();
+        long limit = Math.max(0, size - END_SIZE - MAX_COMMENT);
+        long end = size - END_SIZE;
+        while (end >= limit && !(file.get(INT, end) == END && end + END_SIZE + u16(end + 20) == size)) {
+            end--;
+        }
+        if (end < limit) {
+            throw new ZipException("Missing end of central directory");
+        }
+
+        long count = u16(end + 10);
+        long directorySize = u32(end + 12);
+        long directoryOffset = u32(end + 16);
+        long directoryEnd = end;
+        long locator = end - 20;
+        if ((count == MAX_ENTRIES || directorySize == MAX_OFFSET || directoryOffset == MAX_OFFSET) &&
+            locator >= 0 && file.get(INT, locator) == ZIP64_LOCATOR) {
+            // The locator's offset isn't adjusted for a preamble, the record is just before it
+            directoryEnd = locator - 56;
+            if (directoryEnd < 0 || file.get(INT, directoryEnd) != ZIP64_END) {
+                throw new ZipException("Missing ZIP64 end of central directory");
+            }
+            count = file.get(LONG, directoryEnd + 32);
+            directorySize = file.get(LONG, directoryEnd + 40);
+            directoryOffset = file.get(LONG, directoryEnd + 48);
+        }
+
+        // Anything before the archive shifts all of its offsets
+        long base = directoryEnd - directorySize - directoryOffset;
+        if (count < 0 || directorySize < 0 || directoryOffset < 0 || base < 0) {
+            throw new ZipException("Invalid central directory");
+        }
+
+        // The count isn't trusted for the capacity, every header takes at least 46 bytes
+        var entries = new ArrayList<Entry>((int) Math.min(count, directorySize / 46));
+        for (long position = base + directoryOffset; position < directoryEnd; ) {
+            if (file.get(INT, position) != CENTRAL_HEADER) {
+                throw new ZipException("Invalid central directory header");
+            }
+            int nameLength = u16(position + 28);
+            int extraLength = u16(position + 30);
+            int commentLength = u16(position + 32);
+
+            var name = new byte[nameLength];
+            MemorySegment.copy(file, JAVA_BYTE, position + 46, name, 0, nameLength);
+            long compressedSize = u32(position + 20);
+            long uncompressedSize = u32(position + 24);
+            long offset = u32(position + 42);
+
+            // Saturated fields are in the ZIP64 extra field, in this order, if they overflowed
+            long extraEnd = position + 46 + nameLength + extraLength;
+            for (long extra = position + 46 + nameLength; extra + 4 <= extraEnd; extra += 4 + u16(extra + 2)) {
+                if (u16(extra) == ZIP64_EXTRA) {
+                    long field = extra + 4;
+                    if (uncompressedSize == MAX_OFFSET) {
+                        uncompressedSize = file.get(LONG, field);
+                        field += 8;
+                    }
+                    if (compressedSize == MAX_OFFSET) {
+                        compressedSize = file.get(LONG, field);
+                        field += 8;
+                    }
+                    if (offset == MAX_OFFSET) {
+                        offset = file.get(LONG, field);
+                    }
+                }
+            }
+
+            entries.add(new Entry(
+                new String(name, StandardCharsets.UTF_8),
+                u16(position + 8),
+                u16(position + 10),
+                u32(position + 16),
+                compressedSize,
+                uncompressedSize,
+                base + offset
+            ));
+            position = extraEnd + commentLength;
+        }
+        return List.copyOf(entries);
+    }
+
+    private int u16(long position) {
+        return file.get(SHORT, position) & 0xFFFF;
+    }
+
+    private long u32(long position) {
+        return file.get(INT, position) & MAX_OFFSET;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,203 @@
+package eu.jameshamilton.zip;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.zip.ZipEntry;
+
+import static eu.jameshamilton.zip.ZipReader.CENTRAL_HEADER;
+import static eu.jameshamilton.zip.ZipReader.END;
+import static eu.jameshamilton.zip.ZipReader.LOCAL_HEADER;
+import static eu.jameshamilton.zip.ZipReader.MAX_ENTRIES;
+import static eu.jameshamilton.zip.ZipReader.MAX_OFFSET;
+import static eu.jameshamilton.zip.ZipReader.ZIP64_END;
+import static eu.jameshamilton.zip.ZipReader.ZIP64_EXTRA;
+import static eu.jameshamilton.zip.ZipReader.ZIP64_LOCATOR;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Writes a zip file from entries that are already compressed, so that they can be compressed in
+ * parallel and the writer only has to copy their bytes. The central directory is kept in memory
+ * until the writer is closed. Archives with more entries or larger offsets than the original
+ * format allows get ZIP64 records.
+ */
+public class ZipWriter implements Closeable {
+    private static final int UTF8_NAMES = 1 << 11;
+    // The encryption and compression option flags describe the data, which is copied as is
+    private static final int DATA_FLAGS = 0x7;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final int time;
+    private final int date;
+    private final ByteArrayOutputStream centralDirectory = new ByteArrayOutputStream();
+    private long position;
+    private long entryCount;
+
+    public ZipWriter(Path path) throws IOException {
+        this.channel = FileChannel.open(path, CREATE, TRUNCATE_EXISTING, WRITE);
+        // All entries get the time the archive was written, as with ZipOutputStream
+        var now = LocalDateTime.now();
+        this.time = now.getHour() << 11 | now.getMinute() << 5 | now.getSecond() >> 1;
+        this.date = Math.max(now.getYear() - 1980, 0) << 9 | now.getMonthValue() << 5 | now.getDayOfMonth();
+    }
+
+    public void write(CompressedEntry entry) throws IOException {
+        writeHeaders(entry.name(), 0, entry.method(), entry.crc(), entry.data().length, entry.size());
+        write(ByteBuffer.wrap(entry.data()));
+    }
+
+    /**
+     * Copies an entry of another zip file without inflating it, keeping its compressed data,
+     * method and CRC.
+     */
+    public void copy(ZipReader source, ZipReader.Entry entry) throws IOException {
+        writeHeaders(entry.name(), entry.flags() & DATA_FLAGS, entry.method(), entry.crc(), entry.compressedSize(), entry.size());
+        flush();
+        position += source.transferData(entry, channel);
+    }
+
+    private void writeHeaders(String entryName, int flags, int method, long crc, long compressedSize, long size) throws IOException {
+        var name = entryName.getBytes(StandardCharsets.UTF_8);
+        long offset = position;
+        boolean zip64Sizes = compressedSize >= MAX_OFFSET || size >= MAX_OFFSET;
+        int version = zip64Sizes ? 45 : method == ZipEntry.STORED ? 10 : 20;
+
+        var local = buffer(30 + name.length + (zip64Sizes ? 20 : 0))
+            .putInt(LOCAL_HEADER)
+            .putShort((short) version)
+            .putShort((short) (flags | UTF8_NAMES))
+            .putShort((short) method)
+            .putShort((short) time)
+            .putShort((short) date)
+            .putInt((int) crc)
+            .putInt((int) Math.min(compressedSize, MAX_OFFSET))
+            .putInt((int) Math.min(size, MAX_OFFSET))
+            .putShort((short) name.length)
+            .putShort((short) (zip64Sizes ? 20 : 0))
+            .put(name);
+        if (zip64Sizes) {
+            local.putShort((short) ZIP64_EXTRA).putShort((short) 16).putLong(size).putLong(compressedSize);
+        }
+        write(local.flip());
+
+        // Only the fields that overflow go in the ZIP64 extra field, in this order
+        var extra = buffer(28).putShort((short) ZIP64_EXTRA).putShort((short) 0);
+        if (size >= MAX_OFFSET) {
+            extra.putLong(size);
+        }
+        if (compressedSize >= MAX_OFFSET) {
+            extra.putLong(compressedSize);
+        }
+        if (offset >= MAX_OFFSET) {
+            extra.putLong(offset);
+        }
+        int extraLength = extra.position() > 4 ? extra.position() : 0;
+        extra.putShort(2, (short) (extraLength - 4)).flip().limit(extraLength);
+        if (extraLength > 0) {
+            version = 45;
+        }
+
+        var central = buffer(46 + name.length + extraLength)
+            .putInt(CENTRAL_HEADER)
+            .putShort((short) version)
+            .putShort((short) version)
+            .putShort((short) (flags | UTF8_NAMES))
+            .putShort((short) method)
+            .putShort((short) time)
+            .putShort((short) date)
+            .putInt((int) crc)
+            .putInt((int) Math.min(compressedSize, MAX_OFFSET))
+            .putInt((int) Math.min(size, MAX_OFFSET))
+            .putShort((short) name.length)
+            .putShort((short) extraLength)
+            .putShort((short) 0)
+            .putShort((short) 0)
+            .putShort((short) 0)
+            .putInt(0)
+            .putInt((int) Math.min(offset, MAX_OFFSET))
+            .put(name)
+            .put(extra);
+        centralDirectory.write(central.array());
+        entryCount++;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try (channel) {
+            long start = position;
+            long size = centralDirectory.size();
+            write(ByteBuffer.wrap(centralDirectory.toByteArray()));
+
+            if (entryCount >= MAX_ENTRIES || start >= MAX_OFFSET || position >= MAX_OFFSET) {
+                long end = position;
+                write(buffer(56)
+                    .putInt(ZIP64_END)
+                    .putLong(44)
+                    .putShort((short) 45)
+                    .putShort((short) 45)
+                    .putInt(0)
+                    .putInt(0)
+                    .putLong(entryCount)
+                    .putLong(entryCount)
+                    .putLong(size)
+                    .putLong(start)
+                    .flip());
+                write(buffer(20)
+                    .putInt(ZIP64_LOCATOR)
+                    .putInt(0)
+                    .putLong(end)
+                    .putInt(1)
+                    .flip());
+            }
+
+            // Fields that overflow are saturated, which tells readers to use the ZIP64 records
+            write(buffer(22)
+                .putInt(END)
+                .putShort((short) 0)
+                .putShort((short) 0)
+                .putShort((short) Math.min(entryCount, MAX_ENTRIES))
+                .putShort((short) Math.min(entryCount, MAX_ENTRIES))
+                .putInt((int) Math.min(size, MAX_OFFSET))
+                .putInt((int) Math.min(start, MAX_OFFSET))
+                .putShort((short) 0)
+                .flip());
+            flush();
+        }
+    }
+
+    private void write(ByteBuffer bytes) throws IOException {
+        position += bytes.remaining();
+        if (bytes.remaining() > buffer.remaining()) {
+            flush();
+            if (bytes.remaining() > buffer.capacity()) {
+                while (bytes.hasRemaining()) {
+                    channel.write(bytes);
+                }
+                return;
+            }
+        }
+        buffer.put(bytes);
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private static ByteBuffer buffer(int size) {
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
@@ -1,28 +1,45 @@
 import eu.jameshamilton.optimizer.ClassOptimizer;
 import eu.jameshamilton.optimizer.Optimization;
 import eu.jameshamilton.optimizer.OptimizationStats;
+import eu.jameshamilton.optimizer.artithmetic.ConstantConversionFolder;
 import eu.jameshamilton.optimizer.artithmetic.IntegerConstantArithmeticFolder;
 import eu.jameshamilton.optimizer.artithmetic.MultiplyByOne;
 import eu.jameshamilton.optimizer.deadcode.NopRemover;
+import eu.jameshamilton.optimizer.deadcode.ZeroComparisonOptimizer;
+import eu.jameshamilton.optimizer.inliner.BooleanFieldInliner;
 import eu.jameshamilton.optimizer.normalize.AddSubConstant;
+import eu.jameshamilton.optimizer.rules.Rules;
 import eu.jameshamilton.optimizer.string.ConstantStringEquals;
 import eu.jameshamilton.optimizer.string.ConstantStringLength;
 import eu.jameshamilton.optimizer.string.ConstantStringSubstring;
 import eu.jameshamilton.optimizer.string.ConstantToStringOptimization;
 import eu.jameshamilton.optimizer.string.StringBuilderConstructorAppend;
+import eu.jameshamilton.optimizer.type.CheckcastSimplifier;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.classfile.Attributes;
 import java.lang.classfile.ClassFile;
 import java.lang.classfile.ClassHierarchyResolver;
 import java.lang.classfile.ClassModel;
+import java.lang.classfile.Instruction;
+import java.lang.classfile.Opcode;
+import java.lang.classfile.instruction.ConstantInstruction;
 import java.lang.constant.ClassDesc;
 import java.lang.constant.MethodTypeDesc;
+import java.util.List;
 import java.util.Map;
 
 import static eu.jameshamilton.test.BytecodeAssertions.given;
+import static java.lang.classfile.ClassFile.ACC_PUBLIC;
+import static java.lang.classfile.ClassFile.ACC_STATIC;
 import static java.lang.classfile.ClassFile.DeadCodeOption.KEEP_DEAD_CODE;
 import static java.lang.constant.ClassDesc.of;
 import static java.lang.constant.MethodTypeDesc.ofDescriptor;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class OptimizationTest {
     private final OptimizationStats stats = new OptimizationStats();
@@ -224,8 +241,293 @@ class OptimizationTest {
             );
     }
 
+    @Test
+    public void constantCharConversion() {
+        given(resolver, code -> code
+            .loadConstant(-1)
+            .i2c()
+        )
+            .when(code -> optimize(code, new ConstantConversionFolder()))
+            .expect(code -> code
+                .loadConstant(65535)
+            );
+    }
+
+    @Test
+    public void booleanFieldInlining() {
+        var javaLangBoolean = ClassDesc.of("java.lang.Boolean");
+        given(resolver, code -> code
+            .getstatic(javaLangBoolean, "FALSE", javaLangBoolean)
+            .invokevirtual(javaLangBoolean, "booleanValue", MethodTypeDesc.ofDescriptor("()Z"))
+            .getstatic(javaLangBoolean, "TRUE", javaLangBoolean)
+            .invokevirtual(javaLangBoolean, "booleanValue", MethodTypeDesc.ofDescriptor("()Z"))
+        )
+            .when(code -> optimize(code, new BooleanFieldInliner()))
+            .expect(code -> code
+                .loadConstant(0)
+                .loadConstant(1)
+            );
+    }
+
+    @Test
+    public void booleanFieldInliningWithDuplicateEntries() throws IOException {
+        // Compilers don't write duplicate pool entries, but nothing forbids them, so the class is written by hand
+        var bytes = new ByteArrayOutputStream();
+        var out = new DataOutputStream(bytes);
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(0);
+        out.writeShort(ClassFile.JAVA_8_VERSION);
+        out.writeShort(19);
+        out.writeByte(1); out.writeUTF("TestClass");                // #1
+        out.writeByte(7); out.writeShort(1);                        // #2
+        out.writeByte(1); out.writeUTF("java/lang/Object");         // #3
+        out.writeByte(7); out.writeShort(3);                        // #4
+        out.writeByte(1); out.writeUTF("java/lang/Boolean");        // #5
+        out.writeByte(7); out.writeShort(5);                        // #6
+        out.writeByte(1); out.writeUTF("TRUE");                     // #7
+        out.writeByte(1); out.writeUTF("Ljava/lang/Boolean;");      // #8
+        out.writeByte(12); out.writeShort(7); out.writeShort(8);    // #9
+        out.writeByte(9); out.writeShort(6); out.writeShort(9);     // #10 Boolean.TRUE
+        out.writeByte(9); out.writeShort(6); out.writeShort(9);     // #11 Boolean.TRUE again
+        out.writeByte(1); out.writeUTF("booleanValue");             // #12
+        out.writeByte(1); out.writeUTF("()Z");                      // #13
+        out.writeByte(12); out.writeShort(12); out.writeShort(13);  // #14
+        out.writeByte(10); out.writeShort(6); out.writeShort(14);   // #15 Boolean.booleanValue()
+        out.writeByte(1); out.writeUTF("test");                     // #16
+        out.writeByte(1); out.writeUTF("()V");                      // #17
+        out.writeByte(1); out.writeUTF("Code");                     // #18
+        out.writeShort(ACC_PUBLIC | ClassFile.ACC_SUPER);
+        out.writeShort(2);
+        out.writeShort(4);
+        out.writeShort(0);
+        out.writeShort(0);
+        out.writeShort(1);
+        out.writeShort(ACC_PUBLIC | ACC_STATIC);
+        out.writeShort(16);
+        out.writeShort(17);
+        out.writeShort(1);
+        byte[] code = {
+            (byte) 0xB2, 0, 10, // getstatic #10
+            (byte) 0xB6, 0, 15, // invokevirtual #15
+            (byte) 0xB2, 0, 11, // getstatic #11
+            (byte) 0xB6, 0, 15, // invokevirtual #15
+            0x58,               // pop2
+            (byte) 0xB1         // return
+        };
+        out.writeShort(18);
+        out.writeInt(12 + code.length);
+        out.writeShort(2);
+        out.writeShort(0);
+        out.writeInt(code.length);
+        out.write(code);
+        out.writeShort(0);
+        out.writeShort(0);
+        out.writeShort(0);
+        out.writeShort(0);
+
+        var optimized = optimize(ClassFile.of().parse(bytes.toByteArray()), new BooleanFieldInliner());
+
+        var instructions = optimized.methods().getFirst().code().orElseThrow().elementStream()
+            .filter(e -> e instanceof Instruction)
+            .map(e -> ((Instruction) e).opcode())
+            .toList();
+        assertEquals(List.of(Opcode.ICONST_1, Opcode.ICONST_1, Opcode.POP2, Opcode.RETURN), instructions);
+    }
+
+    @Test
+    public void framesKeptWithoutHierarchy() {
+        // Merging the String and Integer branches needs the class hierarchy to compute frames.
+        byte[] bytes = ClassFile.of().build(of("TestClass"), clazz -> clazz.withMethod("test", ofDescriptor("()V"), ACC_PUBLIC | ACC_STATIC, method -> method.withCode(code -> {
+            var otherwise = code.newLabel();
+            var join = code.newLabel();
+            code.iconst_0()
+                .ifeq(otherwise)
+                .loadConstant("string")
+                .goto_(join)
+                .labelBinding(otherwise)
+                .iconst_1()
+                .invokestatic(of("java.lang.Integer"), "valueOf", ofDescriptor("(I)Ljava/lang/Integer;"))
+                .labelBinding(join)
+                .astore(0)
+                .aload(0)
+                .aload(0)
+                .pop2()
+                .return_();
+        })));
+
+        var rules = Rules.parse("test", "redundant load: aload($x), aload($x) => #0, dup");
+        ClassHierarchyResolver unresolvable = _ -> null;
+        var optimized = ClassFile.of().parse(new ClassOptimizer(stats, unresolvable, bytes).optimize(rules.toArray(Optimization[]::new)));
+
+        var code = optimized.methods().getFirst().code().orElseThrow();
+        assertTrue(code.elementStream().anyMatch(e -> e instanceof Instruction i && i.opcode() == Opcode.DUP));
+        assertTrue(code.findAttribute(Attributes.stackMapTable()).isPresent());
+        assertEquals(List.of(), ClassFile.of().verify(optimized));
+    }
+
+    @Test
+    public void framesKeptAfterShorterRewrite() {
+        // Folding shortens the code before the branch target, so the kept frames have to move with it.
+        byte[] bytes = ClassFile.of().build(of("TestClass"), clazz -> clazz.withMethod("test", ofDescriptor("()V"), ACC_PUBLIC | ACC_STATIC, method -> method.withCode(code -> {
+            var target = code.newLabel();
+            code.bipush(10)
+                .bipush(20)
+                .iadd()
+                .ifeq(target)
+                .iconst_1()
+                .iconst_2()
+                .iadd()
+                .pop()
+                .labelBinding(target)
+                .return_();
+        })));
+
+        ClassHierarchyResolver unresolvable = _ -> null;
+        var optimized = ClassFile.of().parse(new ClassOptimizer(stats, unresolvable, bytes).optimize(new IntegerConstantArithmeticFolder()));
+
+        var code = optimized.methods().getFirst().code().orElseThrow();
+        assertTrue(code.elementStream().noneMatch(e -> e instanceof Instruction i && i.opcode() == Opcode.IADD));
+        assertTrue(code.findAttribute(Attributes.stackMapTable()).isPresent());
+        assertEquals(List.of(), ClassFile.of().verify(optimized));
+    }
+
+    @Test
+    public void ruleWithCapture() {
+        var rules = Rules.parse("test", "redundant load: iload($x), iload($x) => #0, dup");
+        given(resolver, code -> code
+            .iload(1)
+            .iload(1)
+            .iload(2)
+        )
+            .when(code -> optimize(code, rules.toArray(Optimization[]::new)))
+            .expect(code -> code
+                .iload(1)
+                .dup()
+                .iload(2)
+            );
+    }
+
+    @Test
+    public void ruleWithGuard() {
+        var rules = Rules.parse("test", "combine: iinc($s, $a), iinc($s, $b) where $a + $b <= 127 => iinc($s, $a + $b)");
+        given(resolver, code -> code
+            .iinc(1, 100)
+            .iinc(1, 20)
+            .iinc(1, 10)
+        )
+            .when(code -> optimize(code, rules.toArray(Optimization[]::new)))
+            .expect(code -> code
+                .iinc(1, 120)
+                .iinc(1, 10)
+            );
+    }
+
+    @Test
+    public void checkcastSimplifierKeepsOneCast() {
+        var string = ClassDesc.of("java.lang.String");
+        given(resolver, code -> code
+            .aconst_null()
+            .checkcast(string)
+            .checkcast(string)
+            .pop()
+        )
+            .when(code -> optimize(code, new CheckcastSimplifier()))
+            .expect(code -> code
+                .aconst_null()
+                .checkcast(string)
+                .pop()
+            );
+    }
+
+    @Test
+    public void popRemoverRemovesLoads() {
+        given(resolver, code -> code
+            .iload(0)
+            .pop()
+            .lload(1)
+            .pop2()
+            .return_()
+        )
+            .when(code -> optimize(code, optimizations("pop remover")))
+            .expect(code -> code
+                .return_()
+            );
+    }
+
+    @Test
+    public void maxRewritesPerInstruction() {
+        // Each rule undoes the other, so only the cap on rewrites ends the optimization
+        var rules = Rules.parse("test", """
+            up: iconst(0) => iconst(1)
+            down: iconst(1) => iconst(0)
+            """).toArray(Optimization[]::new);
+        byte[] bytes = ClassFile.of().build(of("TestClass"), clazz -> clazz.withMethod("test", ofDescriptor("()V"), ACC_PUBLIC | ACC_STATIC, method -> method.withCode(code -> code
+            .iconst_0()
+            .pop()
+            .return_()
+        )));
+
+        // Three instructions, so one rewrite per instruction flips the constant an odd number of times
+        for (int max = 1; max <= 4; max++) {
+            var optimized = ClassFile.of().parse(new ClassOptimizer(stats, resolver, bytes, max).optimize(rules));
+            var code = optimized.methods().getFirst().code().orElseThrow();
+            var constant = (ConstantInstruction) code.elementList().getFirst();
+            assertEquals(max % 2 == 0 ? 0 : 1, constant.constantValue());
+        }
+    }
+
+    @Test
+    public void foldingFeedsEarlierZeroComparison() {
+        // Each fold leaves a constant that completes a pattern starting before the rewritten
+        // region, so a single call only finds them by backing up after each rewrite
+        byte[] bytes = ClassFile.of().build(of("TestClass"), clazz -> clazz.withMethod("test", ofDescriptor("()V"), ACC_PUBLIC | ACC_STATIC, method -> method.withCode(code -> {
+            var target = code.newLabel();
+            code.iconst_5()
+                .iconst_1()
+                .iconst_2()
+                .iconst_1()
+                .isub()
+                .isub()
+                .if_icmpeq(target)
+                .return_()
+                .labelBinding(target)
+                .return_();
+        })));
+
+        var optimized = ClassFile.of().parse(new ClassOptimizer(stats, resolver, bytes).optimize(new IntegerConstantArithmeticFolder(), new ZeroComparisonOptimizer()));
+        var instructions = optimized.methods().getFirst().code().orElseThrow().elementStream()
+            .filter(e -> e instanceof Instruction)
+            .map(e -> ((Instruction) e).opcode())
+            .toList();
+        assertEquals(List.of(Opcode.ICONST_5, Opcode.IFEQ, Opcode.RETURN, Opcode.RETURN), instructions);
+    }
+
+    @Test
+    public void defaultMaxRewritesPerInstruction() {
+        // Each rule undoes the other, so only the default cap on rewrites ends the optimization
+        var rules = Rules.parse("test", """
+            up: iconst(0) => iconst(1)
+            down: iconst(1) => iconst(0)
+            """).toArray(Optimization[]::new);
+        byte[] bytes = ClassFile.of().build(of("TestClass"), clazz -> clazz.withMethod("test", ofDescriptor("()V"), ACC_PUBLIC | ACC_STATIC, method -> method.withCode(code -> code
+            .iconst_0()
+            .pop()
+            .return_()
+        )));
+
+        var optimized = ClassFile.of().parse(new ClassOptimizer(stats, resolver, bytes).optimize(rules));
+        var constant = (ConstantInstruction) optimized.methods().getFirst().code().orElseThrow().elementList().getFirst();
+        assertEquals(ClassOptimizer.DEFAULT_MAX_REWRITES_PER_INSTRUCTION * 3 % 2, constant.constantValue());
+    }
+
     private ClassModel optimize(ClassModel classModel, Optimization...optimizations) {
         byte[] bytes = new ClassOptimizer(stats, resolver, classModel).optimize(optimizations);
         return ClassFile.of(KEEP_DEAD_CODE).parse(bytes);
     }
+
+    private static Optimization[] optimizations(String name) {
+        return Optimization.optimizations.stream()
+            .filter(optimization -> optimization.getName().equals(name))
+            .toArray(Optimization[]::new);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,113 @@
+package eu.jameshamilton.classfile;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.lang.classfile.Attributes;
+import java.lang.classfile.ClassFile;
+import java.lang.classfile.ClassModel;
+import java.lang.classfile.Instruction;
+import java.lang.classfile.instruction.SwitchCase;
+import java.lang.constant.ClassDesc;
+import java.lang.constant.MethodTypeDesc;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static java.lang.classfile.ClassFile.ACC_PUBLIC;
+import static java.lang.classfile.ClassFile.ACC_STATIC;
+import static java.lang.constant.ConstantDescs.CD_int;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class BytecodeTest {
+
+    @Test
+    public void switchesAtEveryAlignment() {
+        for (int padding = 0; padding < 4; padding++) {
+            int nops = padding;
+            var bytes = ClassFile.of().build(ClassDesc.of("Test"), clazz -> clazz
+                .withMethodBody("test", MethodTypeDesc.of(CD_int, CD_int), ACC_PUBLIC | ACC_STATIC, code -> {
+                    var first = code.newLabel();
+                    var second = code.newLabel();
+                    var otherwise = code.newLabel();
+                    var end = code.newLabel();
+                    for (int i = 0; i < nops; i++) {
+                        code.nop();
+                    }
+                    // Keys that are opcodes of instructions that aren't in the method
+                    code.iload(0)
+                        .tableswitch(0xB8, 0xBA, otherwise, List.of(SwitchCase.of(0xB8, first), SwitchCase.of(0xB9, second), SwitchCase.of(0xBA, first)))
+                        .labelBinding(first)
+                        .iload(0)
+                        .lookupswitch(otherwise, List.of(SwitchCase.of(0xC5, second), SwitchCase.of(0xBB, end)))
+                        .labelBinding(second)
+                        .iconst_1()
+                        .ireturn()
+                        .labelBinding(otherwise)
+                        .iconst_2()
+                        .ireturn()
+                        .labelBinding(end)
+                        .iconst_3()
+                        .ireturn();
+                }));
+            assertContainsAny(ClassFile.of().parse(bytes));
+        }
+    }
+
+    @Test
+    public void wideInstructions() {
+        var bytes = ClassFile.of().build(ClassDesc.of("Test"), clazz -> clazz
+            .withMethodBody("test", MethodTypeDesc.of(CD_int, CD_int), ACC_PUBLIC | ACC_STATIC, code -> code
+                .iload(0)
+                .istore(300)
+                // An increment whose bytes are opcodes of instructions that aren't in the method
+                .iinc(300, (short) 0xB8BB)
+                .iinc(0, 1)
+                .iload(300)
+                .ireturn()));
+        assertContainsAny(ClassFile.of().parse(bytes));
+    }
+
+    @Test
+    public void optimizerClasses() throws IOException, URISyntaxException {
+        var location = Path.of(Bytecode.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        List<Path> classes;
+        try (var files = Files.walk(location)) {
+            classes = files.filter(file -> file.toString().endsWith(".class")).toList();
+        }
+        assertFalse(classes.isEmpty());
+
+        for (var file : classes) {
+            assertContainsAny(ClassFile.of().parse(Files.readAllBytes(file)));
+        }
+    }
+
+    /**
+     * Checks that each opcode byte is found in the raw bytecode of every method exactly if the
+     * parsed code contains an instruction with that opcode.
+     */
+    private static void assertContainsAny(ClassModel classModel) {
+        for (var method : classModel.methods()) {
+            var code = method.findAttribute(Attributes.code());
+            if (code.isEmpty()) {
+                continue;
+            }
+
+            var present = new boolean[256];
+            for (var element : code.get()) {
+                if (element instanceof Instruction instruction) {
+                    present[instruction.opcode().bytecode() & 0xFF] = true;
+                }
+            }
+
+            for (int opcode = 0; opcode < 256; opcode++) {
+                var opcodes = new long[256 / Long.SIZE];
+                opcodes[opcode / Long.SIZE] |= 1L << opcode;
+                assertEquals(present[opcode], Bytecode.containsAny(code.get().codeArray(), opcodes),
+                    classModel.thisClass().asInternalName() + "." + method.methodName() + " opcode " + opcode);
+            }
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package eu.jameshamilton.classfile;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.lang.classfile.ClassFile;
+import java.lang.classfile.ClassHierarchyResolver;
+import java.lang.constant.ClassDesc;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ClassHeaderTest {
+
+    @Test
+    public void parseTestClasses() throws IOException, URISyntaxException {
+        var location = Path.of(ClassHeaderTest.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        List<Path> classes;
+        try (var files = Files.walk(location)) {
+            classes = files.filter(file -> JarClassHierarchyResolver.isClass(location.relativize(file).toString())).toList();
+        }
+        assertFalse(classes.isEmpty());
+
+        for (var file : classes) {
+            assertHeader(Files.readAllBytes(file));
+        }
+    }
+
+    @Test
+    public void parseJdkClasses() throws IOException {
+        // Including a class without a superclass, an interface and classes with long and double constants
+        for (var name : List.of("java/lang/Object", "java/lang/Runnable", "java/lang/String", "java/lang/Math", "java/util/ArrayList")) {
+            try (var in = ClassLoader.getSystemResourceAsStream(name + ".class")) {
+                assertHeader(in.readAllBytes());
+            }
+        }
+    }
+
+    @Test
+    public void parseNonClass() throws IOException {
+        assertNull(ClassHeader.parse(new byte[0]));
+        assertNull(ClassHeader.parse("Not a class file".getBytes()));
+    }
+
+    private static void assertHeader(byte[] bytes) throws IOException {
+        var header = ClassHeader.parse(bytes);
+        var classModel = ClassFile.of().parse(bytes);
+        var desc = classModel.thisClass().asSymbol();
+        assertEquals(desc.descriptorString(), header.descriptor());
+        assertEquals(ClassHierarchyResolver.defaultResolver().getClassInfo(desc), header.info(), desc.descriptorString());
+        assertEquals(classModel.superclass().map(entry -> entry.asSymbol().descriptorString()).orElse(null), header.superclass());
+    }
+}
@@ -0,0 +1,80 @@
+package eu.jameshamilton.classfile;
+
+import eu.jameshamilton.zip.ZipReader;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.lang.classfile.ClassFile;
+import java.lang.classfile.ClassHierarchyResolver.ClassHierarchyInfo;
+import java.lang.constant.ClassDesc;
+import java.lang.constant.MethodTypeDesc;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static java.lang.classfile.ClassFile.ACC_PUBLIC;
+import static java.lang.classfile.ClassFile.ACC_STATIC;
+import static java.lang.constant.ConstantDescs.CD_Object;
+import static java.lang.constant.ConstantDescs.CD_int;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class JarClassHierarchyResolverTest {
+    private static final ClassDesc BASE = ClassDesc.of("pkg.Base");
+    private static final ClassDesc DERIVED = ClassDesc.of("pkg.Derived");
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void hierarchy() throws IOException {
+        var resolver = resolver("jar.jar", CD_Object, 1);
+
+        assertEquals(ClassHierarchyInfo.ofClass(CD_Object), resolver.getClassInfo(BASE));
+        assertEquals(ClassHierarchyInfo.ofClass(BASE), resolver.getClassInfo(DERIVED));
+        assertNull(resolver.getClassInfo(ClassDesc.of("pkg.Missing")));
+    }
+
+    @Test
+    public void fingerprintIgnoresMethodBodies() throws IOException {
+        assertArrayEquals(
+            resolver("first.jar", CD_Object, 1).fingerprint(),
+            resolver("second.jar", CD_Object, 2).fingerprint()
+        );
+    }
+
+    @Test
+    public void fingerprintChangesWithSuperclass() throws IOException {
+        assertFalse(Arrays.equals(
+            resolver("first.jar", CD_Object, 1).fingerprint(),
+            resolver("second.jar", ClassDesc.of("pkg.Other"), 1).fingerprint()
+        ));
+    }
+
+    private JarClassHierarchyResolver resolver(String name, ClassDesc baseSuperclass, int value) throws IOException {
+        var jar = directory.resolve(name);
+        try (var out = new ZipOutputStream(Files.newOutputStream(jar))) {
+            write(out, BASE, baseSuperclass, value);
+            write(out, DERIVED, BASE, value);
+        }
+        try (var reader = ZipReader.open(jar)) {
+            return new JarClassHierarchyResolver(reader);
+        }
+    }
+
+    private static void write(ZipOutputStream out, ClassDesc thisClass, ClassDesc superclass, int value) throws IOException {
+        out.putNextEntry(new ZipEntry(thisClass.descriptorString().substring(1, thisClass.descriptorString().length() - 1) + ".class"));
+        out.write(ClassFile.of().build(thisClass, clazz -> clazz
+            .withFlags(ACC_PUBLIC)
+            .withSuperclass(superclass)
+            .withMethodBody("value", MethodTypeDesc.of(CD_int), ACC_PUBLIC | ACC_STATIC, code -> code
+                .loadConstant(value)
+                .ireturn())));
+        out.closeEntry();
+    }
+}
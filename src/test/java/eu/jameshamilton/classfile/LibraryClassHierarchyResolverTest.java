@@ -0,0 +1,136 @@
+package eu.jameshamilton.classfile;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.lang.classfile.ClassFile;
+import java.lang.classfile.ClassHierarchyResolver.ClassHierarchyInfo;
+import java.lang.constant.ClassDesc;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static java.lang.classfile.ClassFile.ACC_ABSTRACT;
+import static java.lang.classfile.ClassFile.ACC_INTERFACE;
+import static java.lang.classfile.ClassFile.ACC_PUBLIC;
+import static java.lang.constant.ConstantDescs.CD_Object;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class LibraryClassHierarchyResolverTest {
+    private static final ClassDesc BASE = ClassDesc.of("pkg.Base");
+    private static final ClassDesc DERIVED = ClassDesc.of("pkg.Derived");
+    private static final ClassDesc INTERFACE = ClassDesc.of("pkg.Interface");
+    private static final ClassDesc NON_ASCII = ClassDesc.of("pkg.Ünïcödé");
+    private static final ClassDesc NON_ASCII_INTERFACE = ClassDesc.of("pkg.Ünïcödé$Ïnterface");
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void cachedIndexRoundTrip() throws IOException {
+        var library = library();
+        var cache = directory.resolve("cache");
+
+        var built = LibraryClassHierarchyResolver.of(List.of(library), cache);
+        var index = index(cache);
+        var modified = Files.getLastModifiedTime(index);
+        var cached = LibraryClassHierarchyResolver.of(List.of(library), cache);
+
+        assertEquals(modified, Files.getLastModifiedTime(index));
+        assertHierarchy(built);
+        assertHierarchy(cached);
+        assertArrayEquals(built.fingerprint(), cached.fingerprint());
+        assertArrayEquals(built.fingerprint(), LibraryClassHierarchyResolver.of(List.of(library), null).fingerprint());
+    }
+
+    @Test
+    public void otherVersionIsRebuilt() throws IOException {
+        var library = library();
+        var cache = directory.resolve("cache");
+        LibraryClassHierarchyResolver.of(List.of(library), cache);
+        var index = index(cache);
+        var bytes = Files.readAllBytes(index);
+        int version = ByteBuffer.wrap(bytes).getInt(4);
+        ByteBuffer.wrap(bytes).putInt(4, version + 1);
+        Files.write(index, bytes);
+
+        assertHierarchy(LibraryClassHierarchyResolver.of(List.of(library), cache));
+        assertEquals(version, ByteBuffer.wrap(Files.readAllBytes(index)).getInt(4));
+    }
+
+    @Test
+    public void truncatedIndexIsRebuilt() throws IOException {
+        var library = library();
+        var cache = directory.resolve("cache");
+        LibraryClassHierarchyResolver.of(List.of(library), cache);
+        var index = index(cache);
+        var bytes = Files.readAllBytes(index);
+        // The last record's superclass runs past the end of the file
+        Files.write(index, Arrays.copyOf(bytes, bytes.length - 1));
+
+        assertHierarchy(LibraryClassHierarchyResolver.of(List.of(library), cache));
+        assertArrayEquals(bytes, Files.readAllBytes(index));
+    }
+
+    @Test
+    public void unwritableCacheDirectory() throws IOException {
+        var library = library();
+        // A file where the directory should be, which can't be written to even as root
+        var file = Files.createFile(directory.resolve("file"));
+
+        assertHierarchy(LibraryClassHierarchyResolver.of(List.of(library), file.resolve("cache")));
+    }
+
+    @Test
+    public void missingClasses() throws IOException {
+        var resolver = LibraryClassHierarchyResolver.of(List.of(library()), directory.resolve("cache"));
+
+        assertNull(resolver.getClassInfo(ClassDesc.of("pkg.Missing")));
+        // The same length in UTF-16 as a class in the index, but not in UTF-8
+        assertNull(resolver.getClassInfo(ClassDesc.of("pkg.Unicode")));
+        assertNull(resolver.getClassInfo(ClassDesc.of("pkg.Ünïcödë")));
+    }
+
+    private static void assertHierarchy(LibraryClassHierarchyResolver resolver) {
+        assertEquals(ClassHierarchyInfo.ofClass(CD_Object), resolver.getClassInfo(BASE));
+        assertEquals(ClassHierarchyInfo.ofClass(BASE), resolver.getClassInfo(DERIVED));
+        assertEquals(ClassHierarchyInfo.ofInterface(), resolver.getClassInfo(INTERFACE));
+        assertEquals(ClassHierarchyInfo.ofClass(BASE), resolver.getClassInfo(NON_ASCII));
+        assertEquals(ClassHierarchyInfo.ofInterface(), resolver.getClassInfo(NON_ASCII_INTERFACE));
+        assertNotEquals(resolver.getClassInfo(BASE), resolver.getClassInfo(DERIVED));
+    }
+
+    private Path index(Path cache) throws IOException {
+        try (var files = Files.list(cache)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".idx")).findFirst().orElseThrow();
+        }
+    }
+
+    private String library() throws IOException {
+        var jar = directory.resolve("library.jar");
+        try (var out = new ZipOutputStream(Files.newOutputStream(jar))) {
+            write(out, BASE, CD_Object, 0);
+            write(out, DERIVED, BASE, 0);
+            write(out, INTERFACE, CD_Object, ACC_INTERFACE | ACC_ABSTRACT);
+            write(out, NON_ASCII, BASE, 0);
+            write(out, NON_ASCII_INTERFACE, CD_Object, ACC_INTERFACE | ACC_ABSTRACT);
+        }
+        return jar.toString();
+    }
+
+    private static void write(ZipOutputStream out, ClassDesc thisClass, ClassDesc superclass, int flags) throws IOException {
+        out.putNextEntry(new ZipEntry(thisClass.descriptorString().substring(1, thisClass.descriptorString().length() - 1) + ".class"));
+        out.write(ClassFile.of().build(thisClass, clazz -> clazz
+            .withFlags(ACC_PUBLIC | flags)
+            .withSuperclass(superclass)));
+        out.closeEntry();
+    }
+}
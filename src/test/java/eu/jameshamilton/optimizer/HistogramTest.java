@@ -0,0 +1,90 @@
+package eu.jameshamilton.optimizer;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HistogramTest {
+
+    @Test
+    public void smallValuesAreExact() {
+        for (long value = 0; value < 32; value++) {
+            assertEquals(value, single(value).percentile(0.5));
+        }
+    }
+
+    @Test
+    public void bucketBoundaries() {
+        // From 32 each power of two is split into 16 buckets, 2 wide up to 64, 4 wide up to 128
+        assertEquals(32, single(32).percentile(0.5));
+        assertEquals(32, single(33).percentile(0.5));
+        assertEquals(34, single(34).percentile(0.5));
+        assertEquals(62, single(63).percentile(0.5));
+        // The middle of a bucket, but never more than the largest value
+        assertEquals(64, single(64).percentile(0.5));
+        assertEquals(65, single(67).percentile(0.5));
+        assertEquals(69, single(71).percentile(0.5));
+    }
+
+    @Test
+    public void relativeError() {
+        for (long value = 1; value > 0 && value < Long.MAX_VALUE / 3; value = value * 3 + 1) {
+            long estimate = single(value).percentile(0.5);
+            assertTrue(estimate <= value && value - estimate <= value / 16, value + " estimated as " + estimate);
+        }
+        assertTrue(single(Long.MAX_VALUE).percentile(0.5) >= Long.MAX_VALUE - Long.MAX_VALUE / 16);
+    }
+
+    @Test
+    public void percentile() {
+        var histogram = new Histogram();
+        assertEquals(0, histogram.percentile(0.5));
+        for (long value = 100; value >= 1; value--) {
+            histogram.record(value);
+        }
+
+        assertEquals(100, histogram.count());
+        assertEquals(5050, histogram.sum());
+        assertEquals(100, histogram.max());
+        assertEquals(1, histogram.percentile(0));
+        assertEquals(10, histogram.percentile(0.1));
+        assertEquals(50, histogram.percentile(0.5));
+        assertEquals(97, histogram.percentile(0.99));
+        assertEquals(100, histogram.percentile(1));
+    }
+
+    @Test
+    public void negativeValuesAreZero() {
+        var histogram = single(-5);
+        assertEquals(0, histogram.sum());
+        assertEquals(0, histogram.max());
+        assertEquals(0, histogram.percentile(1));
+    }
+
+    @Test
+    public void add() {
+        var all = new Histogram();
+        var even = new Histogram();
+        var odd = new Histogram();
+        for (long value = 0; value < 1000; value++) {
+            all.record(value * value);
+            (value % 2 == 0 ? even : odd).record(value * value);
+        }
+
+        even.add(odd);
+
+        assertEquals(all.count(), even.count());
+        assertEquals(all.sum(), even.sum());
+        assertEquals(all.max(), even.max());
+        for (double fraction = 0; fraction <= 1; fraction += 0.05) {
+            assertEquals(all.percentile(fraction), even.percentile(fraction), String.valueOf(fraction));
+        }
+    }
+
+    private static Histogram single(long value) {
+        var histogram = new Histogram();
+        histogram.record(value);
+        return histogram;
+    }
+}
@@ -0,0 +1,100 @@
+package eu.jameshamilton.optimizer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class OptimizationCacheTest {
+    private static final byte[] FINGERPRINT = {1, 2, 3};
+    private static final byte[] HIERARCHY = {4, 5, 6};
+    private static final byte[] CLASS = "class".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] OPTIMIZED = "optimized".getBytes(StandardCharsets.UTF_8);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void hit() {
+        var cache = new OptimizationCache(directory, FINGERPRINT, HIERARCHY);
+        assertNull(cache.get(CLASS));
+
+        cache.put(CLASS, OPTIMIZED, false);
+
+        assertArrayEquals(OPTIMIZED, cache.get(CLASS));
+        assertArrayEquals(OPTIMIZED, new OptimizationCache(directory, FINGERPRINT, HIERARCHY).get(CLASS));
+        assertNull(cache.get(OPTIMIZED));
+        assertNull(new OptimizationCache(directory, new byte[]{7}, HIERARCHY).get(CLASS));
+    }
+
+    @Test
+    public void unchangedClass() throws IOException {
+        var cache = new OptimizationCache(directory, FINGERPRINT, HIERARCHY);
+
+        cache.put(CLASS, CLASS.clone(), false);
+
+        var files = files();
+        assertEquals(1, files.size());
+        assertEquals(0, Files.size(files.getFirst()));
+        assertArrayEquals(CLASS, cache.get(CLASS));
+    }
+
+    @Test
+    public void hierarchyChange() throws IOException {
+        var cache = new OptimizationCache(directory, FINGERPRINT, HIERARCHY);
+        var other = "other".getBytes(StandardCharsets.UTF_8);
+
+        cache.put(CLASS, OPTIMIZED, true);
+        cache.put(other, OPTIMIZED, false);
+
+        assertEquals(1, files().stream().filter(file -> file.getFileName().toString().endsWith("-h")).count());
+        var changed = new OptimizationCache(directory, FINGERPRINT, new byte[]{7});
+        assertNull(changed.get(CLASS));
+        assertArrayEquals(OPTIMIZED, changed.get(other));
+        assertArrayEquals(OPTIMIZED, new OptimizationCache(directory, FINGERPRINT, HIERARCHY).get(CLASS));
+    }
+
+    @Test
+    public void fingerprint() throws IOException {
+        var optimizations = Optimization.optimizations;
+        var ruleFile = Files.writeString(directory.resolve("rules.txt"), "first");
+        var fingerprint = OptimizationCache.fingerprint(optimizations, List.of(ruleFile), 16);
+
+        assertArrayEquals(fingerprint, OptimizationCache.fingerprint(optimizations, List.of(ruleFile), 16));
+        assertFalse(Arrays.equals(fingerprint, OptimizationCache.fingerprint(optimizations.subList(1, optimizations.size()), List.of(ruleFile), 16)));
+        assertFalse(Arrays.equals(fingerprint, OptimizationCache.fingerprint(optimizations, List.of(), 16)));
+        assertFalse(Arrays.equals(fingerprint, OptimizationCache.fingerprint(optimizations, List.of(ruleFile), 8)));
+        Files.writeString(ruleFile, "second");
+        assertFalse(Arrays.equals(fingerprint, OptimizationCache.fingerprint(optimizations, List.of(ruleFile), 16)));
+    }
+
+    @Test
+    public void unwritableDirectory() throws IOException {
+        // A file where the directory should be, which can't be written to even as root
+        var file = Files.createFile(directory.resolve("file"));
+        var cache = new OptimizationCache(file.resolve("cache"), FINGERPRINT, HIERARCHY);
+
+        cache.put(CLASS, OPTIMIZED, false);
+        cache.put(OPTIMIZED, CLASS, true);
+
+        assertNull(cache.get(CLASS));
+        assertNull(cache.get(OPTIMIZED));
+        assertEquals(List.of(file), files());
+    }
+
+    private List<Path> files() throws IOException {
+        try (var files = Files.walk(directory)) {
+            return files.filter(Files::isRegularFile).toList();
+        }
+    }
+}
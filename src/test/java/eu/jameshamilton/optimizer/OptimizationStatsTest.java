@@ -0,0 +1,43 @@
+package eu.jameshamilton.optimizer;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class OptimizationStatsTest {
+
+    @Test
+    public void estimatedNanosExtrapolatesSamples() {
+        var stats = new OptimizationStats(true);
+        int id = stats.register("rule");
+
+        int timed = 0;
+        for (int attempt = 0; attempt < 650; attempt++) {
+            if (stats.recordAttempt(id)) {
+                // Alternately 100 and 300, so 200 on average
+                stats.recordMatchTime(id, timed++ % 2 == 0 ? 100 : 300);
+            }
+        }
+
+        // Every 64th attempt is timed
+        assertEquals(10, timed);
+        var rule = stats.report().rules().getFirst();
+        assertEquals(650, rule.attempts());
+        assertEquals(200.0 * 650, rule.estimatedNanos());
+    }
+
+    @Test
+    public void notProfiled() {
+        var stats = new OptimizationStats();
+        int id = stats.register("rule");
+
+        for (int attempt = 0; attempt < 650; attempt++) {
+            assertEquals(false, stats.recordAttempt(id));
+        }
+
+        var rule = stats.report().rules().getFirst();
+        assertEquals(650, rule.attempts());
+        assertEquals(0, rule.estimatedNanos());
+        assertEquals(0, rule.p50Nanos());
+    }
+}
@@ -0,0 +1,229 @@
+package eu.jameshamilton.optimizer;
+
+import eu.jameshamilton.classfile.InstructionBuilder;
+import eu.jameshamilton.classfile.InstructionList;
+import eu.jameshamilton.classfile.matcher.Window;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.lang.classfile.Attributes;
+import java.lang.classfile.ClassFile;
+import java.lang.classfile.ClassModel;
+import java.lang.classfile.CodeElement;
+import java.lang.classfile.Instruction;
+import java.lang.classfile.Label;
+import java.lang.classfile.Opcode;
+import java.lang.classfile.constantpool.ConstantPoolBuilder;
+import java.lang.classfile.instruction.ConstantInstruction;
+import java.lang.classfile.instruction.StackInstruction;
+import java.lang.constant.ClassDesc;
+import java.lang.constant.MethodTypeDesc;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static java.lang.classfile.ClassFile.ACC_PUBLIC;
+import static java.lang.classfile.ClassFile.ACC_STATIC;
+import static java.lang.constant.ConstantDescs.CD_Exception;
+import static java.lang.constant.ConstantDescs.CD_int;
+import static java.lang.constant.ConstantDescs.CD_void;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PatternAutomatonTest {
+
+    @Test
+    public void candidatesOfOptimizerClasses() throws IOException, URISyntaxException {
+        var location = Path.of(ClassOptimizer.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        List<Path> classes;
+        try (var files = Files.walk(location)) {
+            classes = files.filter(file -> file.toString().endsWith(".class")).toList();
+        }
+        assertFalse(classes.isEmpty());
+
+        for (var file : classes) {
+            assertCandidates(ClassFile.of().parse(Files.readAllBytes(file)));
+        }
+    }
+
+    @Test
+    public void candidatesAroundLabelsAndWideInstructions() {
+        var bytes = ClassFile.of().build(ClassDesc.of("Test"), clazz -> clazz
+            .withMethodBody("test", MethodTypeDesc.of(CD_int, CD_int), ACC_PUBLIC | ACC_STATIC, code -> {
+                var middle = code.newLabel();
+                var end = code.newLabel();
+                code.iconst_1()
+                    .iload(0)
+                    .ifeq(middle)
+                    .iconst_2()
+                    .iadd()
+                    .labelBinding(middle)
+                    .iconst_2()
+                    .iadd()
+                    .istore(300)
+                    .iinc(300, 1)
+                    .iload(300)
+                    .iconst_0()
+                    .iadd()
+                    .pop()
+                    .iconst_0()
+                    .ifeq(end)
+                    .iload(300)
+                    .iconst_1()
+                    .imul()
+                    .pop()
+                    .labelBinding(end)
+                    .trying(block -> block
+                        .iconst_3()
+                        .i2b()
+                        .istore(0), catches -> catches
+                        .catching(CD_Exception, handler -> handler.pop()))
+                    .iload(0)
+                    .ireturn();
+            }));
+
+        assertCandidates(ClassFile.of().parse(bytes));
+    }
+
+    @Test
+    public void emptyPattern() {
+        var iconst1 = ConstantInstruction.ofIntrinsic(Opcode.ICONST_1);
+        var iconst2 = ConstantInstruction.ofIntrinsic(Opcode.ICONST_2);
+        var pair = new Fixed("pair", List.of(Set.of(Opcode.ICONST_1), Set.of(Opcode.ICONST_2)));
+        var any = new Fixed("any", List.of());
+        var automaton = new PatternAutomaton(List.of(pair, any));
+        var candidates = new Optimization[2];
+
+        assertEquals(2, automaton.candidates(List.<CodeElement>of(iconst1, iconst2), 0, candidates));
+        assertEquals(List.of(pair, any), Arrays.asList(candidates));
+        // A label between the instructions breaks the pattern, but not the empty one
+        assertEquals(1, automaton.candidates(List.of(iconst1, label(), iconst2), 0, candidates));
+        assertEquals(any, candidates[0]);
+        assertEquals(1, automaton.candidates(List.of(label(), iconst1, iconst2), 0, candidates));
+        assertEquals(1, automaton.candidates(List.<CodeElement>of(iconst1, iconst2), 1, candidates));
+        assertTrue(automaton.canMatch(new byte[]{(byte) Opcode.RETURN.bytecode()}));
+
+        var restricted = new PatternAutomaton(List.of(pair));
+        assertFalse(restricted.canMatch(new byte[]{(byte) Opcode.RETURN.bytecode()}));
+        assertTrue(restricted.canMatch(new byte[]{(byte) Opcode.ICONST_1.bytecode(), (byte) Opcode.RETURN.bytecode()}));
+    }
+
+    @Test
+    public void randomPatterns() {
+        // Enough patterns that the state spans several words
+        var random = new Random(42);
+        var alphabet = List.<CodeElement>of(
+            ConstantInstruction.ofIntrinsic(Opcode.ICONST_0),
+            ConstantInstruction.ofIntrinsic(Opcode.ICONST_1),
+            StackInstruction.of(Opcode.POP),
+            label()
+        );
+        var opcodes = List.of(Opcode.ICONST_0, Opcode.ICONST_1, Opcode.POP);
+
+        var optimizations = new ArrayList<Optimization>();
+        for (int i = 0; i < 100; i++) {
+            var pattern = new ArrayList<Set<Opcode>>();
+            for (int j = random.nextInt(6); j > 0; j--) {
+                pattern.add(random.nextBoolean()
+                    ? Set.of(opcodes.get(random.nextInt(opcodes.size())))
+                    : Set.copyOf(List.of(opcodes.get(random.nextInt(opcodes.size())), opcodes.get(random.nextInt(opcodes.size())))));
+            }
+            optimizations.add(new Fixed("rule" + i, pattern));
+        }
+        var automaton = new PatternAutomaton(optimizations);
+        var candidates = new Optimization[optimizations.size()];
+
+        for (int n = 0; n < 200; n++) {
+            var code = new ArrayList<CodeElement>();
+            for (int i = random.nextInt(12); i >= 0; i--) {
+                code.add(alphabet.get(random.nextInt(alphabet.size())));
+            }
+            for (int index = 0; index < code.size(); index++) {
+                int count = automaton.candidates(code, index, candidates);
+                assertEquals(matching(optimizations, code, index), Arrays.asList(candidates).subList(0, count));
+            }
+        }
+    }
+
+    /**
+     * Checks that the candidates at every position are exactly the optimizations whose pattern
+     * matches there, and include every optimization that applies to the window at that position.
+     */
+    private static void assertCandidates(ClassModel classModel) {
+        var optimizations = Optimization.optimizations.stream()
+            .filter(optimization -> optimization.prepare(classModel.constantPool()))
+            .toList();
+        var automaton = new PatternAutomaton(optimizations);
+        var builder = new InstructionBuilder(ConstantPoolBuilder.of(classModel));
+        var window = new Window();
+        var candidates = new Optimization[optimizations.size()];
+
+        for (var method : classModel.methods()) {
+            var code = method.findAttribute(Attributes.code()).map(InstructionList::new).map(InstructionList::instructions).orElse(List.of());
+            for (int index = 0; index < code.size(); index++) {
+                var candidateList = Arrays.asList(candidates).subList(0, automaton.candidates(code, index, candidates));
+                var where = classModel.thisClass().asInternalName() + "." + method.methodName() + " at " + index;
+                assertEquals(matching(optimizations, code, index), candidateList, where);
+
+                for (var optimization : optimizations) {
+                    window.moveTo(code, index, Math.min(ClassOptimizer.MAX_WINDOW_SIZE, code.size() - index));
+                    builder.clear();
+                    if (optimization.apply(builder, window)) {
+                        assertTrue(candidateList.contains(optimization), optimization.getName() + " in " + where);
+                    }
+                }
+            }
+        }
+    }
+
+    private static List<Optimization> matching(List<Optimization> optimizations, List<CodeElement> code, int index) {
+        return optimizations.stream().filter(optimization -> matches(optimization.pattern(), code, index)).toList();
+    }
+
+    private static boolean matches(List<Set<Opcode>> pattern, List<CodeElement> code, int index) {
+        if (index + pattern.size() > code.size()) {
+            return false;
+        }
+        for (int i = 0; i < pattern.size(); i++) {
+            if (!(code.get(index + i) instanceof Instruction instruction)) {
+                return false;
+            }
+            // Wide variants match the instruction they widen
+            int opcode = instruction.opcode().bytecode() & 0xFF;
+            if (pattern.get(i).stream().noneMatch(accepted -> (accepted.bytecode() & 0xFF) == opcode)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static CodeElement label() {
+        var bytes = ClassFile.of().build(ClassDesc.of("Test"), clazz -> clazz
+            .withMethodBody("test", MethodTypeDesc.of(CD_void), ACC_PUBLIC | ACC_STATIC, code -> {
+                var label = code.newLabel();
+                code.labelBinding(label).goto_(label);
+            }));
+        return ClassFile.of().parse(bytes).methods().getFirst().code().orElseThrow().elementStream()
+            .filter(Label.class::isInstance)
+            .findFirst()
+            .orElseThrow();
+    }
+
+    private record Fixed(String name, List<Set<Opcode>> pattern) implements Optimization {
+        @Override
+        public boolean apply(InstructionBuilder builder, Window window) {
+            return false;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+    }
+}
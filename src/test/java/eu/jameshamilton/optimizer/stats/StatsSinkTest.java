@@ -0,0 +1,117 @@
+package eu.jameshamilton.optimizer.stats;
+
+import eu.jameshamilton.optimizer.stats.StatsReport.ClassStats;
+import eu.jameshamilton.optimizer.stats.StatsReport.PhaseStats;
+import eu.jameshamilton.optimizer.stats.StatsReport.RuleStats;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class StatsSinkTest {
+    private static final StatsReport REPORT = new StatsReport(
+        Instant.parse("2026-01-02T03:04:05.678Z"),
+        1_500_000_000L,
+        true,
+        10,
+        4,
+        120,
+        2,
+        1,
+        List.of(
+            new RuleStats("say \"hi\" \\ back", 100, 5, 60.5, 2_000_000, 300, 900),
+            new RuleStats("two\nlines", 50, 0, 0, 0, 0, 0)
+        ),
+        List.of(new PhaseStats("optimize", 10, 5_000_000, 400_000, 900_000, 1_000_000)),
+        List.of(
+            new ClassStats("com/example/A", 100, 80, false),
+            new ClassStats("com/example/\"B\"", 50, 50, true)
+        )
+    );
+
+    private static final String JSON_LINES = """
+        {"type":"run","run":"2026-01-02T03:04:05.678Z","durationNanos":1500000000,"profiled":true,"classes":10,"optimizedClasses":4,"bytesReduced":120,"cacheHits":2,"errors":1}
+        {"type":"rule","run":"2026-01-02T03:04:05.678Z","name":"say \\"hi\\" \\\\ back","attempts":100,"hits":5,"bytesSaved":60.5,"estimatedNanos":2000000.0,"p50Nanos":300,"p99Nanos":900}
+        {"type":"rule","run":"2026-01-02T03:04:05.678Z","name":"two\\nlines","attempts":50,"hits":0,"bytesSaved":0.0,"estimatedNanos":0.0,"p50Nanos":0,"p99Nanos":0}
+        {"type":"phase","run":"2026-01-02T03:04:05.678Z","name":"optimize","count":10,"totalNanos":5000000,"p50Nanos":400000,"p99Nanos":900000,"maxNanos":1000000}
+        {"type":"class","run":"2026-01-02T03:04:05.678Z","name":"com/example/A","originalSize":100,"optimizedSize":80,"cached":false}
+        {"type":"class","run":"2026-01-02T03:04:05.678Z","name":"com/example/\\"B\\"","originalSize":50,"optimizedSize":50,"cached":true}
+        """;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void jsonLines() throws IOException {
+        var file = directory.resolve("stats.jsonl");
+
+        new JsonLinesStatsSink(file).write(REPORT);
+        assertEquals(JSON_LINES, Files.readString(file));
+
+        // Runs are appended
+        new JsonLinesStatsSink(file).write(REPORT);
+        assertEquals(JSON_LINES + JSON_LINES, Files.readString(file));
+    }
+
+    @Test
+    public void prometheus() throws IOException {
+        var file = directory.resolve("metrics").resolve("joptimizer.prom");
+
+        new PrometheusStatsSink(file).write(REPORT);
+
+        assertEquals("""
+            # HELP joptimizer_last_run_timestamp_seconds Start time of the last run.
+            # TYPE joptimizer_last_run_timestamp_seconds gauge
+            joptimizer_last_run_timestamp_seconds 1.767323045678E9
+            # HELP joptimizer_run_duration_seconds Duration of the last run.
+            # TYPE joptimizer_run_duration_seconds gauge
+            joptimizer_run_duration_seconds 1.5
+            # HELP joptimizer_classes Classes processed.
+            # TYPE joptimizer_classes gauge
+            joptimizer_classes 10
+            # HELP joptimizer_optimized_classes Classes that got smaller.
+            # TYPE joptimizer_optimized_classes gauge
+            joptimizer_optimized_classes 4
+            # HELP joptimizer_bytes_reduced Bytes saved over all classes.
+            # TYPE joptimizer_bytes_reduced gauge
+            joptimizer_bytes_reduced 120
+            # HELP joptimizer_cache_hits Classes served from the optimization cache.
+            # TYPE joptimizer_cache_hits gauge
+            joptimizer_cache_hits 2
+            # HELP joptimizer_errors Entries that couldn't be read.
+            # TYPE joptimizer_errors gauge
+            joptimizer_errors 1
+            # HELP joptimizer_rule_attempts Attempts of an optimization.
+            # TYPE joptimizer_rule_attempts gauge
+            joptimizer_rule_attempts{rule="say \\"hi\\" \\\\ back"} 100
+            joptimizer_rule_attempts{rule="two\\nlines"} 50
+            # HELP joptimizer_rule_hits Applications of an optimization in classes that got smaller.
+            # TYPE joptimizer_rule_hits gauge
+            joptimizer_rule_hits{rule="say \\"hi\\" \\\\ back"} 5
+            joptimizer_rule_hits{rule="two\\nlines"} 0
+            # HELP joptimizer_rule_bytes_saved Share of the bytes saved attributed to an optimization.
+            # TYPE joptimizer_rule_bytes_saved gauge
+            joptimizer_rule_bytes_saved{rule="say \\"hi\\" \\\\ back"} 60.5
+            joptimizer_rule_bytes_saved{rule="two\\nlines"} 0
+            # HELP joptimizer_rule_estimated_seconds Time spent in an optimization, extrapolated from sampled attempts.
+            # TYPE joptimizer_rule_estimated_seconds gauge
+            joptimizer_rule_estimated_seconds{rule="say \\"hi\\" \\\\ back"} 0.002
+            joptimizer_rule_estimated_seconds{rule="two\\nlines"} 0
+            # HELP joptimizer_phase_seconds Time spent per class or entry in a phase.
+            # TYPE joptimizer_phase_seconds summary
+            joptimizer_phase_seconds{phase="optimize",quantile="0.5"} 4.0E-4
+            joptimizer_phase_seconds{phase="optimize",quantile="0.99"} 9.0E-4
+            joptimizer_phase_seconds_sum{phase="optimize"} 0.005
+            joptimizer_phase_seconds_count{phase="optimize"} 10
+            """, Files.readString(file));
+        try (var files = Files.list(file.getParent())) {
+            assertEquals(List.of(file), files.toList());
+        }
+    }
+}
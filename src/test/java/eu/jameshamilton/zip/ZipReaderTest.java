@@ -0,0 +1,147 @@
+package eu.jameshamilton.zip;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ZipReaderTest {
+    private static final byte[] HELLO = "Hello, World! Hello, World! Hello, World!".getBytes(StandardCharsets.UTF_8);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void readStored() throws IOException {
+        var zip = write("stored.zip", Map.of("hello.txt", HELLO), ZipEntry.STORED);
+        assertContents(zip, Map.of("hello.txt", HELLO), ZipEntry.STORED);
+    }
+
+    @Test
+    public void readDeflated() throws IOException {
+        var contents = new LinkedHashMap<String, byte[]>();
+        contents.put("hello.txt", HELLO);
+        contents.put("empty.txt", new byte[0]);
+        contents.put("dir/ünïcödé.txt", "ü".repeat(1000).getBytes(StandardCharsets.UTF_8));
+        var zip = write("deflated.zip", contents, ZipEntry.DEFLATED);
+        assertContents(zip, contents, ZipEntry.DEFLATED);
+    }
+
+    @Test
+    public void readZip64() throws IOException {
+        // More entries than the end record can count, so they're counted in the ZIP64 record
+        var contents = new LinkedHashMap<String, byte[]>();
+        for (int i = 0; i < 70_000; i++) {
+            contents.put("entry" + i, ("content " + i).getBytes(StandardCharsets.UTF_8));
+        }
+        var zip = write("zip64.zip", contents, ZipEntry.DEFLATED);
+        assertContents(zip, contents, ZipEntry.DEFLATED);
+    }
+
+    @Test
+    public void readWithPreamble() throws IOException {
+        var zip = write("archive.zip", Map.of("hello.txt", HELLO), ZipEntry.DEFLATED);
+        var executable = directory.resolve("executable.jar");
+        try (var out = Files.newOutputStream(executable)) {
+            out.write("#!/bin/sh\nexec java -jar \"$0\" \"$@\"\n".getBytes(StandardCharsets.UTF_8));
+            out.write(Files.readAllBytes(zip));
+        }
+        assertContents(executable, Map.of("hello.txt", HELLO), ZipEntry.DEFLATED);
+    }
+
+    @Test
+    public void invalidCrc() throws IOException {
+        var zip = write("stored.zip", Map.of("hello.txt", HELLO), ZipEntry.STORED);
+        var bytes = Files.readAllBytes(zip);
+        bytes[indexOf(bytes, HELLO)] ^= 1;
+        Files.write(zip, bytes);
+
+        try (var reader = ZipReader.open(zip)) {
+            assertThrows(ZipException.class, () -> reader.read(reader.entries().getFirst()));
+        }
+    }
+
+    @Test
+    public void sizeTooLargeToRead() throws IOException {
+        var zip = write("stored.zip", Map.of("hello.txt", HELLO), ZipEntry.STORED);
+        var bytes = Files.readAllBytes(zip);
+        // The uncompressed size in the central directory, saturated without a ZIP64 field
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).putInt(centralHeader(bytes) + 24, -1);
+        Files.write(zip, bytes);
+
+        try (var reader = ZipReader.open(zip)) {
+            assertThrows(ZipException.class, () -> reader.read(reader.entries().getFirst()));
+        }
+    }
+
+    @Test
+    public void truncatedCentralDirectory() throws IOException {
+        var zip = write("stored.zip", Map.of("hello.txt", HELLO), ZipEntry.STORED);
+        var bytes = Files.readAllBytes(zip);
+        // A name that runs past the end of the file
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).putShort(centralHeader(bytes) + 28, (short) 0xFFFF);
+        Files.write(zip, bytes);
+
+        assertThrows(ZipException.class, () -> ZipReader.open(zip).close());
+    }
+
+    private void assertContents(Path zip, Map<String, byte[]> contents, int method) throws IOException {
+        try (var reader = ZipReader.open(zip)) {
+            assertEquals(contents.keySet().stream().toList(), reader.entries().stream().map(ZipReader.Entry::name).toList());
+            for (var entry : reader.entries()) {
+                assertEquals(method, entry.method());
+                assertArrayEquals(contents.get(entry.name()), reader.read(entry), entry.name());
+            }
+        }
+    }
+
+    private Path write(String name, Map<String, byte[]> contents, int method) throws IOException {
+        var zip = directory.resolve(name);
+        try (OutputStream file = Files.newOutputStream(zip); var out = new ZipOutputStream(file)) {
+            out.setMethod(method);
+            for (var content : contents.entrySet()) {
+                var entry = new ZipEntry(content.getKey());
+                if (method == ZipEntry.STORED) {
+                    var crc = new CRC32();
+                    crc.update(content.getValue());
+                    entry.setCrc(crc.getValue());
+                    entry.setSize(content.getValue().length);
+                }
+                out.putNextEntry(entry);
+                out.write(content.getValue());
+                out.closeEntry();
+            }
+        }
+        return zip;
+    }
+
+    private static int centralHeader(byte[] bytes) {
+        return indexOf(bytes, new byte[]{'P', 'K', 1, 2});
+    }
+
+    private static int indexOf(byte[] bytes, byte[] part) {
+        for (int i = 0; i + part.length <= bytes.length; i++) {
+            if (Arrays.equals(bytes, i, i + part.length, part, 0, part.length)) {
+                return i;
+            }
+        }
+        throw new AssertionError("Not found");
+    }
+}
@@ -0,0 +1,150 @@
+package eu.jameshamilton.zip;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ZipWriterTest {
+    private static final int DATA_DESCRIPTOR = 1 << 3;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void writeEntries() throws IOException {
+        var random = new byte[4096];
+        new Random(42).nextBytes(random);
+        var contents = new LinkedHashMap<String, byte[]>();
+        contents.put("hello.txt", "Hello, World! Hello, World! Hello, World!".getBytes(StandardCharsets.UTF_8));
+        contents.put("empty/", new byte[0]);
+        contents.put("random.bin", random);
+        contents.put("dir/ünïcödé.txt", "ü".repeat(1000).getBytes(StandardCharsets.UTF_8));
+
+        var zip = write(contents);
+
+        assertContents(zip, contents);
+        try (var file = new ZipFile(zip.toFile())) {
+            assertEquals(ZipEntry.DEFLATED, file.getEntry("hello.txt").getMethod());
+            // Random bytes don't deflate, so they're stored
+            assertEquals(ZipEntry.STORED, file.getEntry("random.bin").getMethod());
+        }
+    }
+
+    @Test
+    public void writeZip64Entries() throws IOException {
+        // More entries than the end record can count, which needs the ZIP64 end records
+        var contents = new LinkedHashMap<String, byte[]>();
+        for (int i = 0; i < 70_000; i++) {
+            contents.put("entry" + i, ("content " + i).getBytes(StandardCharsets.UTF_8));
+        }
+
+        var zip = write(contents);
+
+        assertContents(zip, contents);
+        try (var reader = ZipReader.open(zip)) {
+            assertEquals(contents.size(), reader.entries().size());
+        }
+    }
+
+    @Test
+    public void copyStored() throws IOException {
+        assertCopied(ZipEntry.STORED);
+    }
+
+    @Test
+    public void copyDeflated() throws IOException {
+        assertCopied(ZipEntry.DEFLATED);
+    }
+
+    private void assertCopied(int method) throws IOException {
+        var content = "Hello, World! Hello, World! Hello, World!".getBytes(StandardCharsets.UTF_8);
+        var crc = new CRC32();
+        crc.update(content);
+        var source = directory.resolve("source.zip");
+        try (var out = new ZipOutputStream(Files.newOutputStream(source))) {
+            var entry = new ZipEntry("hello.txt");
+            entry.setMethod(method);
+            if (method == ZipEntry.STORED) {
+                entry.setCrc(crc.getValue());
+                entry.setSize(content.length);
+            }
+            out.putNextEntry(entry);
+            out.write(content);
+            out.closeEntry();
+        }
+
+        var copy = directory.resolve("copy.zip");
+        try (var reader = ZipReader.open(source); var writer = new ZipWriter(copy)) {
+            writer.copy(reader, reader.entries().getFirst());
+        }
+
+        try (var reader = ZipReader.open(source); var copied = ZipReader.open(copy)) {
+            var original = reader.entries().getFirst();
+            var entry = copied.entries().getFirst();
+            assertEquals(original.method(), entry.method());
+            assertEquals(original.crc(), entry.crc());
+            assertEquals(original.compressedSize(), entry.compressedSize());
+            assertEquals(original.size(), entry.size());
+            assertArrayEquals(data(reader, original), data(copied, entry));
+            // The copy has no data descriptor, even if ZipOutputStream wrote the original with one
+            assertEquals(method == ZipEntry.DEFLATED, (original.flags() & DATA_DESCRIPTOR) != 0);
+            assertEquals(0, entry.flags() & DATA_DESCRIPTOR);
+        }
+
+        // Unlike ZipFile, ZipInputStream trusts the local headers, which have to agree with the data
+        try (var in = new ZipInputStream(Files.newInputStream(copy))) {
+            assertEquals("hello.txt", in.getNextEntry().getName());
+            assertArrayEquals(content, in.readAllBytes());
+            assertNull(in.getNextEntry());
+        }
+    }
+
+    private static byte[] data(ZipReader reader, ZipReader.Entry entry) throws IOException {
+        var data = new ByteArrayOutputStream();
+        reader.transferData(entry, Channels.newChannel(data));
+        return data.toByteArray();
+    }
+
+    private Path write(Map<String, byte[]> contents) throws IOException {
+        var zip = directory.resolve("written.zip");
+        try (var writer = new ZipWriter(zip)) {
+            for (var content : contents.entrySet()) {
+                writer.write(CompressedEntry.of(content.getKey(), content.getValue()));
+            }
+        }
+        return zip;
+    }
+
+    private static void assertContents(Path zip, Map<String, byte[]> contents) throws IOException {
+        try (var file = new ZipFile(zip.toFile())) {
+            assertEquals(contents.keySet().stream().toList(), file.stream().map(ZipEntry::getName).toList());
+            for (var content : contents.entrySet()) {
+                var entry = file.getEntry(content.getKey());
+                var crc = new CRC32();
+                crc.update(content.getValue());
+                assertEquals(crc.getValue(), entry.getCrc(), entry.getName());
+                try (var in = file.getInputStream(entry)) {
+                    assertArrayEquals(content.getValue(), in.readAllBytes(), entry.getName());
+                }
+            }
+        }
+    }
+}